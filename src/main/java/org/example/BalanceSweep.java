@@ -0,0 +1,379 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * game balance sweep: plays many simulated games for every combination of guardian stats,
+ * character base stats and item set, and writes one csv row per combination as soon as it is done
+ * combinations are split recursively over a fork/join pool, so idle cores steal the remaining work
+ * the layout is {@link Layout#standard} from {@link Game}: a strength guardian between chambers 1 and 2,
+ * a craft guardian between chambers 2 and 3, and the items placed in chambers 1 and 2
+ */
+final class BalanceSweep {
+    static final String HEADER = "guardian_strength,guardian_craft,guardian_health,health,strength,craft,items,"
+            + "games,win_rate,mean_turns,health_p10,health_p50,health_p90";
+    private static final int MAX_TURNS = 1000;
+
+    private final Range guardianStrength;
+    private final Range guardianCraft;
+    private final Range guardianHealth;
+    private final Range health;
+    private final Range strength;
+    private final Range craft;
+    private final List<String> itemSets;
+    private final int gamesPerCell;
+    private final long seed;
+
+    /**
+     * create sweep over a grid
+     * @param guardianStrength strength of the strength guardian
+     * @param guardianCraft craft of the craft guardian
+     * @param guardianHealth health of both guardians
+     * @param health character base health
+     * @param strength character base strength
+     * @param craft character base craft
+     * @param itemSets item sets, each one a list of item names joined by '+' or "none"
+     * @param gamesPerCell games to simulate for each grid point
+     * @param seed seed for the dice, the same seed gives the same table
+     */
+    public BalanceSweep(Range guardianStrength, Range guardianCraft, Range guardianHealth, Range health,
+                        Range strength, Range craft, List<String> itemSets, int gamesPerCell, long seed) {
+        if (itemSets.isEmpty()) {
+            throw new IllegalArgumentException("At least one item set is needed");
+        }
+        for (String itemSet : itemSets) {
+            createItems(itemSet);
+        }
+        this.guardianStrength = guardianStrength;
+        this.guardianCraft = guardianCraft;
+        this.guardianHealth = guardianHealth;
+        this.health = health;
+        this.strength = strength;
+        this.craft = craft;
+        this.itemSets = List.copyOf(itemSets);
+        this.gamesPerCell = gamesPerCell;
+        this.seed = seed;
+    }
+
+    /**
+     * get number of grid points
+     * @return number of cells in the grid
+     */
+    public long cellCount() {
+        return (long) guardianStrength.size() * guardianCraft.size() * guardianHealth.size()
+                * health.size() * strength.size() * craft.size() * itemSets.size();
+    }
+
+    /**
+     * get grid point by index, the last parameter changes fastest
+     * @param index cell index
+     * @return grid point
+     */
+    public Cell cell(long index) {
+        int itemSet = (int) (index % itemSets.size());
+        index /= itemSets.size();
+        int c = craft.get((int) (index % craft.size()));
+        index /= craft.size();
+        int s = strength.get((int) (index % strength.size()));
+        index /= strength.size();
+        int h = health.get((int) (index % health.size()));
+        index /= health.size();
+        int gh = guardianHealth.get((int) (index % guardianHealth.size()));
+        index /= guardianHealth.size();
+        int gc = guardianCraft.get((int) (index % guardianCraft.size()));
+        index /= guardianCraft.size();
+        int gs = guardianStrength.get((int) index);
+        return new Cell(gs, gc, gh, h, s, c, itemSets.get(itemSet));
+    }
+
+    /**
+     * run the whole grid and write header and rows, rows come in completion order
+     * @param out where the csv goes
+     * @param parallelism number of worker threads
+     * @throws IOException if writing fails
+     */
+    public void run(Writer out, int parallelism) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        out.flush();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new CellTask(this, out, 0, cellCount()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * simulate all games of one grid point
+     * @param index cell index, used to derive an independent dice stream
+     * @return results for that cell
+     */
+    public CellResult simulate(long index) {
+        Cell cell = cell(index);
+        SplittableRandom dice = new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+        CellResult result = new CellResult(cell);
+        for (int game = 0; game < gamesPerCell; game++) {
+            Dungeon dungeon = buildDungeon(cell);
+            dungeon.setNarrated(false);
+            dungeon.setDice(dice);
+            int turns = Simulation.play(dungeon, new GreedyPolicy(), MAX_TURNS);
+            result.add(dungeon.isWon(), turns, dungeon.getPlayer().getHealth());
+        }
+        return result;
+    }
+
+    /**
+     * build the game layout for a grid point
+     * @param cell grid point
+     * @return new dungeon with its own chambers and guardians
+     */
+    static Dungeon buildDungeon(Cell cell) {
+        Character player = new Adventurer("Hero", cell.health(), cell.strength(), cell.craft());
+        return Layout.standard(Layout.STANDARD, player,
+                new Monster("Goblin", cell.guardianStrength(), 0, cell.guardianHealth()),
+                new Monster("Spider", 0, cell.guardianCraft(), cell.guardianHealth()),
+                createItems(cell.itemSet())).getDungeon();
+    }
+
+    private static List<Item> createItems(String itemSet) {
+        List<Item> items = new ArrayList<>();
+        if (itemSet.isEmpty() || itemSet.equals("none")) {
+            return items;
+        }
+        for (String name : itemSet.split("\\+")) {
+            switch (name) {
+                case "Axe" -> items.add(new Axe());
+                case "Shield" -> items.add(new Shield());
+                default -> throw new IllegalArgumentException("Unknown item: " + name);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * command line entry, arguments are key=value pairs, ranges are from:to or from:to:step
+     * e.g. guardianStrength=0:4 guardianHealth=3:8 health=15:20 items=none,Axe,Axe+Shield games=10000 out=sweep.csv
+     * @param args sweep settings
+     * @throws IOException if the csv cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Range guardianStrength = Range.of(1);
+        Range guardianCraft = Range.of(3);
+        Range guardianHealth = new Range(3, 5, 1);
+        Range health = Range.of(15);
+        Range strength = Range.of(2);
+        Range craft = Range.of(5);
+        List<String> itemSets = List.of("none", "Axe", "Shield", "Axe+Shield");
+        int games = 10000;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String file = null;
+
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            String key = arg.substring(0, split);
+            String value = arg.substring(split + 1);
+            switch (key) {
+                case "guardianStrength" -> guardianStrength = Range.parse(value);
+                case "guardianCraft" -> guardianCraft = Range.parse(value);
+                case "guardianHealth" -> guardianHealth = Range.parse(value);
+                case "health" -> health = Range.parse(value);
+                case "strength" -> strength = Range.parse(value);
+                case "craft" -> craft = Range.parse(value);
+                case "items" -> itemSets = Arrays.asList(value.split(","));
+                case "games" -> games = Integer.parseInt(value);
+                case "seed" -> seed = Long.parseLong(value);
+                case "threads" -> threads = Integer.parseInt(value);
+                case "out" -> file = value;
+                default -> throw new IllegalArgumentException("Unknown setting: " + key);
+            }
+        }
+
+        BalanceSweep sweep = new BalanceSweep(guardianStrength, guardianCraft, guardianHealth, health, strength,
+                craft, itemSets, games, seed);
+        Writer out = file == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out))
+                : new BufferedWriter(new FileWriter(file));
+        try {
+            sweep.run(out, threads);
+        } finally {
+            out.flush();
+            if (file != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * inclusive range of integer values
+     * @param from first value
+     * @param to last value
+     * @param step distance between values
+     */
+    record Range(int from, int to, int step) {
+        Range {
+            if (step <= 0 || to < from) {
+                throw new IllegalArgumentException("Invalid range " + from + ":" + to + ":" + step);
+            }
+        }
+
+        /**
+         * range with a single value
+         * @param value the value
+         * @return range
+         */
+        static Range of(int value) {
+            return new Range(value, value, 1);
+        }
+
+        /**
+         * parse from:to:step, from:to or a single value
+         * @param text range text
+         * @return range
+         */
+        static Range parse(String text) {
+            String[] parts = text.split(":");
+            int from = Integer.parseInt(parts[0]);
+            int to = parts.length > 1 ? Integer.parseInt(parts[1]) : from;
+            int step = parts.length > 2 ? Integer.parseInt(parts[2]) : 1;
+            return new Range(from, to, step);
+        }
+
+        int size() {
+            return (to - from) / step + 1;
+        }
+
+        int get(int index) {
+            return from + index * step;
+        }
+    }
+
+    /**
+     * one grid point
+     */
+    record Cell(int guardianStrength, int guardianCraft, int guardianHealth, int health, int strength, int craft,
+                String itemSet) {
+    }
+
+    /**
+     * results of all games for one grid point
+     */
+    static final class CellResult {
+        private final Cell cell;
+        private final int[] healthLeft;
+        private int games;
+        private int wins;
+        private long turns;
+
+        CellResult(Cell cell) {
+            this.cell = cell;
+            this.healthLeft = new int[cell.health() + 1];
+        }
+
+        void add(boolean won, int gameTurns, int health) {
+            games++;
+            if (won) {
+                wins++;
+            }
+            turns += gameTurns;
+            healthLeft[Math.min(health, healthLeft.length - 1)]++;
+        }
+
+        public Cell getCell() {
+            return cell;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public double winRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        public double meanTurns() {
+            return games == 0 ? 0 : (double) turns / games;
+        }
+
+        /**
+         * health left at a percentile, exact since health is a small integer
+         * @param percentile value between 0 and 100
+         * @return health left
+         */
+        public int healthPercentile(double percentile) {
+            long rank = (long) Math.ceil(percentile / 100.0 * games);
+            long seen = 0;
+            for (int health = 0; health < healthLeft.length; health++) {
+                seen += healthLeft[health];
+                if (seen >= Math.max(rank, 1)) {
+                    return health;
+                }
+            }
+            return healthLeft.length - 1;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%s,%d,%.4f,%.2f,%d,%d,%d",
+                    cell.guardianStrength(), cell.guardianCraft(), cell.guardianHealth(), cell.health(),
+                    cell.strength(), cell.craft(), cell.itemSet(), games, winRate(), meanTurns(),
+                    healthPercentile(10), healthPercentile(50), healthPercentile(90));
+        }
+    }
+
+    /**
+     * splits a range of cells in half until a single cell is left, then simulates it
+     * tasks are never serialized, so the sweep and the writer they share are transient
+     */
+    private static final class CellTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BalanceSweep sweep;
+        private final transient Writer out;
+        private final long from;
+        private final long to;
+
+        CellTask(BalanceSweep sweep, Writer out, long from, long to) {
+            this.sweep = sweep;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new CellTask(sweep, out, from, middle), new CellTask(sweep, out, middle, to));
+                return;
+            }
+            String row = sweep.simulate(from).toCsv();
+            synchronized (out) {
+                try {
+                    out.write(row);
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
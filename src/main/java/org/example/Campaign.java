@@ -0,0 +1,277 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * several levels played one after the other by the same character
+ * the campaign listens to its dungeon, and once an action has left the player on a level's goal it puts them in
+ * the start chamber of the next level. the dungeon only gets a goal on the last level, so only the last goal ends
+ * the game. once the player is within the prefetch distance of the goal, counted in doors, the next level is built
+ * on the executor, so moving on normally finds it ready. a turn never waits for it, if it is late the player
+ * stays on the goal and moves on at the start of the first turn that finds it built.
+ * moving on is published as a {@link GameEvent.LevelChanged}, and actions on the old level cannot be undone
+ */
+class Campaign implements GameListener {
+    private final LevelGenerator generator;
+    private final int levels;
+    private final int prefetchDistance;
+    private final Executor executor;
+    private final Dungeon dungeon;
+    private int level;
+    private Level current;
+    private ChamberGraph graph;
+    private int[] toGoal;
+    private CompletableFuture<Level> next;
+    private boolean arrived;
+    private boolean scheduled;
+    private boolean stalled;
+
+    /**
+     * create campaign and build its first level
+     * @param player character playing every level
+     * @param generator builds the levels
+     * @param levels number of levels
+     * @param prefetchDistance doors from the goal at which the next level starts being built
+     * @param executor runs the background builds
+     */
+    public Campaign(Character player, LevelGenerator generator, int levels, int prefetchDistance, Executor executor) {
+        if (levels < 1) {
+            throw new IllegalArgumentException("A campaign needs at least one level");
+        }
+        this.generator = generator;
+        this.levels = levels;
+        this.prefetchDistance = prefetchDistance;
+        this.executor = executor;
+        Level first = generator.generate(0);
+        dungeon = new Dungeon(player, first.startChamber(), first.goalChamber());
+        dungeon.addListener(this);
+        enter(first);
+    }
+
+    /**
+     * get dungeon the campaign is played in
+     * @return dungeon
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    /**
+     * get level the player is on
+     * @return level index, starting at 0
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * get number of levels
+     * @return levels
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * get chambers of the level the player is on
+     * @return chambers
+     */
+    public Chamber[] getChambers() {
+        return current.chambers();
+    }
+
+    /**
+     * check if the next level is being built or ready
+     * @return true once the prefetch has started
+     */
+    public boolean isPrefetching() {
+        return next != null;
+    }
+
+    /**
+     * check if a level change found its level still being built, which means the prefetch came too late
+     * @return true if any level change was held up
+     */
+    public boolean hasStalled() {
+        return stalled;
+    }
+
+    /**
+     * move on to the next level if the player is on the level's goal and the next level is built, never waits.
+     * runs by itself after every action that leaves the player on the goal and again at the start of each turn
+     * while the level is late, and can be called on the player's thread to check right away
+     * @return true if the player is on the next level now
+     */
+    public boolean advance() {
+        scheduled = false;
+        if (!arrived || dungeon.getCurrentChamber() != current.goalChamber()) {
+            return false;
+        }
+        if (!next.isDone()) {
+            stalled = true;
+            scheduled = true;
+            dungeon.runBeforeTurn(this::advance);
+            return false;
+        }
+        // already built, join only picks up the level or the generator's exception
+        Level following = next.join();
+        level++;
+        arrived = false;
+        enter(following);
+        dungeon.changeLevel(following.startChamber());
+        return true;
+    }
+
+    @Override
+    public void onEvent(GameEvent event) {
+        if (level + 1 >= levels) {
+            return;
+        }
+        if (event instanceof GameEvent.Moved moved) {
+            arrived = moved.to() == current.goalChamber();
+            if (arrived && next == null) {
+                prefetch();
+            } else if (next == null) {
+                int chamber = graph.indexOf(moved.to());
+                if (chamber >= 0 && toGoal[chamber] >= 0 && toGoal[chamber] <= prefetchDistance) {
+                    prefetch();
+                }
+            }
+        }
+        if (arrived && !scheduled) {
+            scheduled = true;
+            dungeon.runAfterAction(this::advance);
+        }
+    }
+
+    private void prefetch() {
+        int index = level + 1;
+        next = CompletableFuture.supplyAsync(() -> generator.generate(index), executor);
+    }
+
+    private void enter(Level entered) {
+        current = entered;
+        next = null;
+        dungeon.setGoalChamber(level + 1 < levels ? null : entered.goalChamber());
+        graph = ChamberGraph.of(entered.chambers());
+        // doors from every chamber to the goal, guardians do not count since the player may defeat them
+        toGoal = new int[graph.size()];
+        Arrays.fill(toGoal, -1);
+        int goal = graph.indexOf(entered.goalChamber());
+        toGoal[goal] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(goal);
+        while (!queue.isEmpty()) {
+            int chamber = queue.poll();
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                int neighbour = graph.neighbour(p);
+                if (toGoal[neighbour] < 0) {
+                    toGoal[neighbour] = toGoal[chamber] + 1;
+                    queue.add(neighbour);
+                }
+            }
+        }
+        int start = toGoal[graph.indexOf(entered.startChamber())];
+        if (level + 1 < levels && start >= 0 && start <= prefetchDistance) {
+            prefetch();
+        }
+    }
+}
+
+/**
+ * chambers of one level with where it starts and ends
+ * @param chambers all chambers of the level
+ * @param start index of the start chamber
+ * @param goal index of the goal chamber
+ */
+record Level(Chamber[] chambers, int start, int goal) {
+    /**
+     * take the chambers of a layout, its player is left out
+     * @param layout layout
+     * @return level starting where the layout's player is
+     */
+    static Level of(Layout layout) {
+        Dungeon dungeon = layout.getDungeon();
+        return new Level(layout.getChambers(), layout.indexOf(dungeon.getCurrentChamber()),
+                layout.indexOf(dungeon.getGoalChamber()));
+    }
+
+    /**
+     * get start chamber
+     * @return start chamber
+     */
+    Chamber startChamber() {
+        return chambers[start];
+    }
+
+    /**
+     * get goal chamber
+     * @return goal chamber
+     */
+    Chamber goalChamber() {
+        return chambers[goal];
+    }
+}
+
+/**
+ * builds the levels of a campaign, may be called from a background thread
+ */
+interface LevelGenerator {
+    /**
+     * build a level
+     * @param index level index, starting at 0
+     * @return new level with its own chambers
+     */
+    Level generate(int index);
+
+    /**
+     * every level is a new copy of a known layout
+     * @param layoutId layout id
+     * @return generator
+     */
+    static LevelGenerator of(int layoutId) {
+        return index -> Level.of(Layout.create(layoutId));
+    }
+
+    /**
+     * random levels that grow and get harder the deeper they are
+     * a corridor of chambers from start to goal with guarded doors along it, a few extra doors that make loops,
+     * and items lying around. the same seed and index always give the same level
+     * @param seed seed
+     * @return generator
+     */
+    static LevelGenerator random(long seed) {
+        return index -> {
+            SplittableRandom random = new SplittableRandom(seed ^ (index + 1) * 0x9E3779B97F4A7C15L);
+            Chamber[] chambers = new Chamber[5 + 2 * index];
+            for (int i = 0; i < chambers.length; i++) {
+                chambers[i] = new Chamber();
+                if (random.nextInt(4) == 0) {
+                    chambers[i].addItem(random.nextBoolean() ? new Axe() : new Shield());
+                }
+            }
+            for (int i = 1; i < chambers.length; i++) {
+                Monster guardian = null;
+                if (random.nextInt(3) == 0) {
+                    boolean strong = random.nextBoolean();
+                    int stat = 1 + index + random.nextInt(2);
+                    guardian = new Monster(strong ? "Orc" : "Wraith", strong ? stat : 0, strong ? 0 : stat,
+                            3 + index + random.nextInt(3));
+                }
+                Door.connect(chambers[i - 1], chambers[i], guardian);
+            }
+            for (int i = 0; i < index; i++) {
+                int a = random.nextInt(chambers.length);
+                int b = random.nextInt(chambers.length);
+                if (Math.abs(a - b) > 1) {
+                    Door.connect(chambers[a], chambers[b]);
+                }
+            }
+            return new Level(chambers, 0, chambers.length - 1);
+        };
+    }
+}
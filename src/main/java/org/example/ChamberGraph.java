@@ -0,0 +1,186 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * index of a chamber/door graph as primitive arrays, so graph algorithms can work on ints
+ * chambers get the index of their position in the array the graph was built from,
+ * each door becomes one edge, and the neighbours of every chamber are stored in compressed rows
+ */
+class ChamberGraph {
+    private final Chamber[] chambers;
+    private final Map<Chamber, Integer> indexes;
+    private final Door[] doors;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] offsets;
+    private final int[] neighbours;
+    private final int[] neighbourEdges;
+
+    private ChamberGraph(Chamber[] chambers, Map<Chamber, Integer> indexes, Door[] doors, int[] edgeFrom, int[] edgeTo) {
+        this.chambers = chambers;
+        this.indexes = indexes;
+        this.doors = doors;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+
+        offsets = new int[chambers.length + 1];
+        for (int e = 0; e < edgeFrom.length; e++) {
+            offsets[edgeFrom[e] + 1]++;
+            offsets[edgeTo[e] + 1]++;
+        }
+        for (int i = 0; i < chambers.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        neighbours = new int[edgeFrom.length * 2];
+        neighbourEdges = new int[edgeFrom.length * 2];
+        int[] fill = Arrays.copyOf(offsets, chambers.length);
+        for (int e = 0; e < edgeFrom.length; e++) {
+            neighbours[fill[edgeFrom[e]]] = edgeTo[e];
+            neighbourEdges[fill[edgeFrom[e]]++] = e;
+            neighbours[fill[edgeTo[e]]] = edgeFrom[e];
+            neighbourEdges[fill[edgeTo[e]]++] = e;
+        }
+    }
+
+    /**
+     * build graph over the given chambers, doors leading to chambers outside the array are ignored
+     * @param chambers all chambers
+     * @return graph
+     */
+    public static ChamberGraph of(Chamber[] chambers) {
+        Map<Chamber, Integer> indexes = new IdentityHashMap<>(chambers.length * 2);
+        for (int i = 0; i < chambers.length; i++) {
+            indexes.put(chambers[i], i);
+        }
+        int count = 0;
+        for (Chamber chamber : chambers) {
+            count += chamber.getDoors().size();
+        }
+        Door[] doors = new Door[count / 2 + 1];
+        int[] from = new int[doors.length];
+        int[] to = new int[doors.length];
+        int edges = 0;
+        for (int i = 0; i < chambers.length; i++) {
+            List<Door> chamberDoors = chambers[i].getDoors();
+            for (Door door : chamberDoors) {
+                Integer other = indexes.get(door.getOtherChamber(chambers[i]));
+                // every door is listed by both of its chambers, keep it once
+                if (other == null || other <= i) {
+                    continue;
+                }
+                if (edges == doors.length) {
+                    doors = Arrays.copyOf(doors, edges * 2);
+                    from = Arrays.copyOf(from, edges * 2);
+                    to = Arrays.copyOf(to, edges * 2);
+                }
+                doors[edges] = door;
+                from[edges] = i;
+                to[edges++] = other;
+            }
+        }
+        return new ChamberGraph(chambers, indexes, Arrays.copyOf(doors, edges),
+                Arrays.copyOf(from, edges), Arrays.copyOf(to, edges));
+    }
+
+    /**
+     * get number of chambers
+     * @return number of chambers
+     */
+    public int size() {
+        return chambers.length;
+    }
+
+    /**
+     * get chamber index
+     * @param chamber chamber
+     * @return index or -1 if the chamber is not in the graph
+     */
+    public int indexOf(Chamber chamber) {
+        Integer index = indexes.get(chamber);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * get chamber by index
+     * @param index chamber index
+     * @return chamber
+     */
+    public Chamber chamber(int index) {
+        return chambers[index];
+    }
+
+    /**
+     * get number of doors
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return doors.length;
+    }
+
+    /**
+     * get door of an edge
+     * @param edge edge index
+     * @return door
+     */
+    public Door door(int edge) {
+        return doors[edge];
+    }
+
+    /**
+     * get one end of an edge
+     * @param edge edge index
+     * @return chamber index
+     */
+    public int edgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    /**
+     * get other end of an edge
+     * @param edge edge index
+     * @return chamber index
+     */
+    public int edgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    /**
+     * get first position of a chamber's neighbours in {@link #neighbour(int)}
+     * @param chamber chamber index
+     * @return start position
+     */
+    public int firstNeighbour(int chamber) {
+        return offsets[chamber];
+    }
+
+    /**
+     * get position after the last neighbour of a chamber
+     * @param chamber chamber index
+     * @return end position, exclusive
+     */
+    public int endNeighbour(int chamber) {
+        return offsets[chamber + 1];
+    }
+
+    /**
+     * get neighbour at a position
+     * @param position position between first and end neighbour
+     * @return chamber index of the neighbour
+     */
+    public int neighbour(int position) {
+        return neighbours[position];
+    }
+
+    /**
+     * get edge leading to the neighbour at a position
+     * @param position position between first and end neighbour
+     * @return edge index
+     */
+    public int neighbourEdge(int position) {
+        return neighbourEdges[position];
+    }
+}
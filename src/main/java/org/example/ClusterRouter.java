@@ -0,0 +1,588 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * thin http router in front of several {@link GameServer} processes, each owning a shard of the sessions
+ * the router picks session ids itself and places every session on the node a consistent hash ring gives for
+ * its id, so finding a session needs no lookup table. when a node joins or leaves only the sessions whose place
+ * on the ring changed are handed off: the old node detaches the session and returns it in {@link SessionCodec}
+ * form, and the new node takes it over with the same id and turn count.
+ * sessions are handed off one at a time. a moving session holds the write lock of its stripe and requests take
+ * the read lock of theirs, so no request sees a session while it moves and the rest of the cluster keeps serving.
+ * if the new node does not take a session it goes back to the old one. event streams are redirected to the owning
+ * node instead of being forwarded.
+ * besides the session endpoints of the game server it has
+ * GET /nodes to list the nodes, PUT /nodes?url=http://127.0.0.1:8081 to add one, DELETE /nodes?url=... to drain
+ * and remove one and DELETE /nodes?evict=... to drop a node that is down together with its sessions.
+ * leaderboards stay per node.
+ * to run a cluster on one machine start a few game servers on their own ports, then
+ * java org.example.ClusterRouter 8080 http://127.0.0.1:8081 http://127.0.0.1:8082
+ */
+class ClusterRouter implements AutoCloseable {
+    /**
+     * virtual nodes per node, enough to keep shards within a few percent of each other
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+    private static final int STRIPES = 64;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    // joins and leaves run one at a time. the write lock is only taken to switch rings, never across a call to a
+    // node, and creates hold the read lock so none is placed by a ring that is being switched
+    private final ReentrantLock changes = new ReentrantLock();
+    private final ReadWriteLock membership = new ReentrantReadWriteLock();
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+    private final Set<Long> sessions = ConcurrentHashMap.newKeySet();
+    // sessions that are not on the node the ring gives them, while a rebalance runs or after one failed
+    private final Map<Long, String> placed = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LongAdder handoffs = new LongAdder();
+    private volatile HashRing ring;
+    // ring a running rebalance moves to, new sessions are placed by it
+    private volatile HashRing target;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * create router with the default number of virtual nodes
+     */
+    public ClusterRouter() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * create router without nodes
+     * @param virtualNodes points on the ring per node
+     */
+    public ClusterRouter(int virtualNodes) {
+        this.ring = new HashRing(virtualNodes);
+        for (int s = 0; s < STRIPES; s++) {
+            stripes[s] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * start listening on the loopback interface
+     * @param port port, 0 picks a free one
+     * @return port the router is bound to
+     * @throws IOException if the port cannot be bound
+     */
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/sessions", this::handle);
+        server.createContext("/nodes", this::handle);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * stop router, the nodes keep running
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * add a node and hand it the sessions that now hash to it
+     * @param node base url of a game server, like http://127.0.0.1:8081
+     * @throws IOException if a hand off fails, the sessions then go back where they were
+     * @throws InterruptedException if interrupted while talking to a node
+     */
+    public void join(URI node) throws IOException, InterruptedException {
+        changes.lock();
+        try {
+            rebalance(ring.with(node.toString()));
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    /**
+     * hand the sessions of a node to the others and remove it
+     * @param node base url the node joined with
+     * @throws IOException if a hand off fails, the node then stays, use {@link #evict} for a node that is down
+     * @throws InterruptedException if interrupted while talking to a node
+     */
+    public void leave(URI node) throws IOException, InterruptedException {
+        changes.lock();
+        try {
+            HashRing next = ring.without(node.toString());
+            if (next.isEmpty() && !sessions.isEmpty()) {
+                throw new IllegalStateException("Last node cannot leave while it has sessions");
+            }
+            rebalance(next);
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    /**
+     * remove a node without talking to it, for a node that is down and cannot hand its sessions off
+     * @param node base url the node joined with
+     * @return number of sessions that were on the node and are gone with it
+     */
+    public int evict(URI node) {
+        String name = node.toString();
+        changes.lock();
+        membership.writeLock().lock();
+        try {
+            int lost = 0;
+            for (Long id : sessions) {
+                if (name.equals(owner(id))) {
+                    sessions.remove(id);
+                    placed.remove(id);
+                    lost++;
+                }
+            }
+            // only the evicted node's keys change owner, so every other session stays where it is
+            ring = ring.without(name);
+            return lost;
+        } finally {
+            membership.writeLock().unlock();
+            changes.unlock();
+        }
+    }
+
+    /**
+     * get node owning a session
+     * @param id session id
+     * @return base url of the node, or null without nodes
+     */
+    public URI ownerOf(long id) {
+        String node = owner(id);
+        return node == null ? null : URI.create(node);
+    }
+
+    /**
+     * get nodes
+     * @return base urls in the order they joined
+     */
+    public List<URI> getNodes() {
+        return ring.nodes().stream().map(URI::create).toList();
+    }
+
+    /**
+     * get number of sessions created through the router and not yet deleted
+     * @return session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * get number of sessions moved between nodes
+     * @return hand offs since creation
+     */
+    public long getHandoffs() {
+        return handoffs.sum();
+    }
+
+    private String owner(long id) {
+        String node = placed.get(id);
+        return node != null ? node : ring.nodeFor(id);
+    }
+
+    private ReadWriteLock stripe(long id) {
+        return stripes[(int) (id & (STRIPES - 1))];
+    }
+
+    // only called while holding changes
+    private void rebalance(HashRing next) throws IOException, InterruptedException {
+        switchTo(ring, next);
+        List<Long> moved = new ArrayList<>();
+        try {
+            for (Long id : sessions) {
+                String from = owner(id);
+                String to = next.nodeFor(id);
+                if (from != null && !from.equals(to)) {
+                    handoff(id, from, to);
+                    moved.add(id);
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // the ring stays as it was, so the sessions already moved go back. one that cannot stays placed
+            // where it is and is still found
+            for (Long id : moved) {
+                try {
+                    handoff(id, owner(id), ring.nodeFor(id));
+                } catch (IOException | InterruptedException | RuntimeException back) {
+                    e.addSuppressed(back);
+                }
+            }
+            switchTo(ring, null);
+            throw e;
+        }
+        switchTo(next, null);
+    }
+
+    private void switchTo(HashRing next, HashRing moving) {
+        membership.writeLock().lock();
+        try {
+            ring = next;
+            target = moving;
+            placed.entrySet().removeIf(entry -> entry.getValue().equals(next.nodeFor(entry.getKey())));
+        } finally {
+            membership.writeLock().unlock();
+        }
+    }
+
+    private void handoff(long id, String from, String to) throws IOException, InterruptedException {
+        Lock lock = stripe(id).writeLock();
+        lock.lock();
+        try {
+            HttpResponse<byte[]> detached = send(from, "POST", "/sessions/" + id + "/detach", null);
+            if (detached.statusCode() == 404) {
+                // ended on its node without the router seeing it
+                sessions.remove(id);
+                placed.remove(id);
+                return;
+            }
+            check(detached, from);
+            try {
+                check(send(to, "PUT", "/sessions/" + id, detached.body()), to);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // give it back so it is not lost, then report the failure
+                try {
+                    check(send(from, "PUT", "/sessions/" + id, detached.body()), from);
+                } catch (IOException | InterruptedException | RuntimeException back) {
+                    e.addSuppressed(back);
+                }
+                throw e;
+            }
+            if (to.equals(ring.nodeFor(id))) {
+                placed.remove(id);
+            } else {
+                placed.put(id, to);
+            }
+            handoffs.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            route(exchange);
+        } catch (NumberFormatException e) {
+            error(exchange, 400, "Invalid number in request");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            error(exchange, 400, e.getMessage());
+        } catch (IOException e) {
+            error(exchange, 502, "Node failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error(exchange, 503, "Interrupted");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException, InterruptedException {
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+        if (parts[1].equals("nodes")) {
+            manage(exchange, method);
+            return;
+        }
+        if (parts.length == 2) {
+            if (method.equals("POST")) {
+                create(exchange);
+            } else {
+                error(exchange, 405, "Use POST to create a session");
+            }
+            return;
+        }
+        long id = Long.parseLong(parts[2]);
+        if (parts.length == 4 && parts[3].equals("events")) {
+            URI owner = ownerOf(id);
+            if (owner == null) {
+                error(exchange, 503, "No nodes");
+                return;
+            }
+            exchange.getResponseHeaders().set("Location", owner + exchange.getRequestURI().getRawPath());
+            exchange.sendResponseHeaders(307, -1);
+            return;
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            String owner = owner(id);
+            if (owner == null || !sessions.contains(id)) {
+                error(exchange, 404, "No such session");
+                return;
+            }
+            HttpResponse<byte[]> response = send(owner, method, exchange.getRequestURI().getRawPath(), body);
+            if (parts.length == 3 && method.equals("DELETE") && response.statusCode() == 204) {
+                sessions.remove(id);
+            }
+            forward(exchange, response);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void create(HttpExchange exchange) throws IOException, InterruptedException {
+        String query = exchange.getRequestURI().getRawQuery();
+        membership.readLock().lock();
+        try {
+            // while a rebalance runs new sessions go straight where it moves them
+            HashRing places = target != null ? target : ring;
+            if (places.isEmpty()) {
+                error(exchange, 503, "No nodes");
+                return;
+            }
+            long id = nextId.getAndIncrement();
+            String owner = places.nodeFor(id);
+            HttpResponse<byte[]> response = send(owner, "PUT", "/sessions/" + id + (query == null ? "" : "?" + query),
+                    null);
+            if (response.statusCode() == 201) {
+                if (!owner.equals(ring.nodeFor(id))) {
+                    placed.put(id, owner);
+                }
+                sessions.add(id);
+            }
+            forward(exchange, response);
+        } finally {
+            membership.readLock().unlock();
+        }
+    }
+
+    private void manage(HttpExchange exchange, String method) throws IOException, InterruptedException {
+        String query = exchange.getRequestURI().getQuery();
+        if (method.equals("GET")) {
+            List<URI> nodes = getNodes();
+            respond(exchange, 200, json -> {
+                json.beginArray();
+                for (URI node : nodes) {
+                    json.value(node.toString());
+                }
+                json.endArray();
+            });
+            return;
+        }
+        if (query != null && query.startsWith("evict=") && method.equals("DELETE")) {
+            evict(URI.create(query.substring("evict=".length())));
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+        if (query == null || !query.startsWith("url=")) {
+            throw new IllegalArgumentException("Give the node as url=...");
+        }
+        URI node = URI.create(query.substring("url=".length()));
+        if (method.equals("PUT")) {
+            join(node);
+        } else if (method.equals("DELETE")) {
+            leave(node);
+        } else {
+            error(exchange, 405, "Use PUT or DELETE to change nodes");
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private HttpResponse<byte[]> send(String node, String method, String path, byte[] body)
+            throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = body == null || body.length == 0
+                ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(node + path)).method(method, publisher).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static void check(HttpResponse<byte[]> response, String node) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(node + " answered " + response.statusCode() + " "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void forward(HttpExchange exchange, HttpResponse<byte[]> response) throws IOException {
+        response.headers().firstValue("Content-Type")
+                .ifPresent(type -> exchange.getResponseHeaders().set("Content-Type", type));
+        byte[] body = response.body();
+        exchange.sendResponseHeaders(response.statusCode(), body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+    }
+
+    private static void respond(HttpExchange exchange, int status, GameServer.JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 512);
+        body.write(new JsonWriter(out));
+        out.flush();
+    }
+
+    /**
+     * start router from the command line
+     * @param args port, then the base urls of the nodes
+     * @throws Exception if the port cannot be bound or a node cannot be reached
+     */
+    public static void main(String[] args) throws Exception {
+        ClusterRouter router = new ClusterRouter();
+        int port = router.start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        for (int i = 1; i < args.length; i++) {
+            router.join(URI.create(args[i]));
+        }
+        System.out.println("Cluster router listening on http://localhost:" + port + "/sessions");
+    }
+}
+
+/**
+ * consistent hash ring with virtual nodes
+ * every node is put on the ring many times, a key belongs to the first point at or after its hash. adding or
+ * removing a node only moves the keys next to its points, about one in n of them. rings never change, adding or
+ * removing a node gives a new ring
+ */
+final class HashRing {
+    private final int virtualNodes;
+    private final List<String> nodes;
+    // ring points sorted by hash, owners[i] owns the keys from the point before up to hashes[i]
+    private final long[] hashes;
+    private final String[] owners;
+
+    /**
+     * create empty ring
+     * @param virtualNodes points per node
+     */
+    public HashRing(int virtualNodes) {
+        this(virtualNodes, List.of());
+    }
+
+    private HashRing(int virtualNodes, List<String> nodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A node needs at least one point on the ring");
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodes = List.copyOf(nodes);
+        long[][] points = new long[nodes.size() * virtualNodes][];
+        for (int n = 0; n < nodes.size(); n++) {
+            long base = hash(nodes.get(n));
+            for (int v = 0; v < virtualNodes; v++) {
+                points[n * virtualNodes + v] = new long[]{mix(base + v * 0x9E3779B97F4A7C15L), n};
+            }
+        }
+        // ties go to the node that joined first, so every router builds the same ring
+        Arrays.sort(points, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        hashes = new long[points.length];
+        owners = new String[points.length];
+        for (int p = 0; p < points.length; p++) {
+            hashes[p] = points[p][0];
+            owners[p] = nodes.get((int) points[p][1]);
+        }
+    }
+
+    /**
+     * get ring with one more node
+     * @param node node name
+     * @return new ring, or this one if the node is on it
+     */
+    public HashRing with(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        List<String> next = new ArrayList<>(nodes);
+        next.add(node);
+        return new HashRing(virtualNodes, next);
+    }
+
+    /**
+     * get ring without a node
+     * @param node node name
+     * @return new ring, or this one if the node is not on it
+     */
+    public HashRing without(String node) {
+        if (!nodes.contains(node)) {
+            return this;
+        }
+        List<String> next = new ArrayList<>(nodes);
+        next.remove(node);
+        return new HashRing(virtualNodes, next);
+    }
+
+    /**
+     * get node owning a key
+     * @param key key
+     * @return node, or null if the ring is empty
+     */
+    public String nodeFor(long key) {
+        if (hashes.length == 0) {
+            return null;
+        }
+        int point = Arrays.binarySearch(hashes, mix(key));
+        if (point < 0) {
+            point = -point - 1;
+        }
+        return owners[point == hashes.length ? 0 : point];
+    }
+
+    /**
+     * get nodes
+     * @return node names in the order they were added
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * check if ring has no nodes
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private static long hash(String node) {
+        // fnv-1a over 64 bits, 32 bit hash codes of similar urls land too close together
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
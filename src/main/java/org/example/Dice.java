@@ -0,0 +1,338 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * dice rolled in fights: any number of dice with any number of sides, faces may be weighted
+ * the distribution of the total is worked out once and put in an alias table, so a roll costs one random
+ * number and two array reads however many dice or sides there are. a single fair die is rolled with
+ * nextInt instead, which draws the same numbers as before dice could be configured, so seeded games stay the same
+ */
+final class Dice {
+    /**
+     * one fair six sided die
+     */
+    public static final Dice STANDARD = new Dice(1, 6);
+
+    private final int count;
+    private final int sides;
+    private final double[] faces;
+    private final double[] totals;
+    private final double[] differences;
+    private final boolean weighted;
+    private final AliasTable table;
+
+    /**
+     * create fair dice
+     * @param count number of dice
+     * @param sides sides of each die
+     */
+    public Dice(int count, int sides) {
+        this(count, uniform(sides));
+    }
+
+    private Dice(int count, double[] faces) {
+        if (count < 1 || faces.length < 1) {
+            throw new IllegalArgumentException("Dice need at least one die with at least one side");
+        }
+        this.count = count;
+        this.sides = faces.length;
+        double sum = 0;
+        for (double face : faces) {
+            if (!(face >= 0)) {
+                throw new IllegalArgumentException("Face weights must not be negative");
+            }
+            sum += face;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Some face must have weight");
+        }
+        double[] die = new double[faces.length];
+        for (int f = 0; f < faces.length; f++) {
+            die[f] = faces[f] / sum;
+        }
+        // totals[t] is the chance of rolling count + t, one convolution per extra die
+        double[] distribution = die;
+        for (int d = 1; d < count; d++) {
+            double[] next = new double[distribution.length + die.length - 1];
+            for (int t = 0; t < distribution.length; t++) {
+                for (int f = 0; f < die.length; f++) {
+                    next[t + f] += distribution[t] * die[f];
+                }
+            }
+            distribution = next;
+        }
+        this.faces = die;
+        this.totals = distribution;
+        // differences[k] is the chance of the first of two rolls being k - (max - min) more than the second
+        differences = new double[2 * distribution.length - 1];
+        for (int first = 0; first < distribution.length; first++) {
+            for (int second = 0; second < distribution.length; second++) {
+                differences[first - second + distribution.length - 1] += distribution[first] * distribution[second];
+            }
+        }
+        boolean fair = true;
+        for (int f = 1; f < faces.length && fair; f++) {
+            fair = faces[f] == faces[0];
+        }
+        this.weighted = !fair;
+        this.table = fair && count == 1 ? null : new AliasTable(distribution);
+    }
+
+    /**
+     * create dice with weighted faces
+     * @param count number of dice
+     * @param faces weight of each face, the first face shows 1, weights need not add up to anything
+     * @return dice
+     */
+    public static Dice weighted(int count, double... faces) {
+        return new Dice(count, faces.clone());
+    }
+
+    /**
+     * roll the dice
+     * @param random random source
+     * @return total of all dice
+     */
+    public int roll(RandomGenerator random) {
+        return count + (table == null ? random.nextInt(sides) : table.sample(random));
+    }
+
+    /**
+     * get lowest total
+     * @return total when every die shows 1
+     */
+    public int min() {
+        return count;
+    }
+
+    /**
+     * get highest total
+     * @return total when every die shows its highest face
+     */
+    public int max() {
+        return count * sides;
+    }
+
+    /**
+     * get chance of a total
+     * @param total total of all dice
+     * @return probability, 0 outside min to max
+     */
+    public double probability(int total) {
+        return total < min() || total > max() ? 0 : totals[total - count];
+    }
+
+    /**
+     * get chance of the difference between two rolls, such as the player's and the monster's in a fight
+     * @param difference first total minus second total
+     * @return probability, 0 beyond max - min either way
+     */
+    public double difference(int difference) {
+        int index = difference + totals.length - 1;
+        return index < 0 || index >= differences.length ? 0 : differences[index];
+    }
+
+    /**
+     * get number of dice
+     * @return dice rolled together
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * get weight of each face
+     * @return weights adding up to 1, the first face shows 1
+     */
+    public double[] getFaces() {
+        return faces.clone();
+    }
+
+    /**
+     * check if the dice are weighted
+     * @return true if some face is more likely than another
+     */
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    @Override
+    public String toString() {
+        return count + "d" + sides + (weighted ? " weighted" : "");
+    }
+
+    private static double[] uniform(int sides) {
+        if (sides < 1) {
+            throw new IllegalArgumentException("A die needs at least one side");
+        }
+        double[] faces = new double[sides];
+        Arrays.fill(faces, 1);
+        return faces;
+    }
+}
+
+/**
+ * what a monster may drop when it is defeated, each entry with a weight, plus a weight for dropping nothing
+ * an alias table over the entries is built once, so a drop costs the same for any table size. the table never
+ * changes and can be shared by any number of monsters
+ */
+final class LootTable {
+    private final double nothing;
+    private final List<Drop> drops;
+    private final List<Supplier<Item>> items;
+    private final AliasTable table;
+
+    /**
+     * create loot table
+     * @param nothing weight of dropping nothing
+     * @param drops items and their weights
+     */
+    public LootTable(double nothing, List<Drop> drops) {
+        this.nothing = nothing;
+        this.drops = List.copyOf(drops);
+        items = drops.stream().map(Drop::item).toList();
+        double[] weights = new double[drops.size() + 1];
+        weights[0] = nothing;
+        for (int d = 0; d < drops.size(); d++) {
+            weights[d + 1] = drops.get(d).weight();
+        }
+        table = new AliasTable(weights);
+    }
+
+    /**
+     * create loot table
+     * @param nothing weight of dropping nothing
+     * @param drops items and their weights
+     * @return loot table
+     */
+    public static LootTable of(double nothing, Drop... drops) {
+        return new LootTable(nothing, List.of(drops));
+    }
+
+    /**
+     * roll for a drop
+     * @param random random source
+     * @return new item, or null if nothing drops
+     */
+    public Item roll(RandomGenerator random) {
+        int entry = table.sample(random);
+        return entry == 0 ? null : items.get(entry - 1).get();
+    }
+
+    /**
+     * get number of entries
+     * @return items that can drop
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * get weight of dropping nothing
+     * @return weight against the entries
+     */
+    public double getNothing() {
+        return nothing;
+    }
+
+    /**
+     * get entries
+     * @return items that can drop with their weights
+     */
+    public List<Drop> getDrops() {
+        return drops;
+    }
+
+    /**
+     * one entry of a loot table
+     * @param weight weight against the other entries
+     * @param item makes the dropped item, every drop gets a new one
+     */
+    record Drop(double weight, Supplier<Item> item) {
+    }
+}
+
+/**
+ * samples an index in proportion to its weight in constant time, by Vose's alias method
+ * every index owns a column of equal height split between itself and at most one alias, so a sample picks a
+ * column and a height with one random number
+ */
+final class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * build table
+     * @param weights weight of every index, not negative and not all 0
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        double sum = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and not negative");
+            }
+            sum += weight;
+        }
+        if (n == 0 || sum <= 0) {
+            throw new IllegalArgumentException("Some weight must be positive");
+        }
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] += scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // what is left is 1 up to rounding
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * draw an index
+     * @param random random source
+     * @return index, drawn with the chance of its weight
+     */
+    public int sample(RandomGenerator random) {
+        double u = random.nextDouble() * probability.length;
+        int column = Math.min((int) u, probability.length - 1);
+        return u - column < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * get number of indexes
+     * @return size
+     */
+    public int size() {
+        return probability.length;
+    }
+}
@@ -0,0 +1,705 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * a layout frozen into arrays that any number of sessions play at once
+ * the template itself never changes. every session gets an {@link Overlay} with what it changed, and chambers,
+ * doors and guardians of the session are thin views over template and overlay, made the first time the player
+ * meets them. opening a session therefore costs the same for any layout size, and a session's memory grows only
+ * with the chambers it visits and the items and guardians it touches. items never change, so every session
+ * shares the template's item objects
+ */
+final class DungeonTemplate {
+    private static final Map<Integer, DungeonTemplate> KNOWN = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final int chambers;
+    private final int start;
+    private final int goal;
+    // doors of every chamber in the chamber's own door order, as compressed rows of door ids
+    private final int[] doorOffsets;
+    private final int[] chamberDoors;
+    private final int[] doorChamber1;
+    private final int[] doorChamber2;
+    // guardian of every door or -1, guardians are monsters of a store nobody writes to
+    private final int[] guardianOf;
+    private final MonsterStore guardians;
+    private final LootTable[] loot;
+    private final int[] itemOffsets;
+    private final Item[] items;
+
+    private DungeonTemplate(int id, Chamber[] chambers, Chamber start, Chamber goal) {
+        this.id = id;
+        this.chambers = chambers.length;
+        Map<Chamber, Integer> chamberIds = new IdentityHashMap<>(chambers.length * 2);
+        for (int c = 0; c < chambers.length; c++) {
+            chamberIds.put(chambers[c], c);
+        }
+        Integer startId = chamberIds.get(start);
+        Integer goalId = chamberIds.get(goal);
+        if (startId == null || goalId == null) {
+            throw new IllegalArgumentException("Start and goal must be part of the dungeon");
+        }
+        this.start = startId;
+        this.goal = goalId;
+
+        Map<Door, Integer> doorIds = new IdentityHashMap<>();
+        List<Door> doors = new ArrayList<>();
+        List<Integer> firstChambers = new ArrayList<>();
+        doorOffsets = new int[chambers.length + 1];
+        List<Integer> rows = new ArrayList<>();
+        List<Item> allItems = new ArrayList<>();
+        itemOffsets = new int[chambers.length + 1];
+        for (int c = 0; c < chambers.length; c++) {
+            int chamber = c;
+            for (Door door : chambers[c].getDoors()) {
+                if (!chamberIds.containsKey(door.getOtherChamber(chambers[c]))) {
+                    throw new IllegalArgumentException("Door leads out of the dungeon");
+                }
+                rows.add(doorIds.computeIfAbsent(door, key -> {
+                    doors.add(key);
+                    firstChambers.add(chamber);
+                    return doors.size() - 1;
+                }));
+            }
+            doorOffsets[c + 1] = rows.size();
+            allItems.addAll(chambers[c].getItems());
+            itemOffsets[c + 1] = allItems.size();
+        }
+        chamberDoors = rows.stream().mapToInt(Integer::intValue).toArray();
+        items = allItems.toArray(new Item[0]);
+
+        doorChamber1 = new int[doors.size()];
+        doorChamber2 = new int[doors.size()];
+        guardianOf = new int[doors.size()];
+        guardians = new MonsterStore(doors.size());
+        List<LootTable> tables = new ArrayList<>();
+        for (int d = 0; d < doors.size(); d++) {
+            Door door = doors.get(d);
+            doorChamber1[d] = firstChambers.get(d);
+            doorChamber2[d] = chamberIds.get(door.getOtherChamber(chambers[doorChamber1[d]]));
+            Monster guardian = door.isLocked() ? door.getGuardian() : null;
+            guardianOf[d] = guardian == null ? -1 : guardians.add(guardian.getName(), guardian.getStrength(),
+                    guardian.getCraft(), guardian.getHealth());
+            if (guardian != null) {
+                tables.add(guardian.getLoot());
+            }
+        }
+        loot = tables.toArray(new LootTable[0]);
+    }
+
+    /**
+     * freeze a layout at its start, the layout is only read and may be thrown away afterwards
+     * @param layout layout to freeze
+     * @return template
+     */
+    public static DungeonTemplate of(Layout layout) {
+        Dungeon dungeon = layout.getDungeon();
+        return new DungeonTemplate(layout.getId(), layout.getChambers(), dungeon.getCurrentChamber(),
+                dungeon.getGoalChamber());
+    }
+
+    /**
+     * get the shared template of a known layout, built once on first use
+     * @param layoutId layout id
+     * @return template
+     */
+    public static DungeonTemplate of(int layoutId) {
+        return KNOWN.computeIfAbsent(layoutId, id -> of(Layout.create(id)));
+    }
+
+    /**
+     * get layout id
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * get number of chambers
+     * @return chambers
+     */
+    public int getChamberCount() {
+        return chambers;
+    }
+
+    /**
+     * start a session, its dungeon starts in the template's start chamber
+     * @param player character playing the session
+     * @return layout of the session, its chambers are views over the template and a new overlay
+     */
+    public Layout open(Character player) {
+        return new Session(this, player);
+    }
+
+    /**
+     * get overlay of a session opened from a template
+     * @param layout session's layout
+     * @return overlay, or null if the layout was not opened from a template
+     */
+    public static Overlay overlayOf(Layout layout) {
+        return layout instanceof Session session ? session.overlay : null;
+    }
+
+    /**
+     * get template a session was opened from
+     * @param layout session's layout
+     * @return template, or null if the layout was not opened from a template
+     */
+    public static DungeonTemplate templateOf(Layout layout) {
+        return layout instanceof Session session ? session.template : null;
+    }
+
+    /**
+     * check if this is the template {@link #of(int)} gives for its layout id, so a session can be found again by id
+     * @return true if shared
+     */
+    public boolean isShared() {
+        return KNOWN.get(id) == this;
+    }
+
+    /**
+     * write what a session of this template changed: its overlay, items dropped into its chambers, and where the
+     * player is. chambers the player never saw are not made to write it
+     * @param layout session opened from this template
+     * @param out writer to append to
+     */
+    void encodeSession(Layout layout, VarintWriter out) {
+        if (!(layout instanceof Session session) || session.template != this) {
+            throw new IllegalArgumentException("Layout is not a session of this template");
+        }
+        session.overlay.encode(out);
+        List<ChamberView> droppedInto = new ArrayList<>();
+        for (ChamberView view : session.chambers.values()) {
+            if (!view.getDropped().isEmpty()) {
+                droppedInto.add(view);
+            }
+        }
+        out.writeInt(droppedInto.size());
+        for (ChamberView view : droppedInto) {
+            List<Item> dropped = view.getDropped();
+            out.writeInt(view.index);
+            out.writeInt(dropped.size());
+            for (Item item : dropped) {
+                SessionCodec.encodeItem(item, out);
+            }
+        }
+        Dungeon dungeon = session.getDungeon();
+        out.writeInt(session.indexOf(dungeon.getCurrentChamber()));
+        out.writeSignedInt(session.indexOf(dungeon.getGoalChamber()));
+    }
+
+    /**
+     * open a session again from what {@link #encodeSession} wrote
+     * @param player character playing the session
+     * @param in reader positioned at an encoded session
+     * @return layout of the session
+     */
+    Layout decodeSession(Character player, VarintReader in) {
+        Session session = new Session(this, player);
+        session.overlay.decode(in, items.length, loot.length);
+        int droppedInto = in.readCount();
+        for (int d = 0; d < droppedInto; d++) {
+            ChamberView view = session.chamber(chamberIndex(in.readInt()));
+            int count = in.readCount();
+            for (int i = 0; i < count; i++) {
+                view.addItem(SessionCodec.decodeItem(in));
+            }
+        }
+        session.dungeon.setCurrentChamber(session.chamber(chamberIndex(in.readInt())));
+        int goal = in.readSignedInt();
+        session.dungeon.setGoalChamber(goal < 0 ? null : session.chamber(chamberIndex(goal)));
+        return session;
+    }
+
+    private int chamberIndex(int index) {
+        if (index < 0 || index >= chambers) {
+            throw new IllegalArgumentException("Unexpected chamber: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * layout of one session, chambers and doors are made the first time they are asked for
+     */
+    private static final class Session extends Layout {
+        private final DungeonTemplate template;
+        private final Overlay overlay = new Overlay();
+        private final Map<Integer, ChamberView> chambers = new ConcurrentHashMap<>();
+        private final Map<Integer, DoorView> doors = new ConcurrentHashMap<>();
+        private final Dungeon dungeon;
+
+        Session(DungeonTemplate template, Character player) {
+            super(template.id, null, null);
+            this.template = template;
+            this.dungeon = new Dungeon(player, chamber(template.start), chamber(template.goal));
+        }
+
+        @Override
+        public Dungeon getDungeon() {
+            return dungeon;
+        }
+
+        @Override
+        public Chamber[] getChambers() {
+            Chamber[] all = new Chamber[template.chambers];
+            for (int c = 0; c < all.length; c++) {
+                all[c] = chamber(c);
+            }
+            return all;
+        }
+
+        @Override
+        public int indexOf(Chamber chamber) {
+            return chamber instanceof ChamberView view && view.session == this ? view.index : -1;
+        }
+
+        ChamberView chamber(int index) {
+            return chambers.computeIfAbsent(index, c -> new ChamberView(this, c));
+        }
+
+        DoorView door(int index) {
+            return doors.computeIfAbsent(index, d -> new DoorView(this, d));
+        }
+    }
+
+    /**
+     * chamber of a session, its items are the template's minus those taken plus any dropped there
+     */
+    private static final class ChamberView extends Chamber {
+        private final Session session;
+        private final int index;
+        private volatile List<Door> doors;
+        private List<Item> dropped;
+
+        ChamberView(Session session, int index) {
+            this.session = session;
+            this.index = index;
+        }
+
+        @Override
+        public List<Door> getDoors() {
+            List<Door> current = doors;
+            if (current == null) {
+                DungeonTemplate template = session.template;
+                List<Door> made = new ArrayList<>(template.doorOffsets[index + 1] - template.doorOffsets[index]);
+                for (int p = template.doorOffsets[index]; p < template.doorOffsets[index + 1]; p++) {
+                    made.add(session.door(template.chamberDoors[p]));
+                }
+                current = Collections.unmodifiableList(made);
+                doors = current;
+            }
+            return current;
+        }
+
+        @Override
+        public List<Item> getItems() {
+            DungeonTemplate template = session.template;
+            List<Item> lying = new ArrayList<>();
+            for (int i = template.itemOffsets[index]; i < template.itemOffsets[index + 1]; i++) {
+                if (!session.overlay.isTaken(i)) {
+                    lying.add(template.items[i]);
+                }
+            }
+            synchronized (this) {
+                if (dropped != null) {
+                    lying.addAll(dropped);
+                }
+            }
+            return Collections.unmodifiableList(lying);
+        }
+
+        @Override
+        public void addDoor(Door door) {
+            throw new UnsupportedOperationException("Chambers of a template cannot get new doors");
+        }
+
+        // items that are not the template's items of this chamber
+        synchronized List<Item> getDropped() {
+            return dropped == null ? List.of() : List.copyOf(dropped);
+        }
+
+        @Override
+        public void addItem(Item item) {
+            int own = own(item);
+            if (own < 0 || !session.overlay.putBack(own)) {
+                synchronized (this) {
+                    if (dropped == null) {
+                        dropped = new CopyOnWriteArrayList<>();
+                    }
+                    dropped.add(item);
+                }
+            }
+        }
+
+        @Override
+        public void addItem(int index, Item item) {
+            // template items always come back to their own place, so only dropped items need the position
+            addItem(item);
+        }
+
+        @Override
+        public boolean removeItem(Item item) {
+            int own = own(item);
+            if (own >= 0 && session.overlay.take(own)) {
+                return true;
+            }
+            synchronized (this) {
+                return dropped != null && dropped.remove(item);
+            }
+        }
+
+        // template index of an item that belongs to this chamber, or -1
+        private int own(Item item) {
+            DungeonTemplate template = session.template;
+            for (int i = template.itemOffsets[index]; i < template.itemOffsets[index + 1]; i++) {
+                if (template.items[i] == item) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * door of a session, guarded while the overlay has not marked its guardian killed
+     */
+    private static final class DoorView extends Door {
+        private final Session session;
+        private final int index;
+        private final int guardianIndex;
+        private final Monster guardian;
+
+        DoorView(Session session, int index) {
+            this.session = session;
+            this.index = index;
+            this.guardianIndex = session.template.guardianOf[index];
+            this.guardian = guardianIndex < 0 ? null : new GuardianView(session.template, session.overlay,
+                    guardianIndex);
+        }
+
+        @Override
+        public Chamber getOtherChamber(Chamber current) {
+            DungeonTemplate template = session.template;
+            if (current == session.chamber(template.doorChamber1[index])) {
+                return session.chamber(template.doorChamber2[index]);
+            }
+            if (current == session.chamber(template.doorChamber2[index])) {
+                return session.chamber(template.doorChamber1[index]);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isLocked() {
+            return guardian != null && !session.overlay.isKilled(guardianIndex) && guardian.isAlive();
+        }
+
+        @Override
+        public Monster getGuardian() {
+            return guardian == null || session.overlay.isKilled(guardianIndex) ? null : guardian;
+        }
+
+        @Override
+        public void removeGuardian() {
+            if (guardian != null) {
+                session.overlay.kill(guardianIndex);
+            }
+        }
+
+        @Override
+        public boolean removeGuardian(Monster expected) {
+            return expected != null && expected == guardian && session.overlay.kill(guardianIndex);
+        }
+
+        @Override
+        public boolean restoreGuardian(Monster restored) {
+            return restored != null && restored == guardian && session.overlay.revive(guardianIndex);
+        }
+    }
+
+    /**
+     * guardian of a session, stats and loot come from the template and health from the overlay
+     */
+    private static final class GuardianView extends Monster {
+        private final MonsterStore stats;
+        private final LootTable loot;
+        private final Overlay overlay;
+        private final int index;
+
+        GuardianView(DungeonTemplate template, Overlay overlay, int index) {
+            super(null, 0, 0, 0);
+            this.stats = template.guardians;
+            this.loot = template.loot[index];
+            this.overlay = overlay;
+            this.index = index;
+        }
+
+        @Override
+        public LootTable getLoot() {
+            return loot;
+        }
+
+        @Override
+        public String getName() {
+            return stats.getName(index);
+        }
+
+        @Override
+        public int getHealth() {
+            return overlay.getHealth(index, stats.getMaxHealth(index));
+        }
+
+        @Override
+        public void setHealth(int health) {
+            overlay.setHealth(index, health);
+        }
+
+        @Override
+        public int getMaxHealth() {
+            return stats.getMaxHealth(index);
+        }
+
+        @Override
+        public int getStrength() {
+            return stats.getStrength(index);
+        }
+
+        @Override
+        public int getCraft() {
+            return stats.getCraft(index);
+        }
+
+        @Override
+        public int getTotalStrength() {
+            return getStrength();
+        }
+
+        @Override
+        public int getTotalCraft() {
+            return getCraft();
+        }
+
+        @Override
+        public boolean takeDamage(int damage) {
+            return overlay.damage(index, damage, stats.getMaxHealth(index)) > 0;
+        }
+
+        @Override
+        public int heal(int amount) {
+            return overlay.heal(index, amount, stats.getMaxHealth(index));
+        }
+
+        @Override
+        public boolean isAlive() {
+            return getHealth() > 0;
+        }
+    }
+}
+
+/**
+ * what one session changed in its template: items taken, guardians killed and the health of hurt guardians
+ * everything starts empty, so a new session allocates a few words and then grows with what the player touches
+ */
+final class Overlay {
+    private final BitSet taken = new BitSet(0);
+    private final BitSet killed = new BitSet(0);
+    // health of guardians that are not at full health, keyed by guardian index
+    private LongIntMap health;
+
+    /**
+     * check if a template item was taken
+     * @param item item index in the template
+     * @return true if taken
+     */
+    public synchronized boolean isTaken(int item) {
+        return taken.get(item);
+    }
+
+    /**
+     * take a template item
+     * @param item item index in the template
+     * @return true if this call took it, otherwise false if it was already taken
+     */
+    public synchronized boolean take(int item) {
+        if (taken.get(item)) {
+            return false;
+        }
+        taken.set(item);
+        return true;
+    }
+
+    /**
+     * put a taken template item back
+     * @param item item index in the template
+     * @return true if it was taken and is back now
+     */
+    public synchronized boolean putBack(int item) {
+        if (!taken.get(item)) {
+            return false;
+        }
+        taken.clear(item);
+        return true;
+    }
+
+    /**
+     * check if a guardian was killed
+     * @param guardian guardian index in the template
+     * @return true if killed
+     */
+    public synchronized boolean isKilled(int guardian) {
+        return killed.get(guardian);
+    }
+
+    /**
+     * mark guardian killed, which unguards its door
+     * @param guardian guardian index in the template
+     * @return true if this call killed it
+     */
+    public synchronized boolean kill(int guardian) {
+        if (killed.get(guardian)) {
+            return false;
+        }
+        killed.set(guardian);
+        return true;
+    }
+
+    /**
+     * put a killed guardian back on its door
+     * @param guardian guardian index in the template
+     * @return true if it was killed and guards again
+     */
+    public synchronized boolean revive(int guardian) {
+        if (!killed.get(guardian)) {
+            return false;
+        }
+        killed.clear(guardian);
+        return true;
+    }
+
+    /**
+     * get guardian's health
+     * @param guardian guardian index in the template
+     * @param full health it has when untouched
+     * @return health
+     */
+    public synchronized int getHealth(int guardian, int full) {
+        int current = health == null ? -1 : health.get(guardian);
+        return current < 0 ? full : current;
+    }
+
+    /**
+     * set guardian's health
+     * @param guardian guardian index in the template
+     * @param value new health
+     */
+    public synchronized void setHealth(int guardian, int value) {
+        if (health == null) {
+            health = new LongIntMap(4);
+        }
+        health.put(guardian, Math.max(value, 0));
+    }
+
+    /**
+     * hurt guardian
+     * @param guardian guardian index in the template
+     * @param damage damage to take
+     * @param full health it has when untouched
+     * @return health left
+     */
+    public synchronized int damage(int guardian, int damage, int full) {
+        int next = Math.max(getHealth(guardian, full) - damage, 0);
+        setHealth(guardian, next);
+        return next;
+    }
+
+    /**
+     * heal guardian up to its full health, dead guardians stay dead
+     * @param guardian guardian index in the template
+     * @param amount health to restore
+     * @param full health it has when untouched
+     * @return health after healing
+     */
+    public synchronized int heal(int guardian, int amount, int full) {
+        int current = getHealth(guardian, full);
+        if (current <= 0) {
+            return current;
+        }
+        int next = Math.max(Math.min(current + amount, full), current);
+        setHealth(guardian, next);
+        return next;
+    }
+
+    /**
+     * write overlay
+     * @param out writer to append to
+     */
+    public synchronized void encode(VarintWriter out) {
+        encodeBits(taken, out);
+        encodeBits(killed, out);
+        long[] hurt = health == null ? new long[0] : health.keys();
+        out.writeInt(hurt.length);
+        for (long guardian : hurt) {
+            out.writeInt((int) guardian);
+            out.writeInt(health.get(guardian));
+        }
+    }
+
+    /**
+     * read an overlay written by {@link #encode} into this one, which must still be empty
+     * @param in reader positioned at an encoded overlay
+     * @param items number of items in the template
+     * @param guardians number of guardians in the template
+     */
+    public synchronized void decode(VarintReader in, int items, int guardians) {
+        decodeBits(taken, items, in);
+        decodeBits(killed, guardians, in);
+        int hurt = in.readCount();
+        for (int i = 0; i < hurt; i++) {
+            int guardian = in.readInt();
+            if (guardian < 0 || guardian >= guardians) {
+                throw new IllegalArgumentException("Unexpected guardian: " + guardian);
+            }
+            setHealth(guardian, in.readInt());
+        }
+    }
+
+    // set bits as a count and the gaps between them
+    private static void encodeBits(BitSet bits, VarintWriter out) {
+        out.writeInt(bits.cardinality());
+        int last = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            out.writeInt(i - last);
+            last = i;
+        }
+    }
+
+    private static void decodeBits(BitSet bits, int limit, VarintReader in) {
+        int count = in.readCount();
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            index += in.readInt();
+            if (index < 0 || index >= limit) {
+                throw new IllegalArgumentException("Unexpected index: " + index);
+            }
+            bits.set(index);
+        }
+    }
+
+    /**
+     * get number of entries the overlay holds
+     * @return items taken, guardians killed and guardian healths kept
+     */
+    public synchronized int touched() {
+        return taken.cardinality() + killed.cardinality() + (health == null ? 0 : health.size());
+    }
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * checks a dungeon layout before anyone plays it: can the goal be reached at all, can it be reached
+ * without fighting, and which chambers can never be reached from the start
+ * uses union-find with path halving and union by size, so it runs in near linear time
+ */
+final class DungeonValidator {
+    private DungeonValidator() {
+    }
+
+    /**
+     * validate a layout
+     * @param layout layout to check
+     * @return report
+     */
+    public static Report validate(Layout layout) {
+        Dungeon dungeon = layout.getDungeon();
+        return validate(layout.getChambers(), dungeon.getCurrentChamber(), dungeon.getGoalChamber());
+    }
+
+    /**
+     * validate chambers
+     * @param chambers all chambers of the dungeon
+     * @param start start chamber
+     * @param goal goal chamber
+     * @return report
+     */
+    public static Report validate(Chamber[] chambers, Chamber start, Chamber goal) {
+        return validate(ChamberGraph.of(chambers), start, goal);
+    }
+
+    /**
+     * validate an indexed graph
+     * @param graph graph of the dungeon
+     * @param start start chamber
+     * @param goal goal chamber
+     * @return report
+     */
+    public static Report validate(ChamberGraph graph, Chamber start, Chamber goal) {
+        int startIndex = graph.indexOf(start);
+        int goalIndex = graph.indexOf(goal);
+        if (startIndex < 0 || goalIndex < 0) {
+            throw new IllegalArgumentException("Start and goal must be part of the dungeon");
+        }
+
+        UnionFind all = new UnionFind(graph.size());
+        UnionFind open = new UnionFind(graph.size());
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            all.union(graph.edgeFrom(e), graph.edgeTo(e));
+            if (!graph.door(e).isLocked()) {
+                open.union(graph.edgeFrom(e), graph.edgeTo(e));
+            }
+        }
+
+        int startRoot = all.find(startIndex);
+        int orphaned = 0;
+        int orphanedComponents = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            int root = all.find(i);
+            if (root != startRoot) {
+                orphaned++;
+                if (root == i) {
+                    orphanedComponents++;
+                }
+            }
+        }
+        int[] orphans = new int[orphaned];
+        int next = 0;
+        for (int i = 0; i < graph.size() && next < orphaned; i++) {
+            if (all.find(i) != startRoot) {
+                orphans[next++] = i;
+            }
+        }
+
+        return new Report(all.find(goalIndex) == startRoot, open.find(goalIndex) == open.find(startIndex),
+                all.components(), orphanedComponents, orphans);
+    }
+
+    /**
+     * result of a validation
+     * @param goalReachable goal can be reached from the start, possibly by defeating guardians
+     * @param goalReachableUnguarded goal can be reached through unguarded doors only
+     * @param components number of connected components
+     * @param orphanedComponents number of components that do not contain the start
+     * @param orphanedChambers indexes of chambers that can never be reached, ascending
+     */
+    record Report(boolean goalReachable, boolean goalReachableUnguarded, int components, int orphanedComponents,
+                  int[] orphanedChambers) {
+        /**
+         * check the dungeon can be won and has no unreachable chambers
+         * @return true if valid
+         */
+        public boolean isValid() {
+            return goalReachable && orphanedChambers.length == 0;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Report report && goalReachable == report.goalReachable
+                    && goalReachableUnguarded == report.goalReachableUnguarded && components == report.components
+                    && orphanedComponents == report.orphanedComponents
+                    && Arrays.equals(orphanedChambers, report.orphanedChambers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(orphanedChambers) * 31 + components;
+        }
+
+        @Override
+        public String toString() {
+            return "Report(goalReachable=" + goalReachable + ", goalReachableUnguarded=" + goalReachableUnguarded
+                    + ", components=" + components + ", orphanedChambers=" + orphanedChambers.length + ")";
+        }
+    }
+
+    /**
+     * disjoint sets over int indexes
+     */
+    static final class UnionFind {
+        private final int[] parent;
+        private final int[] size;
+        private int components;
+
+        UnionFind(int count) {
+            parent = new int[count];
+            size = new int[count];
+            for (int i = 0; i < count; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+            components = count;
+        }
+
+        int find(int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        boolean union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return false;
+            }
+            if (size[rootA] < size[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
+            components--;
+            return true;
+        }
+
+        int components() {
+            return components;
+        }
+    }
+}
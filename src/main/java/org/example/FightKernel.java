@@ -0,0 +1,104 @@
+package org.example;
+
+import java.util.SplittableRandom;
+
+/**
+ * batch combat kernel that resolves one round of many independent fights at once
+ * each lane i is one fight: the player's stat and health against a monster's stat and health,
+ * with the d6 rolls for both sides already drawn into the roll arrays.
+ * the rules are exactly those of {@link Fight}: higher total deals the difference as damage,
+ * equal totals miss, and health never drops below zero.
+ * when the jdk.incubator.vector module is present the lanes are processed with SIMD,
+ * otherwise the scalar loop is used and gives identical results.
+ */
+final class FightKernel {
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private FightKernel() {
+    }
+
+    /**
+     * check if the vector api can be used in this jvm
+     * @return true if fights are resolved with simd
+     */
+    public static boolean isVectorized() {
+        return VECTOR_AVAILABLE;
+    }
+
+    /**
+     * resolve one round of each fight, updating both health arrays in place
+     * @param count number of fights to resolve
+     * @param playerStat player's strength or craft, whichever the monster uses
+     * @param playerHp player's health
+     * @param monsterStat monster's strength or craft
+     * @param monsterHp monster's health
+     * @param playerRoll player's d6 roll (1 to 6)
+     * @param monsterRoll monster's d6 roll (1 to 6)
+     */
+    public static void resolve(int count, int[] playerStat, int[] playerHp, int[] monsterStat, int[] monsterHp,
+                               int[] playerRoll, int[] monsterRoll) {
+        checkLength(count, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        if (VECTOR_AVAILABLE) {
+            VectorFightKernel.resolve(count, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        } else {
+            resolveScalar(0, count, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        }
+    }
+
+    /**
+     * resolve fights one lane at a time, used as fallback and for the tail of the vector loop
+     * @param from first fight to resolve
+     * @param to one past the last fight to resolve
+     * @param playerStat player's strength or craft
+     * @param playerHp player's health
+     * @param monsterStat monster's strength or craft
+     * @param monsterHp monster's health
+     * @param playerRoll player's d6 roll
+     * @param monsterRoll monster's d6 roll
+     */
+    static void resolveScalar(int from, int to, int[] playerStat, int[] playerHp, int[] monsterStat, int[] monsterHp,
+                              int[] playerRoll, int[] monsterRoll) {
+        for (int i = from; i < to; i++) {
+            int playerTotal = playerStat[i] + playerRoll[i];
+            int monsterTotal = monsterStat[i] + monsterRoll[i];
+            if (playerTotal > monsterTotal) {
+                monsterHp[i] = Math.max(monsterHp[i] - (playerTotal - monsterTotal), 0);
+            } else if (monsterTotal > playerTotal) {
+                playerHp[i] = Math.max(playerHp[i] - (monsterTotal - playerTotal), 0);
+            }
+        }
+    }
+
+    /**
+     * fill a roll lane with d6 results
+     * @param random random source
+     * @param rolls array to fill
+     * @param count number of rolls to draw
+     */
+    public static void roll(SplittableRandom random, int[] rolls, int count) {
+        for (int i = 0; i < count; i++) {
+            rolls[i] = random.nextInt(6) + 1;
+        }
+    }
+
+    /**
+     * fill a roll lane with rolls of any dice
+     * @param random random source
+     * @param dice dice to roll
+     * @param rolls array to fill
+     * @param count number of rolls to draw
+     */
+    public static void roll(SplittableRandom random, Dice dice, int[] rolls, int count) {
+        for (int i = 0; i < count; i++) {
+            rolls[i] = dice.roll(random);
+        }
+    }
+
+    private static void checkLength(int count, int[]... lanes) {
+        for (int[] lane : lanes) {
+            if (lane.length < count) {
+                throw new IllegalArgumentException("Lane has " + lane.length + " entries but " + count + " fights were requested");
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * a fixed layout flattened into int tables and played by the {@link GreedyPolicy} rules without any objects
+ * chambers, doors, monsters and items become numbers, and a game is a handful of ints and bit sets. the doors
+ * and items of a chamber are rows of a table kept in the order of the chamber's lists, and a bit set over
+ * chambers, doors or items is a long array with bit i of word i / 64 standing for number i.
+ * games use the same dice in the same order as {@link Simulation#play} with a greedy policy, so a seeded
+ * game ends exactly like the object version. layouts with loot tables are not supported
+ */
+final class FlatLayout {
+    private final int start;
+    private final int goal;
+    private final int health;
+    private final int strength;
+    private final int craft;
+    private final int handsFree;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] edgeGuardian;
+    private final int[] guardianStrength;
+    private final int[] guardianCraft;
+    private final int[] guardianHealth;
+    private final int[] itemStrength;
+    private final int[] itemCraft;
+    private final int chamberCount;
+    // row c belongs to chamber c: its door numbers, the chamber behind each door and its item numbers
+    private final int[][] doorEdges;
+    private final int[][] doorTargets;
+    private final int[][] chamberItems;
+    private final Dice dice;
+
+    private FlatLayout(Layout layout) {
+        Chamber[] chambers = layout.getChambers();
+        Dungeon dungeon = layout.getDungeon();
+        Map<Chamber, Integer> chamberIds = new IdentityHashMap<>();
+        for (Chamber chamber : chambers) {
+            chamberIds.put(chamber, chamberIds.size());
+        }
+        Map<Door, Integer> doorIds = new IdentityHashMap<>();
+        Map<Monster, Integer> guardianIds = new IdentityHashMap<>();
+        List<int[]> edges = new ArrayList<>();
+        List<Monster> guardians = new ArrayList<>();
+        List<Item> items = new ArrayList<>();
+        doorEdges = new int[chambers.length][];
+        doorTargets = new int[chambers.length][];
+        chamberItems = new int[chambers.length][];
+        for (int c = 0; c < chambers.length; c++) {
+            List<Door> doors = chambers[c].getDoors();
+            doorEdges[c] = new int[doors.size()];
+            doorTargets[c] = new int[doors.size()];
+            for (int d = 0; d < doors.size(); d++) {
+                Door door = doors.get(d);
+                Integer target = chamberIds.get(door.getOtherChamber(chambers[c]));
+                if (target == null) {
+                    throw new IllegalArgumentException("Door leads out of the layout");
+                }
+                Integer edge = doorIds.get(door);
+                if (edge == null) {
+                    edge = doorIds.size();
+                    doorIds.put(door, edge);
+                    Monster guardian = door.getGuardian();
+                    int guardianId = -1;
+                    if (guardian != null) {
+                        if (guardian.getLoot() != null) {
+                            throw new IllegalArgumentException("Loot tables cannot be flattened");
+                        }
+                        guardianId = guardianIds.computeIfAbsent(guardian, g -> {
+                            guardians.add(g);
+                            return guardians.size() - 1;
+                        });
+                    }
+                    edges.add(new int[]{c, target, guardianId});
+                }
+                doorEdges[c][d] = edge;
+                doorTargets[c][d] = target;
+            }
+            List<Item> here = chambers[c].getItems();
+            chamberItems[c] = new int[here.size()];
+            for (int i = 0; i < here.size(); i++) {
+                chamberItems[c][i] = items.size();
+                items.add(here.get(i));
+            }
+        }
+
+        Character player = dungeon.getPlayer();
+        chamberCount = chambers.length;
+        start = chamberIds.get(dungeon.getCurrentChamber());
+        goal = chamberIds.getOrDefault(dungeon.getGoalChamber(), -1);
+        health = player.getHealth();
+        // items already in hand never change, so they are folded into the base stats
+        strength = player.getTotalStrength();
+        craft = player.getTotalCraft();
+        dice = dungeon.getFightDice();
+        edgeFrom = edges.stream().mapToInt(edge -> edge[0]).toArray();
+        edgeTo = edges.stream().mapToInt(edge -> edge[1]).toArray();
+        edgeGuardian = edges.stream().mapToInt(edge -> edge[2]).toArray();
+        guardianStrength = guardians.stream().mapToInt(Monster::getStrength).toArray();
+        guardianCraft = guardians.stream().mapToInt(Monster::getCraft).toArray();
+        guardianHealth = guardians.stream().mapToInt(Monster::getHealth).toArray();
+        itemStrength = items.stream().mapToInt(Item::getStrength).toArray();
+        itemCraft = items.stream().mapToInt(Item::getCraft).toArray();
+
+        boolean leftFree = player.getLeftHand() == null;
+        boolean rightFree = player.getRightHand() == null;
+        handsFree = (leftFree ? 1 : 0) + (rightFree ? 1 : 0);
+    }
+
+    /**
+     * flatten a layout
+     * @param layout layout in its starting state, later changes to it are not seen
+     * @return flattened layout
+     */
+    public static FlatLayout of(Layout layout) {
+        return new FlatLayout(layout);
+    }
+
+    /**
+     * play one game with the greedy policy
+     * @param random random source for the dice
+     * @param maxTurns turn limit
+     * @return how the game ended
+     */
+    public Result play(RandomGenerator random, int maxTurns) {
+        long[] visited = new long[(chamberCount + 63) >>> 6];
+        long[] guarded = new long[(edgeFrom.length + 63) >>> 6];
+        long[] taken = new long[(itemStrength.length + 63) >>> 6];
+        int[] monsterHealth = guardianHealth.clone();
+        for (int e = 0; e < edgeGuardian.length; e++) {
+            if (edgeGuardian[e] >= 0) {
+                guarded[e >>> 6] |= 1L << e;
+            }
+        }
+        int chamber = start;
+        int hp = health;
+        int str = strength;
+        int crf = craft;
+        int free = handsFree;
+        int turns = 0;
+        while (hp > 0 && chamber != goal && turns < maxTurns) {
+            visited[chamber >>> 6] |= 1L << chamber;
+            int item = item(chamber, taken);
+            if (item >= 0) {
+                taken[item >>> 6] |= 1L << item;
+                if (free > 0) {
+                    free--;
+                    str += itemStrength[item];
+                    crf += itemCraft[item];
+                }
+                turns++;
+                continue;
+            }
+            int edge = door(chamber, visited, guarded);
+            if (edge < 0) {
+                break;
+            }
+            if ((guarded[edge >>> 6] & 1L << edge) == 0) {
+                chamber = edgeFrom[edge] == chamber ? edgeTo[edge] : edgeFrom[edge];
+            } else {
+                int guardian = edgeGuardian[edge];
+                if (monsterHealth[guardian] <= 0) {
+                    // beaten at another door it also guarded, this one opens without a fight
+                    guarded[edge >>> 6] &= ~(1L << edge);
+                } else {
+                    boolean useStrength = guardianCraft[guardian] == 0;
+                    int playerTotal = (useStrength ? str : crf) + dice.roll(random);
+                    int monsterTotal = (useStrength ? guardianStrength[guardian] : guardianCraft[guardian])
+                            + dice.roll(random);
+                    if (playerTotal > monsterTotal) {
+                        monsterHealth[guardian] = Math.max(monsterHealth[guardian] - (playerTotal - monsterTotal), 0);
+                        if (monsterHealth[guardian] == 0) {
+                            guarded[edge >>> 6] &= ~(1L << edge);
+                        }
+                    } else if (monsterTotal > playerTotal) {
+                        hp = Math.max(hp - (monsterTotal - playerTotal), 0);
+                    }
+                }
+            }
+            turns++;
+        }
+        return new Result(hp > 0 && chamber == goal, turns, hp);
+    }
+
+    // first item still in the chamber, or -1 if none is left
+    private int item(int chamber, long[] taken) {
+        for (int item : chamberItems[chamber]) {
+            if ((taken[item >>> 6] & 1L << item) == 0) {
+                return item;
+            }
+        }
+        return -1;
+    }
+
+    // first door to an unvisited chamber, else the first unguarded door, else the first door,
+    // or -1 if the chamber has no doors
+    private int door(int chamber, long[] visited, long[] guarded) {
+        int[] edges = doorEdges[chamber];
+        int[] targets = doorTargets[chamber];
+        for (int d = 0; d < edges.length; d++) {
+            if ((visited[targets[d] >>> 6] & 1L << targets[d]) == 0) {
+                return edges[d];
+            }
+        }
+        for (int edge : edges) {
+            if ((guarded[edge >>> 6] & 1L << edge) == 0) {
+                return edge;
+            }
+        }
+        return edges.length > 0 ? edges[0] : -1;
+    }
+
+    /**
+     * how a game ended
+     * @param won true if the goal was reached alive
+     * @param turns turns played
+     * @param health health left
+     */
+    record Result(boolean won, int turns, int health) {
+    }
+}
@@ -0,0 +1,166 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * flight recorder events for looking inside turns
+ * an event is made, checked with shouldCommit and only then filled in, so while nothing records them the jit
+ * drops the allocation and each event costs a branch. which events are on, their thresholds and whether they
+ * take stack traces is set in the bundled dungeon.jfc, for example
+ * -XX:StartFlightRecording:settings=default,dungeon.jfc
+ */
+final class FlightEvents {
+    /**
+     * class path location of the bundled profile
+     */
+    public static final String PROFILE = "/dungeon.jfc";
+
+    private FlightEvents() {
+    }
+
+    /**
+     * load the bundled profile
+     * @return recording configuration
+     * @throws IOException if the profile cannot be read
+     * @throws ParseException if the profile is not valid
+     */
+    public static Configuration profile() throws IOException, ParseException {
+        try (InputStream in = FlightEvents.class.getResourceAsStream(PROFILE)) {
+            if (in == null) {
+                throw new IOException("Profile " + PROFILE + " is missing from the class path");
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return Configuration.create(reader);
+            }
+        }
+    }
+
+    /**
+     * id of a chamber for events, chambers have no name so their identity hash is used
+     * @param chamber chamber
+     * @return id
+     */
+    static int chamberId(Chamber chamber) {
+        return System.identityHashCode(chamber);
+    }
+}
+
+/**
+ * one turn of a text game or a server session, from the choice being made to the world having ticked
+ */
+@Name("org.example.Turn")
+@Label("Turn")
+@Category("Dungeon")
+@Description("One player turn")
+@StackTrace(false)
+class TurnEvent extends Event {
+    @Label("Session")
+    @Description("Server session id, 0 for the text game")
+    long session;
+
+    @Label("Turn")
+    int turn;
+
+    @Label("Action")
+    String action;
+}
+
+/**
+ * one execute of an action
+ */
+@Name("org.example.Action")
+@Label("Action")
+@Category("Dungeon")
+@Description("Execution of a move, fight or pickup")
+@StackTrace(false)
+class ActionEvent extends Event {
+    @Label("Type")
+    String type;
+
+    @Label("Chamber")
+    @Description("Identity hash of the chamber the action started in")
+    int chamber;
+}
+
+/**
+ * outcome of one fight round
+ */
+@Name("org.example.Fight")
+@Label("Fight")
+@Category("Dungeon")
+@Description("Rolls and damage of a fight round")
+@StackTrace(false)
+class FightEvent extends Event {
+    @Label("Monster")
+    String monster;
+
+    @Label("Player Roll")
+    int playerRoll;
+
+    @Label("Monster Roll")
+    int monsterRoll;
+
+    @Label("Player Damage")
+    @Description("Damage the player took")
+    int playerDamage;
+
+    @Label("Monster Damage")
+    @Description("Damage the monster took")
+    int monsterDamage;
+
+    @Label("Defeated")
+    boolean defeated;
+
+    /**
+     * record a round if anyone is recording fights
+     * @param monster monster fought
+     * @param playerRoll player's roll
+     * @param monsterRoll monster's roll
+     * @param playerDamage damage the player took
+     * @param monsterDamage damage the monster took
+     * @param defeated true if this round removed the monster from its door
+     */
+    static void emit(Monster monster, int playerRoll, int monsterRoll, int playerDamage, int monsterDamage,
+                     boolean defeated) {
+        FightEvent event = new FightEvent();
+        if (event.shouldCommit()) {
+            event.monster = monster.getName();
+            event.playerRoll = playerRoll;
+            event.monsterRoll = monsterRoll;
+            event.playerDamage = playerDamage;
+            event.monsterDamage = monsterDamage;
+            event.defeated = defeated;
+            event.commit();
+        }
+    }
+}
+
+/**
+ * one call listing the actions of a chamber
+ */
+@Name("org.example.GetActions")
+@Label("Get Actions")
+@Category("Dungeon")
+@Description("Listing the actions of the current chamber")
+@StackTrace(false)
+class GetActionsEvent extends Event {
+    @Label("Chamber")
+    @Description("Identity hash of the chamber")
+    int chamber;
+
+    @Label("Actions")
+    int actions;
+}
@@ -1,34 +1,34 @@
 package org.example;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
 // changed up this file because I was having trouble understanding the errors I was getting
 public class Game {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.println("Welcome!");
         System.out.println("Find your way through the dungeon to the end (goal chamber).");
         System.out.println("Game starts now!");
 
-        Chamber[] chambers = new Chamber[]{
-                new Chamber(),
-                new Chamber(new Axe()),
-                new Chamber(new Shield()),
-                new Chamber(),
-                new Chamber()
-        };
-
-        Door.connect(chambers[0], chambers[1]);
-        Door.connect(chambers[1], chambers[2], new Monster("Goblin", 1, 0, 3));
-        Door.connect(chambers[2], chambers[3], new Monster("Spider", 0, 3, 5));
-        Door.connect(chambers[3], chambers[4]);
+        // seeded dice so the game can be saved as a replay, pass a file name to keep it
+        long seed = new Random().nextLong();
+        Layout layout = Replay.start(Layout.STANDARD, seed);
+        Dungeon d = layout.getDungeon();
+        Character player = d.getPlayer();
+        ReplayRecorder recorder = new ReplayRecorder(Layout.STANDARD, seed);
 
-        Character player = new Wizard("Gandalf");
-
-        Dungeon d = new Dungeon(player, chambers[0], chambers[4]);
+        PathHint hint = PathHint.of(layout);
+        d.addListener(hint);
 
         TextUI ui = new TextUI();
+        ui.setRecorder(recorder);
+        ui.setHint(hint);
         ui.play(d);
 
         System.out.println("\n");
-        if (player.isAlive() && d.getCurrentChamber() == chambers[4]) {
+        if (d.isWon()) {
             System.out.println("Congratulations! You've reached the goal chamber and won the game!");
         } else if (!player.isAlive()) {
             System.out.println("Game Over! Your character has been defeated.");
@@ -36,6 +36,10 @@ public class Game {
             System.out.println("You have left the game.");
         }
 
+        if (args.length > 0) {
+            Files.write(Path.of(args[0]), recorder.finish(layout).encode());
+            System.out.println("Replay saved to " + args[0]);
+        }
         System.out.println("Thank you for playing!");
     }
 }
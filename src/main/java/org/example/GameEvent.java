@@ -0,0 +1,73 @@
+package org.example;
+
+/**
+ * something that happened in a dungeon, published to listeners after the action changed the state
+ */
+sealed interface GameEvent {
+    /**
+     * get dungeon the event happened in
+     * @return dungeon
+     */
+    Dungeon dungeon();
+
+    /**
+     * player moved through a door
+     * @param dungeon dungeon
+     * @param from chamber the player left
+     * @param to chamber the player entered
+     */
+    record Moved(Dungeon dungeon, Chamber from, Chamber to) implements GameEvent {
+    }
+
+    /**
+     * player was put into the start chamber of another level, the chambers of the old level are left behind
+     * @param dungeon dungeon
+     * @param level number of level changes so far, the level index in a campaign
+     * @param from chamber the player left, on the old level
+     * @param to start chamber of the new level
+     */
+    record LevelChanged(Dungeon dungeon, int level, Chamber from, Chamber to) implements GameEvent {
+    }
+
+    /**
+     * one round of a fight was played
+     * @param dungeon dungeon
+     * @param monster monster fought
+     * @param playerRoll player's dice roll
+     * @param monsterRoll monster's dice roll
+     * @param playerDamage damage the player took
+     * @param monsterDamage damage the monster took
+     * @param defeated true if this round defeated the monster and unlocked the door
+     */
+    record Fought(Dungeon dungeon, Monster monster, int playerRoll, int monsterRoll, int playerDamage,
+                  int monsterDamage, boolean defeated) implements GameEvent {
+    }
+
+    /**
+     * player tried to pick up an item
+     * @param dungeon dungeon
+     * @param item item
+     * @param claimed false if someone else took it first
+     */
+    record Picked(Dungeon dungeon, Item item, boolean claimed) implements GameEvent {
+    }
+
+    /**
+     * game just finished
+     * @param dungeon dungeon
+     * @param won true if the player reached the goal alive
+     */
+    record Finished(Dungeon dungeon, boolean won) implements GameEvent {
+    }
+}
+
+/**
+ * receives events from a dungeon, called on the player's thread so it must return quickly
+ */
+interface GameListener {
+    /**
+     * handle event
+     * @param event event that happened
+     */
+    void onEvent(GameEvent event);
+}
@@ -0,0 +1,521 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * embedded http server that lets browsers and tools play games
+ * every request runs on its own virtual thread and json is written straight into the response body.
+ * endpoints:
+ * POST /sessions?layout=0 creates a session,
+ * GET /sessions/{id} returns its state,
+ * GET /sessions/{id}/actions lists the actions,
+ * POST /sessions/{id}/actions/{index} executes one,
+ * GET /sessions/{id}/events streams events as server-sent events,
+ * DELETE /sessions/{id} ends the session,
+ * GET /leaderboard?layout=0 lists the best finished games of a layout, or of all layouts without one,
+ * and limit=n sets how many.
+ * a {@link ClusterRouter} in front of several servers also uses
+ * PUT /sessions/{id}?layout=0 to create a session with its own id, or with a body to take over a handed off one,
+ * POST /sessions/{id}/detach to end a session here and get it back in {@link SessionCodec} form.
+ * sessions of a layout play one shared {@link DungeonTemplate} and only keep what they changed,
+ * and sessions nobody touched for a while are parked off the heap by a {@link SessionStore}
+ */
+class GameServer implements AutoCloseable {
+    private static final long KEEP_ALIVE_SECONDS = 15;
+    private static final int LEADERBOARD_SIZE = 100;
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final SessionStore store;
+    private final Leaderboard leaderboard = new Leaderboard(LEADERBOARD_SIZE);
+    private final Duration parkAfter;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService parker;
+
+    /**
+     * create server that parks sessions after 30 idle seconds
+     */
+    public GameServer() {
+        this(Duration.ofSeconds(30));
+    }
+
+    /**
+     * create server
+     * @param parkAfter idle time after which a session is moved off the heap
+     */
+    public GameServer(Duration parkAfter) {
+        this.parkAfter = parkAfter;
+        this.store = new SessionStore(parkAfter.toNanos());
+    }
+
+    /**
+     * start listening on the loopback interface
+     * @param port port, 0 picks a free one
+     * @return port the server is bound to
+     * @throws IOException if the port cannot be bound
+     */
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/sessions", this::handle);
+        server.createContext("/leaderboard", this::handle);
+        server.start();
+        parker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().factory());
+        long period = Math.max(parkAfter.toMillis() / 2, 1);
+        parker.scheduleWithFixedDelay(store::parkIdle, period, period, TimeUnit.MILLISECONDS);
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * stop server and close all event streams
+     */
+    @Override
+    public void close() {
+        for (Session session : sessions.values()) {
+            session.publisher.close();
+            store.remove(session.id);
+        }
+        sessions.clear();
+        if (server != null) {
+            parker.shutdownNow();
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * get number of open sessions
+     * @return session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * get store holding the sessions
+     * @return session store
+     */
+    SessionStore getStore() {
+        return store;
+    }
+
+    /**
+     * get leaderboard of games finished on this server
+     * @return leaderboard
+     */
+    Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            route(exchange);
+        } catch (NumberFormatException e) {
+            error(exchange, 400, "Invalid number in request");
+        } catch (IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+        if (parts[1].equals("leaderboard")) {
+            if (method.equals("GET")) {
+                listLeaderboard(exchange);
+            } else {
+                error(exchange, 405, "Use GET to read the leaderboard");
+            }
+            return;
+        }
+        if (parts.length == 2) {
+            if (method.equals("POST")) {
+                create(exchange, nextId.getAndIncrement());
+            } else {
+                error(exchange, 405, "Use POST to create a session");
+            }
+            return;
+        }
+        if (parts.length == 3 && method.equals("PUT")) {
+            long id = Long.parseLong(parts[2]);
+            // ids handed out here must not run into the ones a router picked
+            nextId.accumulateAndGet(id + 1, Math::max);
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (sessions.containsKey(id)) {
+                error(exchange, 409, "Session exists");
+            } else if (body.length == 0) {
+                create(exchange, id);
+            } else {
+                attach(exchange, id, body);
+            }
+            return;
+        }
+        Session session = sessions.get(Long.parseLong(parts[2]));
+        if (session == null) {
+            error(exchange, 404, "No such session");
+            return;
+        }
+        if (parts.length == 3 && method.equals("GET")) {
+            SessionState state = store.withSession(session.id, layout -> SessionState.of(session.id, layout));
+            respond(exchange, 200, json -> writeState(json, state));
+        } else if (parts.length == 3 && method.equals("DELETE")) {
+            sessions.remove(session.id);
+            store.remove(session.id);
+            session.publisher.close();
+            exchange.sendResponseHeaders(204, -1);
+        } else if (parts.length == 4 && parts[3].equals("actions") && method.equals("GET")) {
+            listActions(exchange, session);
+        } else if (parts.length == 5 && parts[3].equals("actions") && method.equals("POST")) {
+            execute(exchange, session, Integer.parseInt(parts[4]));
+        } else if (parts.length == 4 && parts[3].equals("events") && method.equals("GET")) {
+            streamEvents(exchange, session);
+        } else if (parts.length == 4 && parts[3].equals("detach") && method.equals("POST")) {
+            detach(exchange, session);
+        } else {
+            error(exchange, 404, "Unknown endpoint");
+        }
+    }
+
+    private void create(HttpExchange exchange, long id) throws IOException {
+        int layoutId = Layout.STANDARD;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null && query.startsWith("layout=")) {
+            layoutId = Integer.parseInt(query.substring("layout=".length()));
+        }
+        Layout layout = DungeonTemplate.of(layoutId).open(Layout.createPlayer(layoutId));
+        open(exchange, new Session(id), layout);
+    }
+
+    private void attach(HttpExchange exchange, long id, byte[] body) throws IOException {
+        VarintReader in = new VarintReader(body);
+        Session session = new Session(id);
+        session.turns = in.readInt();
+        open(exchange, session, SessionCodec.decode(in));
+    }
+
+    private void open(HttpExchange exchange, Session session, Layout layout) throws IOException {
+        layout.getDungeon().setNarrated(false);
+        layout.getDungeon().addListener(session.publisher);
+        store.add(session.id, layout);
+        sessions.put(session.id, session);
+        SessionState state = SessionState.of(session.id, layout);
+        respond(exchange, 201, json -> writeState(json, state));
+    }
+
+    private void detach(HttpExchange exchange, Session session) throws IOException {
+        if (!sessions.remove(session.id, session)) {
+            error(exchange, 404, "No such session");
+            return;
+        }
+        // taken out of the map first, so nothing new reaches the session while it is encoded
+        byte[] data = store.withSession(session.id, layout -> {
+            VarintWriter out = new VarintWriter(256);
+            out.writeInt(session.turns);
+            SessionCodec.encode(layout, out);
+            return out.toByteArray();
+        });
+        store.remove(session.id);
+        session.publisher.close();
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private void listActions(HttpExchange exchange, Session session) throws IOException {
+        List<String> actions = store.withSession(session.id, layout -> {
+            Dungeon dungeon = layout.getDungeon();
+            if (dungeon.isFinished()) {
+                return List.of();
+            }
+            List<String> descriptions = new ArrayList<>();
+            for (Action action : dungeon.getActions()) {
+                descriptions.add(action.toString());
+            }
+            return descriptions;
+        });
+        respond(exchange, 200, json -> {
+            json.beginArray();
+            for (int i = 0; i < actions.size(); i++) {
+                json.beginObject().name("index").value(i).name("description").value(actions.get(i)).endObject();
+            }
+            json.endArray();
+        });
+    }
+
+    private void execute(HttpExchange exchange, Session session, int index) throws IOException {
+        int[] choices = new int[1];
+        SessionState state = store.withSession(session.id, layout -> {
+            Dungeon dungeon = layout.getDungeon();
+            if (dungeon.isFinished()) {
+                choices[0] = -1;
+                return null;
+            }
+            List<Action> actions = dungeon.getActions();
+            choices[0] = actions.size();
+            if (index < 0 || index >= actions.size()) {
+                return null;
+            }
+            TurnEvent turn = new TurnEvent();
+            turn.begin();
+            actions.get(index).execute();
+            session.turns++;
+            if (turn.shouldCommit()) {
+                turn.session = session.id;
+                turn.turn = session.turns;
+                turn.action = actions.get(index).getClass().getSimpleName();
+                turn.commit();
+            }
+            if (dungeon.isFinished()) {
+                leaderboard.record(layout.getId(), dungeon, session.turns);
+            }
+            return SessionState.of(session.id, layout);
+        });
+        if (state != null) {
+            respond(exchange, 200, json -> writeState(json, state));
+        } else if (choices[0] < 0) {
+            error(exchange, 409, "Game is finished");
+        } else {
+            error(exchange, 400, "Invalid choice. Please enter a number between 0 and " + (choices[0] - 1));
+        }
+    }
+
+    private void listLeaderboard(HttpExchange exchange) throws IOException {
+        Integer layoutId = null;
+        int limit = 10;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("layout=")) {
+                    layoutId = Integer.parseInt(parameter.substring("layout=".length()));
+                } else if (parameter.startsWith("limit=")) {
+                    limit = Integer.parseInt(parameter.substring("limit=".length()));
+                }
+            }
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        List<Leaderboard.Score> scores = layoutId == null ? leaderboard.top(limit) : leaderboard.top(layoutId, limit);
+        respond(exchange, 200, json -> {
+            json.beginArray();
+            for (Leaderboard.Score score : scores) {
+                json.beginObject()
+                        .name("player").value(score.player())
+                        .name("archetype").value(score.archetype())
+                        .name("layout").value(score.layout())
+                        .name("turns").value(score.turns())
+                        .name("health").value(score.health())
+                        .name("won").value(score.won())
+                        .endObject();
+            }
+            json.endArray();
+        });
+    }
+
+    private void streamEvents(HttpExchange exchange, Session session) throws IOException {
+        BlockingQueue<Frame> queue = new LinkedBlockingQueue<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        session.publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(GameEvent event) {
+                queue.add(frame(session, event));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, SpectatorPublisher.Overflow.DROP_OLDEST, SpectatorPublisher.DEFAULT_CAPACITY);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody());
+        JsonWriter json = new JsonWriter(out);
+        try {
+            Boolean finished = store.withSession(session.id, layout -> layout.getDungeon().isFinished());
+            while (finished != null && !finished && sessions.containsKey(session.id)) {
+                Frame frame = queue.poll(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+                if (frame == null) {
+                    // a comment line, also how a closed connection gets noticed
+                    ascii(out, ":\n\n");
+                } else {
+                    writeEvent(out, json, frame);
+                    finished = frame.event() instanceof GameEvent.Finished;
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscription[0].cancel();
+        }
+        out.flush();
+    }
+
+    // runs on the player's thread while it holds the session, before the layout can be parked and rebuilt
+    // with new chambers, so the chambers of the event are still the layout's
+    private Frame frame(Session session, GameEvent event) {
+        if (event instanceof GameEvent.Moved moved) {
+            Frame frame = store.withSession(session.id,
+                    layout -> new Frame(event, layout.indexOf(moved.from()), layout.indexOf(moved.to())));
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return new Frame(event, -1, -1);
+    }
+
+    private void writeEvent(OutputStream out, JsonWriter json, Frame frame) throws IOException {
+        GameEvent event = frame.event();
+        if (event instanceof GameEvent.Moved) {
+            ascii(out, "event: moved\ndata: ");
+            json.beginObject().name("from").value(frame.from()).name("to").value(frame.to()).endObject();
+        } else if (event instanceof GameEvent.Fought fought) {
+            ascii(out, "event: fought\ndata: ");
+            json.beginObject().name("monster").value(fought.monster().getName())
+                    .name("playerRoll").value(fought.playerRoll()).name("monsterRoll").value(fought.monsterRoll())
+                    .name("playerDamage").value(fought.playerDamage()).name("monsterDamage").value(fought.monsterDamage())
+                    .name("defeated").value(fought.defeated()).endObject();
+        } else if (event instanceof GameEvent.Picked picked) {
+            ascii(out, "event: picked\ndata: ");
+            json.beginObject().name("item").value(picked.item().getName())
+                    .name("claimed").value(picked.claimed()).endObject();
+        } else if (event instanceof GameEvent.LevelChanged changed) {
+            ascii(out, "event: level\ndata: ");
+            json.beginObject().name("level").value(changed.level()).endObject();
+        } else if (event instanceof GameEvent.Finished finished) {
+            ascii(out, "event: finished\ndata: ");
+            json.beginObject().name("won").value(finished.won()).endObject();
+        }
+        ascii(out, "\n\n");
+    }
+
+    private void writeState(JsonWriter json, SessionState state) throws IOException {
+        json.beginObject()
+                .name("id").value(state.id())
+                .name("layout").value(state.layout())
+                .name("chamber").value(state.chamber())
+                .name("player").value(state.player())
+                .name("health").value(state.health())
+                .name("strength").value(state.strength())
+                .name("craft").value(state.craft())
+                .name("finished").value(state.finished())
+                .name("won").value(state.won())
+                .endObject();
+    }
+
+    private void error(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 512);
+        body.write(new JsonWriter(out));
+        out.flush();
+    }
+
+    private static void ascii(OutputStream out, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * start server from the command line
+     * @param args optional port, default 8080
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        GameServer server = new GameServer();
+        int port = server.start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        System.out.println("Game server listening on http://localhost:" + port + "/sessions");
+    }
+
+    /**
+     * writes a response body, also used by the {@link ClusterRouter}
+     */
+    interface JsonBody {
+        /**
+         * write body
+         * @param json writer on the response
+         * @throws IOException if the response cannot be written
+         */
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * event waiting to be streamed, with the chambers it moved between as indices in the layout
+     * @param event event
+     * @param from index of the chamber left, -1 if not a move
+     * @param to index of the chamber entered, -1 if not a move
+     */
+    private record Frame(GameEvent event, int from, int to) {
+    }
+
+    /**
+     * one game, its dungeon lives in the store and its spectators stay on the heap
+     */
+    private static final class Session {
+        private final long id;
+        // delivers on the publishing thread, so streams see every event while its chambers are still live
+        private final SpectatorPublisher publisher = new SpectatorPublisher(Runnable::run);
+        // only changed while holding the session's lock in the store
+        private int turns;
+
+        Session(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * copy of a session's state taken while holding its lock
+     */
+    private record SessionState(long id, int layout, int chamber, String player, int health, int strength,
+                                int craft, boolean finished, boolean won) {
+        static SessionState of(long id, Layout layout) {
+            Dungeon dungeon = layout.getDungeon();
+            Character player = dungeon.getPlayer();
+            return new SessionState(id, layout.getId(), layout.indexOf(dungeon.getCurrentChamber()), player.getName(),
+                    player.getHealth(), player.getTotalStrength(), player.getTotalCraft(), dungeon.isFinished(),
+                    dungeon.isWon());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * routes the events of players sharing a world only to the players close enough to care
+ * every chamber keeps the members in it and the members watching it, which are those within the radius in doors.
+ * when a member's dungeon changes chamber the member stops watching the chambers that fell out of its radius and
+ * starts watching the new ones, so an event costs one look at the watchers of its chamber instead of a visit to
+ * every player in the world. members never get their own events, those go to the dungeon's own listeners
+ */
+class InterestManager {
+    private final ChamberGraph graph;
+    private final int radius;
+    // concurrent sets, so a member moving in or out of a busy chamber does not copy everyone else in it
+    private final List<Set<Member>> occupants;
+    private final List<Set<Member>> watchers;
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * create interest manager
+     * @param chambers all chambers of the shared world
+     * @param radius doors within which a player sees what happens, 0 for its own chamber only
+     */
+    public InterestManager(Chamber[] chambers, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative");
+        }
+        this.graph = ChamberGraph.of(chambers);
+        this.radius = radius;
+        occupants = new ArrayList<>(chambers.length);
+        watchers = new ArrayList<>(chambers.length);
+        for (int c = 0; c < chambers.length; c++) {
+            occupants.add(ConcurrentHashMap.newKeySet());
+            watchers.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * add a player, from now on it gets the events of nearby players and they get its events
+     * @param dungeon player's dungeon, its chambers must be the world's
+     * @param receiver gets events of other players, called on their threads so it must return quickly
+     * @return membership, used to leave
+     */
+    public Member join(Dungeon dungeon, GameListener receiver) {
+        Member member = new Member(dungeon, receiver);
+        dungeon.addListener(member);
+        dungeon.setInterest(member);
+        member.relocate(dungeon.getCurrentChamber());
+        return member;
+    }
+
+    /**
+     * get number of players in a chamber
+     * @param chamber chamber
+     * @return players whose current chamber it is
+     */
+    public int population(Chamber chamber) {
+        int index = graph.indexOf(chamber);
+        return index < 0 ? 0 : occupants.get(index).size();
+    }
+
+    /**
+     * get number of players watching a chamber
+     * @param chamber chamber
+     * @return players within the radius of it
+     */
+    public int watchers(Chamber chamber) {
+        int index = graph.indexOf(chamber);
+        return index < 0 ? 0 : watchers.get(index).size();
+    }
+
+    /**
+     * get number of events handed to receivers
+     * @return deliveries since creation
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    private void deliver(Member origin, GameEvent event, int chamber, int also) {
+        if (chamber >= 0) {
+            for (Member member : watchers.get(chamber)) {
+                if (member != origin) {
+                    member.receiver.onEvent(event);
+                    delivered.increment();
+                }
+            }
+        }
+        if (also >= 0 && also != chamber) {
+            for (Member member : watchers.get(also)) {
+                // members watching both chambers already have it
+                if (member != origin && !member.isWatching(chamber)) {
+                    member.receiver.onEvent(event);
+                    delivered.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * one player in the world
+     */
+    final class Member implements GameListener {
+        private final Dungeon dungeon;
+        private final GameListener receiver;
+        private int current = -1;
+        // chambers within the radius, as a list and as a set for lookups
+        private int[] watched = new int[0];
+        private LongIntMap watching = new LongIntMap(1);
+        private boolean left;
+
+        private Member(Dungeon dungeon, GameListener receiver) {
+            this.dungeon = dungeon;
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void onEvent(GameEvent event) {
+            if (event instanceof GameEvent.Moved moved) {
+                deliver(this, event, graph.indexOf(moved.to()), graph.indexOf(moved.from()));
+            } else {
+                deliver(this, event, current(), -1);
+            }
+        }
+
+        /**
+         * stop getting and sending events
+         */
+        public synchronized void leave() {
+            if (left) {
+                return;
+            }
+            dungeon.removeListener(this);
+            dungeon.setInterest(null);
+            if (current >= 0) {
+                occupants.get(current).remove(this);
+            }
+            for (int chamber : watched) {
+                watchers.get(chamber).remove(this);
+            }
+            watched = new int[0];
+            watching = new LongIntMap(1);
+            current = -1;
+            left = true;
+        }
+
+        /**
+         * move the member's subscriptions to a new chamber, called by its dungeon on every chamber change
+         * @param chamber chamber the player is in now
+         */
+        synchronized void relocate(Chamber chamber) {
+            int next = graph.indexOf(chamber);
+            if (left || next == current) {
+                return;
+            }
+            if (current >= 0) {
+                occupants.get(current).remove(this);
+            }
+            if (next >= 0) {
+                occupants.get(next).add(this);
+            }
+            current = next;
+
+            LongIntMap around = new LongIntMap(16);
+            int[] reached = next < 0 ? new int[0] : around(next, around);
+            for (int old : watched) {
+                if (around.get(old) < 0) {
+                    watchers.get(old).remove(this);
+                }
+            }
+            for (int now : reached) {
+                if (watching.get(now) < 0) {
+                    watchers.get(now).add(this);
+                }
+            }
+            watched = reached;
+            watching = around;
+        }
+
+        private synchronized int current() {
+            return current;
+        }
+
+        private synchronized boolean isWatching(int chamber) {
+            return chamber >= 0 && watching.get(chamber) >= 0;
+        }
+
+        // chambers within the radius of a chamber, breadth first, each also put into the set with its distance
+        private int[] around(int start, LongIntMap seen) {
+            int[] queue = new int[8];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            seen.putIfAbsent(start, 0);
+            while (head < tail) {
+                int chamber = queue[head++];
+                int distance = seen.get(chamber);
+                if (distance == radius) {
+                    continue;
+                }
+                for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                    int neighbour = graph.neighbour(p);
+                    if (seen.putIfAbsent(neighbour, distance + 1) < 0) {
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, tail * 2);
+                        }
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+            return Arrays.copyOf(queue, tail);
+        }
+    }
+}
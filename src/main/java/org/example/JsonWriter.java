@@ -0,0 +1,189 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * minimal streaming json writer that puts bytes straight into an output stream
+ * nothing is collected into strings first, numbers and escaped characters are written digit by digit.
+ * commas between members are added automatically
+ */
+final class JsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] digits = new byte[20];
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * create writer
+     * @param out stream to write to, should be buffered
+     */
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * start object
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    /**
+     * end object
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    /**
+     * start array
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    /**
+     * end array
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * write member name, the next value belongs to it
+     * @param name member name
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * write string value, null is written as null
+     * @param value value
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(String value) throws IOException {
+        separator();
+        if (value == null) {
+            ascii("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * write boolean value
+     * @param value value
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * write number value
+     * @param value value
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        if (value == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return this;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            out.write(digits[--count]);
+        }
+        return this;
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separator();
+        out.write(bracket);
+        if (++depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth] = true;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!first[depth]) {
+                out.write(',');
+            }
+            first[depth] = false;
+        }
+    }
+
+    private void ascii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private void string(String text) throws IOException {
+        out.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c >= 0x20 && c < 0x7F) {
+                out.write(c);
+            } else {
+                out.write('\\');
+                out.write('u');
+                out.write(HEX[(c >> 12) & 0xF]);
+                out.write(HEX[(c >> 8) & 0xF]);
+                out.write(HEX[(c >> 4) & 0xF]);
+                out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,133 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * a freshly built dungeon together with all of its chambers, so chambers can be referred to by index
+ */
+class Layout {
+    /**
+     * id of the layout played by {@link Game}
+     */
+    public static final int STANDARD = 0;
+    /**
+     * id of the standard layout played by a warrior
+     */
+    public static final int STANDARD_WARRIOR = 1;
+
+    private final int id;
+    private final Dungeon dungeon;
+    private final Chamber[] chambers;
+
+    /**
+     * create layout
+     * @param id layout id
+     * @param dungeon dungeon built from the chambers
+     * @param chambers all chambers of the dungeon
+     */
+    public Layout(int id, Dungeon dungeon, Chamber[] chambers) {
+        this.id = id;
+        this.dungeon = dungeon;
+        this.chambers = chambers;
+    }
+
+    /**
+     * build a new copy of a known layout, every call gives independent chambers, doors and monsters
+     * @param id layout id
+     * @return new layout
+     */
+    public static Layout create(int id) {
+        switch (id) {
+            case STANDARD:
+            case STANDARD_WARRIOR:
+                return standard(id, createPlayer(id));
+            default:
+                throw new IllegalArgumentException("Unknown layout: " + id);
+        }
+    }
+
+    /**
+     * create a new character of the kind that plays a known layout
+     * @param id layout id
+     * @return new character
+     */
+    public static Character createPlayer(int id) {
+        switch (id) {
+            case STANDARD:
+                return new Wizard("Gandalf");
+            case STANDARD_WARRIOR:
+                return new Warrior("Conan");
+            default:
+                throw new IllegalArgumentException("Unknown layout: " + id);
+        }
+    }
+
+    private static Layout standard(int id, Character player) {
+        return standard(id, player, new Monster("Goblin", 1, 0, 3), new Monster("Spider", 0, 3, 5),
+                List.of(new Axe(), new Shield()));
+    }
+
+    /**
+     * build the standard layout with other guardians, items or player, used to try out balance changes
+     * chamber 0 is the start, a strength guardian guards the door from 1 to 2, a craft guardian the door from
+     * 2 to 3, and chamber 4 is the goal. the second item goes into chamber 2, all others into chamber 1
+     * @param id layout id
+     * @param player player character
+     * @param strengthGuardian guardian between chambers 1 and 2
+     * @param craftGuardian guardian between chambers 2 and 3
+     * @param items items to place
+     * @return new layout
+     */
+    static Layout standard(int id, Character player, Monster strengthGuardian, Monster craftGuardian,
+                           List<Item> items) {
+        Chamber[] chambers = new Chamber[]{new Chamber(), new Chamber(), new Chamber(), new Chamber(), new Chamber()};
+        for (int i = 0; i < items.size(); i++) {
+            chambers[i == 1 ? 2 : 1].addItem(items.get(i));
+        }
+
+        Door.connect(chambers[0], chambers[1]);
+        Door.connect(chambers[1], chambers[2], strengthGuardian);
+        Door.connect(chambers[2], chambers[3], craftGuardian);
+        Door.connect(chambers[3], chambers[4]);
+
+        return new Layout(id, new Dungeon(player, chambers[0], chambers[4]), chambers);
+    }
+
+    /**
+     * get layout id
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * get dungeon
+     * @return dungeon
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    /**
+     * get all chambers
+     * @return chambers
+     */
+    public Chamber[] getChambers() {
+        return chambers;
+    }
+
+    /**
+     * find index of chamber
+     * @param chamber chamber to look for
+     * @return index or -1 if the chamber is not part of this layout
+     */
+    public int indexOf(Chamber chamber) {
+        for (int i = 0; i < chambers.length; i++) {
+            if (chambers[i] == chamber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,194 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * best finished games, overall and per layout
+ * each board is a lock-free skip list ordered by rank, so games finishing at the same time insert without
+ * blocking each other. every score gets a sequence number and a board keeps a watermark below which every
+ * score is in the list. a top-k query only takes scores under the watermark it saw when it started, so it is
+ * the exact top-k of a moment in time even while writers keep adding.
+ * boards are trimmed back to their capacity once they hold twice as many, which leaves the top scores
+ * untouched as long as fewer games than the capacity finish at the very same moment
+ */
+class Leaderboard {
+    /**
+     * won games first, then fewer turns, then more health left
+     */
+    static final Comparator<Score> RANK = Comparator.comparing((Score score) -> !score.won())
+            .thenComparingInt(Score::turns)
+            .thenComparing(Comparator.comparingInt(Score::health).reversed());
+
+    private final int capacity;
+    private final Board overall;
+    private final Map<Integer, Board> layouts = new ConcurrentHashMap<>();
+    private final LongAdder recorded = new LongAdder();
+
+    /**
+     * create leaderboard
+     * @param capacity scores kept per board, the most a top-k query can return
+     */
+    public Leaderboard(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.overall = new Board(capacity);
+    }
+
+    /**
+     * record a finished game
+     * @param score game's result
+     */
+    public void record(Score score) {
+        overall.add(score);
+        layouts.computeIfAbsent(score.layout(), id -> new Board(capacity)).add(score);
+        recorded.increment();
+    }
+
+    /**
+     * record a finished game from its dungeon
+     * @param layoutId layout the game was played on
+     * @param dungeon finished dungeon
+     * @param turns turns the game took
+     */
+    public void record(int layoutId, Dungeon dungeon, int turns) {
+        Character player = dungeon.getPlayer();
+        record(new Score(player.getName(), player.getClass().getSimpleName(), layoutId, turns,
+                player.getHealth(), dungeon.isWon()));
+    }
+
+    /**
+     * get best scores over all layouts
+     * @param k number of scores, at most the capacity
+     * @return best scores, best first
+     */
+    public List<Score> top(int k) {
+        return overall.top(Math.min(k, capacity));
+    }
+
+    /**
+     * get best scores of one layout
+     * @param layoutId layout
+     * @param k number of scores, at most the capacity
+     * @return best scores, best first
+     */
+    public List<Score> top(int layoutId, int k) {
+        Board board = layouts.get(layoutId);
+        return board == null ? List.of() : board.top(Math.min(k, capacity));
+    }
+
+    /**
+     * get number of games recorded
+     * @return games recorded since creation
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**
+     * result of one finished game
+     * @param player player's name
+     * @param archetype player's class, such as Wizard or Warrior
+     * @param layout layout id
+     * @param turns turns taken
+     * @param health health left
+     * @param won true if the goal was reached alive
+     */
+    record Score(String player, String archetype, int layout, int turns, int health, boolean won) {
+    }
+
+    /**
+     * one ranked list with its watermark
+     */
+    private static final class Board {
+        // finished sequence numbers are marked in a ring, the watermark moves over runs of marks.
+        // a game finishing so far ahead that its slot is still taken is marked in a set instead, adds never wait
+        private static final int RING = 1 << 12;
+
+        private final int capacity;
+        private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicLong watermark = new AtomicLong();
+        private final AtomicLongArray done = new AtomicLongArray(RING);
+        private final Set<Long> doneLate = ConcurrentHashMap.newKeySet();
+
+        Board(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(Score score) {
+            long sequence = next.getAndIncrement();
+            entries.add(new Entry(score, sequence));
+            if (size.incrementAndGet() > 2 * capacity) {
+                trim();
+            }
+            // the watermark only grows, so once the ring slot is free it stays free
+            if (sequence - watermark.get() < RING) {
+                done.set((int) (sequence & (RING - 1)), sequence + 1);
+            } else {
+                doneLate.add(sequence);
+            }
+            advance();
+        }
+
+        List<Score> top(int k) {
+            long visible = watermark.get();
+            List<Score> top = new ArrayList<>(k);
+            for (Entry entry : entries) {
+                if (top.size() == k) {
+                    break;
+                }
+                if (entry.sequence < visible) {
+                    top.add(entry.score);
+                }
+            }
+            return top;
+        }
+
+        // a slot is taken from the count before an entry is dropped, so two threads trimming at once never
+        // drop more than the count is over. the count trails the list, an entry is added before it is counted
+        private void trim() {
+            int count = size.get();
+            while (count > capacity) {
+                if (size.compareAndSet(count, count - 1)) {
+                    entries.pollLast();
+                }
+                count = size.get();
+            }
+        }
+
+        private void advance() {
+            long mark = watermark.get();
+            while (done.get((int) (mark & (RING - 1))) == mark + 1 || doneLate.remove(mark)) {
+                if (watermark.compareAndSet(mark, mark + 1)) {
+                    mark++;
+                } else {
+                    mark = watermark.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * score with its sequence number, which also keeps equal scores apart in the list
+     */
+    private record Entry(Score score, long sequence) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int order = RANK.compare(score, other.score);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * open addressing hash map from non-negative long keys to int values, without boxing
+ * used to number large state spaces where a HashMap would need an object per entry
+ */
+final class LongIntMap {
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * create map
+     * @param expected expected number of entries
+     */
+    public LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * get value of a key
+     * @param key key, must not be negative
+     * @return value or -1 if the key is missing
+     */
+    public int get(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * add key if missing
+     * @param key key, must not be negative
+     * @param value value stored when the key is new
+     * @return existing value, or -1 if the key was added
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative");
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return -1;
+    }
+
+    /**
+     * set value of a key, adding the key if missing
+     * @param key key, must not be negative
+     * @param value new value
+     * @return previous value, or -1 if the key was added
+     */
+    public int put(long key, int value) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return putIfAbsent(key, value);
+    }
+
+    /**
+     * get number of entries
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * get all keys
+     * @return keys in no particular order
+     */
+    public long[] keys() {
+        long[] all = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                all[n++] = key;
+            }
+        }
+        return all;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
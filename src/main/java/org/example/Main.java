@@ -2,16 +2,32 @@
 
 package org.example;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.random.RandomGenerator;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * class for character in the game
  */
 abstract class Character {
+    private static final VarHandle HEALTH;
+
+    static {
+        try {
+            HEALTH = MethodHandles.lookup().findVarHandle(Character.class, "health", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String name;
-    private int health;
+    private volatile int health;
+    private int maxHealth;
     private int strength;
     private int craft;
     private Item leftHand;
@@ -28,9 +44,9 @@ abstract class Character {
     public Character(String name, int health, int strength, int craft) {
         this.name = name;
         this.health = health;
+        this.maxHealth = health;
         this.strength = strength;
         this.craft = craft;
-        this.inventory = new ArrayList<>();
     }
 
     /**
@@ -57,6 +73,14 @@ abstract class Character {
         this.health = health;
     }
 
+    /**
+     * get health the character started with, healing never goes above it
+     * @return maximum health value
+     */
+    public int getMaxHealth() {
+        return maxHealth;
+    }
+
     /**
      * get strength value
      * @return current strength value
@@ -75,17 +99,20 @@ abstract class Character {
 
     /**
      * get all items in inventory
-     * @return list of inventory items
+     * @return list of inventory items, empty and unmodifiable until the first item is added
      */
     public List<Item> getInventory() {
-        return inventory;
+        return inventory == null ? List.of() : inventory;
     }
 
     /**
-     * add item to inventory
+     * add item to inventory, the list is only made on the first item since monsters never pick anything up
      * @param item item to add to inventory
      */
     public void addItem(Item item) {
+        if (inventory == null) {
+            inventory = new ArrayList<>();
+        }
         inventory.add(item);
     }
 
@@ -152,15 +179,36 @@ abstract class Character {
     }
 
     /**
+     * take damage, safe when several players hit the same character at once
      * @param damage damage to take
      * @return true if still alive, otherwise false
      */
     public boolean takeDamage(int damage) {
-        health -= damage;
-        if (health < 0) {
-            health = 0;
-        }
-        return health > 0;
+        int current;
+        int next;
+        do {
+            current = health;
+            next = Math.max(current - damage, 0);
+        } while (!HEALTH.compareAndSet(this, current, next));
+        return next > 0;
+    }
+
+    /**
+     * heal character up to its maximum health, dead characters stay dead
+     * @param amount health to restore
+     * @return health after healing
+     */
+    public int heal(int amount) {
+        int current;
+        int next;
+        do {
+            current = health;
+            if (current <= 0) {
+                return current;
+            }
+            next = Math.max(Math.min(current + amount, maxHealth), current);
+        } while (!HEALTH.compareAndSet(this, current, next));
+        return next;
     }
 
     /**
@@ -181,10 +229,28 @@ abstract class Character {
     }
 }
 
+/**
+ * character with custom base stats, used for balance testing and simulations
+ */
+class Adventurer extends Character {
+    /**
+     * create new adventurer
+     * @param name adventurer's name
+     * @param health base health value
+     * @param strength base strength value
+     * @param craft base craft value
+     */
+    public Adventurer(String name, int health, int strength, int craft) {
+        super(name, health, strength, craft);
+    }
+}
+
 /**
  * monster that guards doors and fights character
  */
 class Monster extends Character {
+    private LootTable loot;
+
     /**
      * create new monster
      * @param name monster's name
@@ -204,6 +270,22 @@ class Monster extends Character {
         return getCraft() == 0;
     }
 
+    /**
+     * get what the monster drops when defeated
+     * @return loot table, or null if it drops nothing
+     */
+    public LootTable getLoot() {
+        return loot;
+    }
+
+    /**
+     * set what the monster drops when defeated
+     * @param loot loot table, or null to drop nothing
+     */
+    public void setLoot(LootTable loot) {
+        this.loot = loot;
+    }
+
     @Override
     public String toString() {
         if (usesStrength()) {
@@ -324,8 +406,25 @@ class Shield extends Item {
     }
 }
 
+/**
+ * item with any name and bonuses, for items that have no class of their own
+ */
+class Trinket extends Item {
+    /**
+     * create new trinket
+     * @param name item name
+     * @param strength strength bonus
+     * @param craft craft bonus
+     */
+    public Trinket(String name, int strength, int craft) {
+        super(name, strength, craft);
+    }
+}
+
 /**
  * chamber in dungeon
+ * items are kept in a copy-on-write list so each chamber is its own lock stripe:
+ * players in different chambers never contend, and readers always see a stable snapshot
  */
 class Chamber {
     private List<Door> doors;
@@ -336,7 +435,7 @@ class Chamber {
      */
     public Chamber() {
         this.doors = new ArrayList<>();
-        this.items = new ArrayList<>();
+        this.items = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -375,7 +474,24 @@ class Chamber {
     }
 
     /**
-     * remove item from chamber
+     * add item to chamber
+     * @param item item to add
+     */
+    public void addItem(Item item) {
+        items.add(item);
+    }
+
+    /**
+     * put item back at a position, used when a pick is undone so action order stays the same
+     * @param index position in the item list, clamped to the end of the list
+     * @param item item to add
+     */
+    public void addItem(int index, Item item) {
+        items.add(Math.min(index, items.size()), item);
+    }
+
+    /**
+     * remove item from chamber, only one of several players racing for the same item wins the claim
      * @param item item to remove
      * @return true if item was removed, otherwise false
      */
@@ -388,9 +504,24 @@ class Chamber {
  * door connects two chambers
  */
 class Door {
+    private static final VarHandle GUARDIAN;
+
+    static {
+        try {
+            GUARDIAN = MethodHandles.lookup().findVarHandle(Door.class, "guardian", Monster.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // guardian of a door built from a monster store before anyone asked for it
+    private static final Monster UNSEEN = new Monster("", 0, 0, 0);
+
     private Chamber chamber1;
     private Chamber chamber2;
-    private Monster guardian;
+    private volatile Monster guardian;
+    private MonsterStore store;
+    private int stored = -1;
 
     /**
      * create door between two chambers
@@ -406,6 +537,12 @@ class Door {
         chamber2.addDoor(this);
     }
 
+    /**
+     * create door that keeps its chambers and guardian elsewhere, for subclasses that override every accessor
+     */
+    Door() {
+    }
+
     /**
      * method to connect two chambers
      * @param chamber1 first chamber
@@ -427,6 +564,22 @@ class Door {
         return new Door(chamber1, chamber2, guardian);
     }
 
+    /**
+     * method to connect two chambers with a guardian kept in a monster store
+     * the guardian's monster view is only made when someone asks for it
+     * @param chamber1 first chamber
+     * @param chamber2 second chamber
+     * @param store store holding the guardian
+     * @param index guardian's index in the store
+     * @return created door
+     */
+    public static Door connect(Chamber chamber1, Chamber chamber2, MonsterStore store, int index) {
+        Door door = new Door(chamber1, chamber2, UNSEEN);
+        door.store = store;
+        door.stored = index;
+        return door;
+    }
+
     /**
      * get other chamber from given chamber
      * @param current current chamber
@@ -443,7 +596,11 @@ class Door {
      * @return true if locked, otherwise false
      */
     public boolean isLocked() {
-        return guardian != null && guardian.isAlive();
+        Monster current = guardian;
+        if (current == UNSEEN) {
+            return store.getHealth(stored) > 0;
+        }
+        return current != null && current.isAlive();
     }
 
     /**
@@ -451,7 +608,13 @@ class Door {
      * @return monster
      */
     public Monster getGuardian() {
-        return guardian;
+        Monster current = guardian;
+        if (current == UNSEEN) {
+            // everyone must get the same view, fights and removals compare guardians by identity
+            GUARDIAN.compareAndSet(this, UNSEEN, store.view(stored));
+            current = guardian;
+        }
+        return current;
     }
 
     /**
@@ -461,14 +624,33 @@ class Door {
         this.guardian = null;
     }
 
+    /**
+     * remove monster only if it is still the one guarding the door
+     * @param expected monster that was defeated
+     * @return true if this call removed it, otherwise false if another player already did
+     */
+    public boolean removeGuardian(Monster expected) {
+        return expected != null && GUARDIAN.compareAndSet(this, expected, null);
+    }
+
+    /**
+     * put a removed guardian back, used when a fight is undone
+     * @param guardian monster to put back
+     * @return true if the door was unguarded and now has the monster, otherwise false
+     */
+    public boolean restoreGuardian(Monster guardian) {
+        return guardian != null && GUARDIAN.compareAndSet(this, null, guardian);
+    }
+
     /**
      * string info for door
      * @return string with door details
      */
     @Override
     public String toString() {
-        if (isLocked()) {
-            return "Door guarded by " + guardian;
+        Monster current = getGuardian();
+        if (current != null && current.isAlive()) {
+            return "Door guarded by " + current;
         } else {
             return "Unguarded door";
         }
@@ -482,6 +664,15 @@ class Dungeon {
     private Character player;
     private Chamber currentChamber;
     private Chamber goalChamber;
+    private RandomGenerator dice = new Random();
+    private Dice fightDice = Dice.STANDARD;
+    private boolean narrated = true;
+    private volatile GameListener[] listeners = new GameListener[0];
+    private boolean finishPublished;
+    private volatile InterestManager.Member interest;
+    private List<Runnable> afterAction;
+    private List<Runnable> beforeTurn;
+    private int level;
 
     /**
      * create new dungeon
@@ -517,6 +708,206 @@ class Dungeon {
      */
     public void setCurrentChamber(Chamber chamber) {
         this.currentChamber = chamber;
+        InterestManager.Member member = interest;
+        if (member != null) {
+            member.relocate(chamber);
+        }
+    }
+
+    /**
+     * put the player into the start chamber of another level and tell the listeners
+     * actions done on the old level cannot be undone after this, set the goal of the level first
+     * @param start start chamber of the new level
+     */
+    public void changeLevel(Chamber start) {
+        Chamber from = currentChamber;
+        level++;
+        setCurrentChamber(start);
+        if (hasListeners()) {
+            publish(new GameEvent.LevelChanged(this, level, from, start));
+        }
+    }
+
+    /**
+     * get number of level changes so far
+     * @return level index in a campaign, 0 for a dungeon that never changed level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * set membership in a shared world, told about every chamber change
+     * @param member membership or null to leave
+     */
+    void setInterest(InterestManager.Member member) {
+        this.interest = member;
+    }
+
+    /**
+     * get goal chamber
+     * @return goal chamber
+     */
+    public Chamber getGoalChamber() {
+        return goalChamber;
+    }
+
+    /**
+     * set goal chamber, used when the player moves on to another level
+     * @param chamber new goal chamber, or null for a dungeon that cannot be won yet
+     */
+    public void setGoalChamber(Chamber chamber) {
+        this.goalChamber = chamber;
+    }
+
+    /**
+     * get dice used for fights
+     * @return random source for dice rolls
+     */
+    public RandomGenerator getDice() {
+        return dice;
+    }
+
+    /**
+     * set dice used for fights, a seeded source makes the game repeatable
+     * @param dice random source for dice rolls
+     */
+    public void setDice(RandomGenerator dice) {
+        this.dice = dice;
+    }
+
+    /**
+     * get dice both sides roll in a fight round
+     * @return fight dice
+     */
+    public Dice getFightDice() {
+        return fightDice;
+    }
+
+    /**
+     * set dice both sides roll in a fight round
+     * @param fightDice fight dice
+     */
+    public void setFightDice(Dice fightDice) {
+        this.fightDice = fightDice;
+    }
+
+    /**
+     * check if actions print what happens
+     * @return true if actions narrate, otherwise false
+     */
+    public boolean isNarrated() {
+        return narrated;
+    }
+
+    /**
+     * turn narration on or off, headless simulations turn it off to skip all printing
+     * @param narrated true to print what happens
+     */
+    public void setNarrated(boolean narrated) {
+        this.narrated = narrated;
+    }
+
+    /**
+     * add listener for events in this dungeon
+     * @param listener listener to add
+     */
+    public synchronized void addListener(GameListener listener) {
+        GameListener[] current = listeners;
+        GameListener[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = listener;
+        listeners = next;
+    }
+
+    /**
+     * remove listener
+     * @param listener listener to remove
+     */
+    public synchronized void removeListener(GameListener listener) {
+        List<GameListener> next = new ArrayList<>(List.of(listeners));
+        next.remove(listener);
+        listeners = next.toArray(new GameListener[0]);
+    }
+
+    /**
+     * get all listeners
+     * @return listeners in the order they were added
+     */
+    public List<GameListener> getListeners() {
+        return List.of(listeners);
+    }
+
+    /**
+     * check if anyone listens, actions skip building events when nobody does
+     * @return true if there are listeners
+     */
+    public boolean hasListeners() {
+        return listeners.length > 0;
+    }
+
+    /**
+     * send event to all listeners, followed by a finished event the first time the game is over
+     * @param event event to send
+     */
+    public void publish(GameEvent event) {
+        GameListener[] current = listeners;
+        for (GameListener listener : current) {
+            listener.onEvent(event);
+        }
+        if (!finishPublished && isFinished()) {
+            finishPublished = true;
+            GameEvent finished = new GameEvent.Finished(this, isWon());
+            for (GameListener listener : current) {
+                listener.onEvent(finished);
+            }
+        }
+    }
+
+    /**
+     * run a task once the action being executed has finished, for listeners that change the dungeon and must
+     * not do it while the action and the other listeners are still looking at it
+     * @param task task to run on the player's thread after the action
+     */
+    public void runAfterAction(Runnable task) {
+        if (afterAction == null) {
+            afterAction = new ArrayList<>(1);
+        }
+        afterAction.add(task);
+    }
+
+    /**
+     * run the tasks queued while an action was executed, called by {@link Action#execute()}
+     */
+    void finishAction() {
+        List<Runnable> tasks = afterAction;
+        if (tasks != null) {
+            afterAction = null;
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * run a task the next time the player's actions are asked for, before they are listed, for work that was
+     * held up after the last action and should not wait for another one
+     * @param task task to run on the player's thread at the start of the next turn
+     */
+    public void runBeforeTurn(Runnable task) {
+        if (beforeTurn == null) {
+            beforeTurn = new ArrayList<>(1);
+        }
+        beforeTurn.add(task);
+    }
+
+    /**
+     * forget that the finished event was sent if the game is no longer over, so finishing again sends it again
+     * called after an action was undone
+     */
+    void reopen() {
+        if (!isFinished()) {
+            finishPublished = false;
+        }
     }
 
     /**
@@ -527,11 +918,28 @@ class Dungeon {
         return !player.isAlive() || currentChamber == goalChamber;
     }
 
+    /**
+     * check if player reached goal alive
+     * @return true if game is won, otherwise false
+     */
+    public boolean isWon() {
+        return player.isAlive() && currentChamber == goalChamber;
+    }
+
     /**
      * get all actions for the player
      * @return list of possible actions
      */
     public List<Action> getActions() {
+        List<Runnable> tasks = beforeTurn;
+        if (tasks != null) {
+            beforeTurn = null;
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+        GetActionsEvent event = new GetActionsEvent();
+        event.begin();
         List<Action> actions = new ArrayList<>();
         for (Door door : currentChamber.getDoors()) {
             if (!door.isLocked()) {
@@ -544,6 +952,11 @@ class Dungeon {
             actions.add(new Pick(this, item));
         }
 
+        if (event.shouldCommit()) {
+            event.chamber = FlightEvents.chamberId(currentChamber);
+            event.actions = actions.size();
+            event.commit();
+        }
         return actions;
     }
 }
@@ -565,7 +978,37 @@ abstract class Action {
     /**
      * execute the action
      */
-    public abstract void execute();
+    public final void execute() {
+        ActionEvent event = new ActionEvent();
+        event.begin();
+        Chamber chamber = dungeon.getCurrentChamber();
+        perform();
+        if (event.shouldCommit()) {
+            event.type = getClass().getSimpleName();
+            event.chamber = FlightEvents.chamberId(chamber);
+            event.commit();
+        }
+        dungeon.finishAction();
+    }
+
+    /**
+     * do what the action does, called by {@link #execute()}
+     */
+    protected abstract void perform();
+
+    /**
+     * take back what the last execute or redo changed, without printing or publishing anything
+     * only the state the action touched is restored, so a single player undoing their own actions
+     * gets the exact earlier state. actions that change nothing leave this empty
+     */
+    public void undo() {
+    }
+
+    /**
+     * apply again what the last execute changed after it was undone, dice are not rolled again
+     */
+    public void redo() {
+    }
 
     @Override
     public abstract String toString();
@@ -576,6 +1019,8 @@ abstract class Action {
  */
 class Move extends Action {
     private Door door;
+    private Chamber from;
+    private Chamber to;
 
     /**
      * create move action
@@ -587,11 +1032,37 @@ class Move extends Action {
         this.door = door;
     }
 
+    /**
+     * get door to move through
+     * @return door
+     */
+    public Door getDoor() {
+        return door;
+    }
+
     @Override
-    public void execute() {
-        Chamber nextChamber = door.getOtherChamber(dungeon.getCurrentChamber());
+    protected void perform() {
+        Chamber currentChamber = dungeon.getCurrentChamber();
+        Chamber nextChamber = door.getOtherChamber(currentChamber);
+        from = currentChamber;
+        to = nextChamber;
         dungeon.setCurrentChamber(nextChamber);
-        System.out.println("You moved to a new chamber.");
+        if (dungeon.hasListeners()) {
+            dungeon.publish(new GameEvent.Moved(dungeon, currentChamber, nextChamber));
+        }
+        if (dungeon.isNarrated()) {
+            System.out.println("You moved to a new chamber.");
+        }
+    }
+
+    @Override
+    public void undo() {
+        dungeon.setCurrentChamber(from);
+    }
+
+    @Override
+    public void redo() {
+        dungeon.setCurrentChamber(to);
     }
 
     @Override
@@ -607,7 +1078,13 @@ class Move extends Action {
 class Fight extends Action {
     private Monster monster;
     private Door door;
-    private Random dice = new Random();
+    private int playerBefore;
+    private int playerAfter;
+    private int monsterBefore;
+    private int monsterAfter;
+    private boolean guardianRemoved;
+    private Item dropped;
+    private Chamber dropChamber;
 
     /**
      * create fight action
@@ -621,48 +1098,146 @@ class Fight extends Action {
         this.door = door;
     }
 
+    /**
+     * get monster to fight
+     * @return monster
+     */
+    public Monster getMonster() {
+        return monster;
+    }
+
+    /**
+     * get door the monster is guarding
+     * @return door
+     */
+    public Door getDoor() {
+        return door;
+    }
+
     @Override
-    public void execute() {
+    protected void perform() {
         Character player = dungeon.getPlayer();
-        System.out.println("You are fighting " + monster);
+        playerBefore = player.getHealth();
+        monsterBefore = monster.getHealth();
+        guardianRemoved = fight(player);
+        playerAfter = player.getHealth();
+        monsterAfter = monster.getHealth();
+        LootTable loot = monster.getLoot();
+        if (guardianRemoved && loot != null) {
+            dropped = loot.roll(dungeon.getDice());
+            if (dropped != null) {
+                dropChamber = dungeon.getCurrentChamber();
+                dropChamber.addItem(dropped);
+                if (dungeon.isNarrated()) {
+                    System.out.println("The " + monster.getName() + " dropped " + dropped + ".");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void undo() {
+        dungeon.getPlayer().setHealth(playerBefore);
+        monster.setHealth(monsterBefore);
+        if (guardianRemoved) {
+            door.restoreGuardian(monster);
+        }
+        if (dropped != null) {
+            dropChamber.removeItem(dropped);
+        }
+    }
+
+    @Override
+    public void redo() {
+        dungeon.getPlayer().setHealth(playerAfter);
+        monster.setHealth(monsterAfter);
+        if (guardianRemoved) {
+            door.removeGuardian(monster);
+        }
+        if (dropped != null) {
+            dropChamber.addItem(dropped);
+        }
+    }
+
+    // returns true if this fight took the monster off the door
+    private boolean fight(Character player) {
+        boolean narrate = dungeon.isNarrated();
+        if (!monster.isAlive() || door.getGuardian() != monster) {
+            boolean removed = door.removeGuardian(monster);
+            if (narrate) {
+                System.out.println("The " + monster.getName() + " has already been defeated.");
+            }
+            return removed;
+        }
+        if (narrate) {
+            System.out.println("You are fighting " + monster);
+        }
         boolean useStrength = monster.usesStrength();
 
         int playerStat = useStrength ? player.getTotalStrength() : player.getTotalCraft();
         int monsterStat = useStrength ? monster.getStrength() : monster.getCraft();
 
-        int playerRoll = dice.nextInt(6) + 1;
-        int monsterRoll = dice.nextInt(6) + 1;
+        RandomGenerator dice = dungeon.getDice();
+        Dice fightDice = dungeon.getFightDice();
+        int playerRoll = fightDice.roll(dice);
+        int monsterRoll = fightDice.roll(dice);
 
         int playerTotal = playerStat + playerRoll;
         int monsterTotal = monsterStat + monsterRoll;
 
-        System.out.println("You rolled a " + playerRoll + " + " + playerStat + " = " + playerTotal);
-        System.out.println("The " + monster.getName() + " rolled a " + monsterRoll + " + " + monsterStat + " = " + monsterTotal);
+        if (narrate) {
+            System.out.println("You rolled a " + playerRoll + " + " + playerStat + " = " + playerTotal);
+            System.out.println("The " + monster.getName() + " rolled a " + monsterRoll + " + " + monsterStat + " = " + monsterTotal);
+        }
 
         if (playerTotal > monsterTotal) {
             int damage = playerTotal - monsterTotal;
-            monster.takeDamage(damage);
+            boolean alive = monster.takeDamage(damage);
+            boolean removed = !alive && door.removeGuardian(monster);
+            FightEvent.emit(monster, playerRoll, monsterRoll, 0, damage, removed);
+            if (dungeon.hasListeners()) {
+                dungeon.publish(new GameEvent.Fought(dungeon, monster, playerRoll, monsterRoll, 0, damage, removed));
+            }
+            if (!narrate) {
+                return removed;
+            }
             System.out.println("You hit the " + monster.getName() + " for " + damage + " damage!");
 
-            if (!monster.isAlive()) {
+            if (removed) {
                 System.out.println("You defeated the " + monster.getName() + "!");
-                door.removeGuardian();
+            } else if (!alive) {
+                System.out.println("The " + monster.getName() + " was defeated by another player.");
             } else {
                 System.out.println("The " + monster.getName() + " has " + monster.getHealth() + " health remaining.");
             }
+            return removed;
         } else if (monsterTotal > playerTotal) {
             int damage = monsterTotal - playerTotal;
-            player.takeDamage(damage);
+            boolean alive = player.takeDamage(damage);
+            FightEvent.emit(monster, playerRoll, monsterRoll, damage, 0, false);
+            if (dungeon.hasListeners()) {
+                dungeon.publish(new GameEvent.Fought(dungeon, monster, playerRoll, monsterRoll, damage, 0, false));
+            }
+            if (!narrate) {
+                return false;
+            }
             System.out.println("The " + monster.getName() + " hit you for " + damage + " damage!");
 
-            if (!player.isAlive()) {
+            if (!alive) {
                 System.out.println("You have been defeated!");
             } else {
                 System.out.println("You have " + player.getHealth() + " health remaining.");
             }
         } else {
-            System.out.println("You both missed!");
+            FightEvent.emit(monster, playerRoll, monsterRoll, 0, 0, false);
+            if (dungeon.hasListeners()) {
+                dungeon.publish(new GameEvent.Fought(dungeon, monster, playerRoll, monsterRoll, 0, 0, false));
+            }
+            if (narrate) {
+                System.out.println("You both missed!");
+            }
         }
+        return false;
     }
 
     @Override
@@ -676,6 +1251,11 @@ class Fight extends Action {
  */
 class Pick extends Action {
     private Item item;
+    private Chamber chamber;
+    private int position;
+    private boolean claimed;
+    // 0 if the item went to the inventory only, 1 for the left hand and 2 for the right hand
+    private int hand;
 
     /**
      * create pick action
@@ -687,27 +1267,81 @@ class Pick extends Action {
         this.item = item;
     }
 
+    /**
+     * get item to pick up
+     * @return item
+     */
+    public Item getItem() {
+        return item;
+    }
+
     @Override
-    public void execute() {
+    protected void perform() {
         Character player = dungeon.getPlayer();
         Chamber currentChamber = dungeon.getCurrentChamber();
+        boolean narrate = dungeon.isNarrated();
 
-        if (currentChamber.removeItem(item)) {
+        chamber = currentChamber;
+        position = currentChamber.getItems().indexOf(item);
+        hand = 0;
+        claimed = currentChamber.removeItem(item);
+        if (claimed) {
             player.addItem(item);
-            System.out.println("You picked up " + item);
+            if (narrate) {
+                System.out.println("You picked up " + item);
+            }
 
             if (player.getLeftHand() == null) {
                 player.setLeftHand(item);
-                System.out.println("You equipped " + item + " in your left hand.");
+                hand = 1;
+                if (narrate) {
+                    System.out.println("You equipped " + item + " in your left hand.");
+                }
             } else if (player.getRightHand() == null) {
                 player.setRightHand(item);
-                System.out.println("You equipped " + item + " in your right hand.");
-            } else {
+                hand = 2;
+                if (narrate) {
+                    System.out.println("You equipped " + item + " in your right hand.");
+                }
+            } else if (narrate) {
                 System.out.println("Both hands are full. Item added to inventory.");
             }
-        } else {
+        } else if (narrate) {
             System.out.println("The item is no longer in the chamber.");
         }
+        if (dungeon.hasListeners()) {
+            dungeon.publish(new GameEvent.Picked(dungeon, item, claimed));
+        }
+    }
+
+    @Override
+    public void undo() {
+        if (!claimed) {
+            return;
+        }
+        Character player = dungeon.getPlayer();
+        List<Item> inventory = player.getInventory();
+        inventory.remove(inventory.lastIndexOf(item));
+        if (hand == 1) {
+            player.setLeftHand(null);
+        } else if (hand == 2) {
+            player.setRightHand(null);
+        }
+        chamber.addItem(position, item);
+    }
+
+    @Override
+    public void redo() {
+        if (!claimed || !chamber.removeItem(item)) {
+            return;
+        }
+        Character player = dungeon.getPlayer();
+        player.addItem(item);
+        if (hand == 1) {
+            player.setLeftHand(item);
+        } else if (hand == 2) {
+            player.setRightHand(item);
+        }
     }
 
     @Override
@@ -733,7 +1367,7 @@ class PrintError extends Action {
     }
 
     @Override
-    public void execute() {
+    protected void perform() {
         System.out.println("Error: " + error.getMessage());
         System.out.println("Please enter a valid number from the options above.");
     }
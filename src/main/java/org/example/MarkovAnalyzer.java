@@ -0,0 +1,642 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * exact survival analysis of a dungeon played with a fixed deterministic policy
+ * the game is an absorbing markov chain over (chamber, player health, guardian healths, items taken,
+ * equipped items). moves and picks are certain, a fight round branches into every difference the fight
+ * {@link Dice} can roll, resolved with the {@link Fight} rules. reaching the goal alive and dying are the
+ * absorbing states. a dropped item would be a state the chain has no field for, so guardians with loot are
+ * turned down.
+ * the reachable states are numbered with a primitive hash map, transitions are kept in compressed sparse rows,
+ * and win probability and expected turns are solved with jacobi iterations whose matrix-vector product
+ * runs in parallel over the rows
+ */
+class MarkovAnalyzer {
+    private static final int MOVE = 0;
+    private static final int FIGHT = 1;
+    private static final int PICK = 2;
+    private static final int WIN = -2;
+    private static final int LOSS = -3;
+
+    private final ChamberGraph graph;
+    private final int start;
+    private final int goal;
+    private final int startHealth;
+    private final int baseStrength;
+    private final int baseCraft;
+
+    private final int[] edgeGuardian;
+    private final int[] guardianStrength;
+    private final int[] guardianCraft;
+    private final boolean[] guardianUsesStrength;
+    private final int[] guardianStartHealth;
+    // differences the player's roll can be over the guardian's, with their chances
+    private final int[] rollDifferences;
+    private final double[] rollChances;
+
+    private final int[] itemStrength;
+    private final int[] itemCraft;
+    private final int[] chamberItemStart;
+    private final int[] chamberItems;
+    private final int startLeft;
+    private final int startRight;
+    private final long startTaken;
+
+    private final int chamberBits;
+    private final int healthBits;
+    private final int[] guardianShift;
+    private final int[] guardianBits;
+    private final int takenShift;
+    private final int handBits;
+    private final int leftShift;
+    private final int rightShift;
+
+    /**
+     * create analyzer for a layout in its current state
+     * @param layout layout to analyze
+     */
+    public MarkovAnalyzer(Layout layout) {
+        this(layout.getChambers(), layout.getDungeon().getCurrentChamber(), layout.getDungeon().getGoalChamber(),
+                layout.getDungeon().getPlayer(), layout.getDungeon().getFightDice());
+    }
+
+    /**
+     * create analyzer for fights with one six sided die
+     * @param chambers all chambers
+     * @param start chamber the player is in
+     * @param goal goal chamber
+     * @param player player, its current health and equipped items are the starting point
+     */
+    public MarkovAnalyzer(Chamber[] chambers, Chamber start, Chamber goal, Character player) {
+        this(chambers, start, goal, player, Dice.STANDARD);
+    }
+
+    /**
+     * create analyzer
+     * @param chambers all chambers
+     * @param start chamber the player is in
+     * @param goal goal chamber
+     * @param player player, its current health and equipped items are the starting point
+     * @param dice dice both sides roll in a fight
+     */
+    public MarkovAnalyzer(Chamber[] chambers, Chamber start, Chamber goal, Character player, Dice dice) {
+        graph = ChamberGraph.of(chambers);
+        this.start = graph.indexOf(start);
+        this.goal = graph.indexOf(goal);
+        if (this.start < 0 || this.goal < 0) {
+            throw new IllegalArgumentException("Start and goal must be part of the dungeon");
+        }
+        startHealth = player.getHealth();
+        baseStrength = player.getStrength();
+        baseCraft = player.getCraft();
+
+        edgeGuardian = new int[graph.edgeCount()];
+        List<Monster> guardians = new ArrayList<>();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            Door door = graph.door(e);
+            edgeGuardian[e] = -1;
+            if (door.isLocked()) {
+                edgeGuardian[e] = guardians.size();
+                guardians.add(door.getGuardian());
+            }
+        }
+        int guardianCount = guardians.size();
+        guardianStrength = new int[guardianCount];
+        guardianCraft = new int[guardianCount];
+        guardianUsesStrength = new boolean[guardianCount];
+        guardianStartHealth = new int[guardianCount];
+        for (int g = 0; g < guardianCount; g++) {
+            Monster monster = guardians.get(g);
+            guardianStrength[g] = monster.getStrength();
+            guardianCraft[g] = monster.getCraft();
+            guardianUsesStrength[g] = monster.usesStrength();
+            guardianStartHealth[g] = monster.getHealth();
+            if (monster.getLoot() != null && monster.getLoot().size() > 0) {
+                throw new IllegalArgumentException("Guardians that drop loot cannot be analyzed");
+            }
+        }
+        int span = dice.max() - dice.min();
+        rollDifferences = IntStream.rangeClosed(-span, span).filter(d -> dice.difference(d) > 0).toArray();
+        rollChances = Arrays.stream(rollDifferences).mapToDouble(dice::difference).toArray();
+
+        // items lying in chambers first, then whatever the player already holds, which counts as taken
+        List<Item> items = new ArrayList<>();
+        chamberItemStart = new int[graph.size() + 1];
+        for (int c = 0; c < graph.size(); c++) {
+            items.addAll(graph.chamber(c).getItems());
+            chamberItemStart[c + 1] = items.size();
+        }
+        chamberItems = IntStream.range(0, items.size()).toArray();
+        long taken = 0;
+        int left = 0;
+        int right = 0;
+        if (player.getLeftHand() != null) {
+            items.add(player.getLeftHand());
+            taken |= 1L << (items.size() - 1);
+            left = items.size();
+        }
+        if (player.getRightHand() != null) {
+            items.add(player.getRightHand());
+            taken |= 1L << (items.size() - 1);
+            right = items.size();
+        }
+        startTaken = taken;
+        startLeft = left;
+        startRight = right;
+        itemStrength = new int[items.size()];
+        itemCraft = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            itemStrength[i] = items.get(i).getStrength();
+            itemCraft[i] = items.get(i).getCraft();
+        }
+
+        chamberBits = bitsFor(graph.size() - 1);
+        healthBits = bitsFor(startHealth);
+        guardianShift = new int[guardianCount];
+        guardianBits = new int[guardianCount];
+        int shift = chamberBits + healthBits;
+        for (int g = 0; g < guardianCount; g++) {
+            guardianShift[g] = shift;
+            guardianBits[g] = bitsFor(guardianStartHealth[g]);
+            shift += guardianBits[g];
+        }
+        takenShift = shift;
+        shift += items.size();
+        handBits = bitsFor(items.size());
+        leftShift = shift;
+        rightShift = shift + handBits;
+        if (rightShift + handBits > 63) {
+            throw new IllegalArgumentException("Dungeon has too many guardians and items to encode a state in 63 bits");
+        }
+    }
+
+    private static long with(long key, int shift, int bits, long value) {
+        long mask = ((1L << bits) - 1) << shift;
+        return (key & ~mask) | (value << shift);
+    }
+
+    private static long field(long key, int shift, int bits) {
+        return (key >>> shift) & ((1L << bits) - 1);
+    }
+
+    private static int bitsFor(int maxValue) {
+        return maxValue <= 0 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    /**
+     * policy that picks up every item it finds, then takes the door that leads closest to the goal,
+     * fighting its guardian if needed
+     * @return policy
+     */
+    public StatePolicy towardsGoal() {
+        int[] distance = new int[graph.size()];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        int[] queue = new int[graph.size()];
+        int head = 0;
+        int tail = 0;
+        distance[goal] = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int c = queue[head++];
+            for (int p = graph.firstNeighbour(c); p < graph.endNeighbour(c); p++) {
+                int next = graph.neighbour(p);
+                if (distance[next] == Integer.MAX_VALUE) {
+                    distance[next] = distance[c] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return (state, options) -> {
+            int best = 0;
+            for (int i = 0; i < options.size(); i++) {
+                if (options.isPick(i)) {
+                    return i;
+                }
+                if (distance[options.target(i)] < distance[options.target(best)]) {
+                    best = i;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * solve chain with default precision
+     * @param policy policy to evaluate
+     * @return result
+     */
+    public Result analyze(StatePolicy policy) {
+        return analyze(policy, 1e-12, 1_000_000);
+    }
+
+    /**
+     * build chain of all states reachable under the policy and solve it
+     * @param policy policy to evaluate
+     * @param tolerance stop when no value changes by more than this
+     * @param maxIterations iteration limit
+     * @return result
+     */
+    public Result analyze(StatePolicy policy, double tolerance, int maxIterations) {
+        Chain chain = explore(policy);
+        if (chain.startState < 0) {
+            return new Result(chain.startState == WIN ? 1 : 0, 0, 0, 0, true);
+        }
+        return chain.solve(tolerance, maxIterations);
+    }
+
+    private Chain explore(StatePolicy policy) {
+        State state = new State(guardianStartHealth.length);
+        state.chamber = start;
+        state.health = startHealth;
+        System.arraycopy(guardianStartHealth, 0, state.guardianHealth, 0, guardianStartHealth.length);
+        state.taken = startTaken;
+        state.left = startLeft;
+        state.right = startRight;
+
+        Chain chain = new Chain();
+        LongIntMap indexes = new LongIntMap(1024);
+        long[] queue = new long[1024];
+        int count = 0;
+        long startKey = state.encode();
+        chain.startState = absorbing(state);
+        if (chain.startState != 0) {
+            return chain;
+        }
+        indexes.putIfAbsent(startKey, 0);
+        queue[count++] = startKey;
+
+        Options options = new Options(graph.edgeCount() + chamberItems.length);
+        long[] outcomeKeys = new long[rollDifferences.length];
+        double[] outcomeProbabilities = new double[rollDifferences.length];
+        for (int current = 0; current < count; current++) {
+            state.decode(queue[current]);
+            options.fill(state);
+            chain.startRow(current);
+            if (options.size() == 0) {
+                chain.stuck.set(current);
+                continue;
+            }
+            int choice = policy.choose(state, options);
+            if (choice < 0 || choice >= options.size()) {
+                throw new IllegalStateException("Policy chose option " + choice + " of " + options.size());
+            }
+            int outcomes = transitions(state, options, choice, outcomeKeys, outcomeProbabilities);
+            for (int o = 0; o < outcomes; o++) {
+                long key = outcomeKeys[o];
+                double probability = outcomeProbabilities[o];
+                state.decode(key);
+                int kind = absorbing(state);
+                if (kind == WIN) {
+                    chain.win[current] += probability;
+                } else if (kind == 0) {
+                    int index = indexes.putIfAbsent(key, count);
+                    if (index < 0) {
+                        index = count;
+                        if (count == queue.length) {
+                            queue = Arrays.copyOf(queue, count * 2);
+                        }
+                        queue[count++] = key;
+                    }
+                    chain.add(current, index, probability);
+                }
+            }
+        }
+        chain.finish(count);
+        return chain;
+    }
+
+    private int absorbing(State state) {
+        if (state.health <= 0) {
+            return LOSS;
+        }
+        return state.chamber == goal ? WIN : 0;
+    }
+
+    private int transitions(State state, Options options, int choice, long[] keys, double[] probabilities) {
+        long key = state.encode();
+        switch (options.kind[choice]) {
+            case MOVE:
+                keys[0] = with(key, 0, chamberBits, options.target[choice]);
+                probabilities[0] = 1;
+                return 1;
+            case PICK:
+                int item = options.item[choice];
+                long next = key | (1L << (takenShift + item));
+                if (state.left == 0) {
+                    next = with(next, leftShift, handBits, item + 1);
+                } else if (state.right == 0) {
+                    next = with(next, rightShift, handBits, item + 1);
+                }
+                keys[0] = next;
+                probabilities[0] = 1;
+                return 1;
+            default:
+                int guardian = edgeGuardian[options.edge[choice]];
+                boolean strength = guardianUsesStrength[guardian];
+                int playerStat = strength ? state.totalStrength() : state.totalCraft();
+                int monsterStat = strength ? guardianStrength[guardian] : guardianCraft[guardian];
+                int count = 0;
+                for (int r = 0; r < rollDifferences.length; r++) {
+                    int difference = playerStat - monsterStat + rollDifferences[r];
+                    long outcome = key;
+                    if (difference > 0) {
+                        int health = Math.max(state.guardianHealth[guardian] - difference, 0);
+                        outcome = with(key, guardianShift[guardian], guardianBits[guardian], health);
+                    } else if (difference < 0) {
+                        outcome = with(key, chamberBits, healthBits, Math.max(state.health + difference, 0));
+                    }
+                    int o = 0;
+                    while (o < count && keys[o] != outcome) {
+                        o++;
+                    }
+                    if (o == count) {
+                        keys[count] = outcome;
+                        probabilities[count++] = 0;
+                    }
+                    probabilities[o] += rollChances[r];
+                }
+                return count;
+        }
+    }
+
+    /**
+     * deterministic policy over abstract states, the same state must always give the same choice
+     */
+    interface StatePolicy {
+        /**
+         * choose option
+         * @param state current state, only valid during the call
+         * @param options available options, never empty
+         * @return index of chosen option
+         */
+        int choose(State state, Options options);
+    }
+
+    /**
+     * abstract game state
+     */
+    final class State {
+        private int chamber;
+        private int health;
+        private final int[] guardianHealth;
+        private long taken;
+        private int left;
+        private int right;
+
+        private State(int guardians) {
+            guardianHealth = new int[guardians];
+        }
+
+        /**
+         * get chamber index in the layout's chamber array
+         * @return chamber index
+         */
+        public int chamber() {
+            return chamber;
+        }
+
+        /**
+         * get player health
+         * @return health
+         */
+        public int health() {
+            return health;
+        }
+
+        /**
+         * get total strength including equipped items
+         * @return strength
+         */
+        public int totalStrength() {
+            int total = baseStrength;
+            if (left > 0) {
+                total += itemStrength[left - 1];
+            }
+            if (right > 0) {
+                total += itemStrength[right - 1];
+            }
+            return total;
+        }
+
+        /**
+         * get total craft including equipped items
+         * @return craft
+         */
+        public int totalCraft() {
+            int total = baseCraft;
+            if (left > 0) {
+                total += itemCraft[left - 1];
+            }
+            if (right > 0) {
+                total += itemCraft[right - 1];
+            }
+            return total;
+        }
+
+        private long encode() {
+            long key = chamber | ((long) health << chamberBits);
+            for (int g = 0; g < guardianHealth.length; g++) {
+                key |= (long) guardianHealth[g] << guardianShift[g];
+            }
+            return key | (taken << takenShift) | ((long) left << leftShift) | ((long) right << rightShift);
+        }
+
+        private void decode(long key) {
+            chamber = (int) field(key, 0, chamberBits);
+            health = (int) field(key, chamberBits, healthBits);
+            for (int g = 0; g < guardianHealth.length; g++) {
+                guardianHealth[g] = (int) field(key, guardianShift[g], guardianBits[g]);
+            }
+            taken = field(key, takenShift, itemStrength.length);
+            left = (int) field(key, leftShift, handBits);
+            right = (int) field(key, rightShift, handBits);
+        }
+    }
+
+    /**
+     * options in a state, in the order of {@link ChamberGraph} neighbours followed by items in the chamber
+     */
+    final class Options {
+        private final int[] kind;
+        private final int[] target;
+        private final int[] edge;
+        private final int[] item;
+        private int size;
+
+        private Options(int capacity) {
+            kind = new int[capacity];
+            target = new int[capacity];
+            edge = new int[capacity];
+            item = new int[capacity];
+        }
+
+        private void fill(State state) {
+            size = 0;
+            int chamber = state.chamber;
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                int e = graph.neighbourEdge(p);
+                int guardian = edgeGuardian[e];
+                kind[size] = guardian >= 0 && state.guardianHealth[guardian] > 0 ? FIGHT : MOVE;
+                target[size] = graph.neighbour(p);
+                edge[size] = e;
+                item[size++] = -1;
+            }
+            for (int i = chamberItemStart[chamber]; i < chamberItemStart[chamber + 1]; i++) {
+                if ((state.taken & (1L << chamberItems[i])) == 0) {
+                    kind[size] = PICK;
+                    target[size] = chamber;
+                    edge[size] = -1;
+                    item[size++] = chamberItems[i];
+                }
+            }
+        }
+
+        /**
+         * get number of options
+         * @return size
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * check if option moves through an open door
+         * @param i option index
+         * @return true for a move
+         */
+        public boolean isMove(int i) {
+            return kind[i] == MOVE;
+        }
+
+        /**
+         * check if option fights a guardian
+         * @param i option index
+         * @return true for a fight
+         */
+        public boolean isFight(int i) {
+            return kind[i] == FIGHT;
+        }
+
+        /**
+         * check if option picks up an item
+         * @param i option index
+         * @return true for a pick
+         */
+        public boolean isPick(int i) {
+            return kind[i] == PICK;
+        }
+
+        /**
+         * get chamber the option leads to, the current chamber for picks
+         * @param i option index
+         * @return chamber index
+         */
+        public int target(int i) {
+            return target[i];
+        }
+    }
+
+    /**
+     * transient states as compressed sparse rows, self loops and one-step wins kept separately
+     */
+    private static final class Chain {
+        private int startState;
+        private final BitSet stuck = new BitSet();
+        private int[] rowStart = new int[1025];
+        private int[] columns = new int[4096];
+        private double[] probabilities = new double[4096];
+        private double[] self = new double[1024];
+        private double[] win = new double[1024];
+        private int entries;
+        private int states;
+
+        void startRow(int row) {
+            if (row + 1 >= rowStart.length) {
+                rowStart = Arrays.copyOf(rowStart, rowStart.length * 2);
+                self = Arrays.copyOf(self, self.length * 2);
+                win = Arrays.copyOf(win, win.length * 2);
+            }
+            rowStart[row] = entries;
+        }
+
+        void add(int row, int column, double probability) {
+            if (row == column) {
+                self[row] += probability;
+                return;
+            }
+            if (entries == columns.length) {
+                columns = Arrays.copyOf(columns, entries * 2);
+                probabilities = Arrays.copyOf(probabilities, entries * 2);
+            }
+            columns[entries] = column;
+            probabilities[entries++] = probability;
+        }
+
+        void finish(int count) {
+            states = count;
+            rowStart[count] = entries;
+        }
+
+        Result solve(double tolerance, int maxIterations) {
+            double[] winNow = new double[states];
+            double[] turnsNow = new double[states];
+            double[] winNext = new double[states];
+            double[] turnsNext = new double[states];
+            int iteration = 0;
+            boolean converged = false;
+            while (iteration < maxIterations && !converged) {
+                double[] winFrom = winNow;
+                double[] turnsFrom = turnsNow;
+                double[] winTo = winNext;
+                double[] turnsTo = turnsNext;
+                double change = IntStream.range(0, states).parallel().mapToDouble(row -> {
+                    double stay = 1 - self[row];
+                    if (stuck.get(row)) {
+                        winTo[row] = 0;
+                        turnsTo[row] = 0;
+                        return 0;
+                    }
+                    if (stay <= 0) {
+                        winTo[row] = 0;
+                        turnsTo[row] = Double.POSITIVE_INFINITY;
+                        return 0;
+                    }
+                    double winSum = win[row];
+                    double turnSum = 1;
+                    for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                        winSum += probabilities[k] * winFrom[columns[k]];
+                        turnSum += probabilities[k] * turnsFrom[columns[k]];
+                    }
+                    winTo[row] = winSum / stay;
+                    turnsTo[row] = turnSum / stay;
+                    double turnChange = turnsTo[row] == turnsFrom[row] ? 0 : Math.abs(turnsTo[row] - turnsFrom[row]);
+                    return Math.max(Math.abs(winTo[row] - winFrom[row]), turnChange);
+                }).max().orElse(0);
+                winNow = winTo;
+                turnsNow = turnsTo;
+                winNext = winFrom;
+                turnsNext = turnsFrom;
+                iteration++;
+                converged = change <= tolerance;
+            }
+            return new Result(winNow[0], turnsNow[0], states, iteration, converged);
+        }
+    }
+
+    /**
+     * solution of the chain
+     * @param winProbability probability to reach the goal alive
+     * @param expectedTurns expected turns until the game ends
+     * @param states number of transient states
+     * @param iterations solver iterations used
+     * @param converged false if the iteration limit was hit first
+     */
+    record Result(double winProbability, double expectedTurns, int states, int iterations, boolean converged) {
+    }
+}
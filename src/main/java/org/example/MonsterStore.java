@@ -0,0 +1,254 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * monsters kept as columns of ints instead of one object each
+ * strength, craft, health and maximum health are parallel arrays and names are ids into a table of distinct
+ * names, so a monster costs 20 bytes however many there are. doors refer to a guardian by its index and
+ * {@link #view(int)} gives a {@link Monster} that reads and writes the columns, so fights work unchanged.
+ * health changes are atomic like those of ordinary characters.
+ * add every monster before the store is shared, adding is not thread safe and may replace the arrays
+ */
+class MonsterStore {
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private int[] nameId;
+    private int[] strength;
+    private int[] craft;
+    private int[] health;
+    private int[] maxHealth;
+    private int size;
+
+    /**
+     * create store
+     * @param capacity number of monsters to make room for
+     */
+    public MonsterStore(int capacity) {
+        int room = Math.max(capacity, 4);
+        nameId = new int[room];
+        strength = new int[room];
+        craft = new int[room];
+        health = new int[room];
+        maxHealth = new int[room];
+    }
+
+    /**
+     * add monster
+     * @param name monster's name
+     * @param strength monster's strength
+     * @param craft monster's craft
+     * @param health monster's health
+     * @return index of the new monster
+     */
+    public int add(String name, int strength, int craft, int health) {
+        if (size == nameId.length) {
+            int room = size * 2;
+            nameId = Arrays.copyOf(nameId, room);
+            this.strength = Arrays.copyOf(this.strength, room);
+            this.craft = Arrays.copyOf(this.craft, room);
+            this.health = Arrays.copyOf(this.health, room);
+            maxHealth = Arrays.copyOf(maxHealth, room);
+        }
+        nameId[size] = nameIds.computeIfAbsent(name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+        this.strength[size] = strength;
+        this.craft[size] = craft;
+        this.health[size] = health;
+        maxHealth[size] = health;
+        return size++;
+    }
+
+    /**
+     * get number of monsters
+     * @return monsters added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * get number of distinct names
+     * @return size of the name table
+     */
+    public int nameCount() {
+        return names.size();
+    }
+
+    /**
+     * get monster's name
+     * @param index monster index
+     * @return name
+     */
+    public String getName(int index) {
+        return names.get(nameId[index]);
+    }
+
+    /**
+     * get monster's strength
+     * @param index monster index
+     * @return strength
+     */
+    public int getStrength(int index) {
+        return strength[index];
+    }
+
+    /**
+     * get monster's craft
+     * @param index monster index
+     * @return craft
+     */
+    public int getCraft(int index) {
+        return craft[index];
+    }
+
+    /**
+     * get monster's health
+     * @param index monster index
+     * @return health
+     */
+    public int getHealth(int index) {
+        return (int) INTS.getVolatile(health, index);
+    }
+
+    /**
+     * get monster's maximum health
+     * @param index monster index
+     * @return health it was added with
+     */
+    public int getMaxHealth(int index) {
+        return maxHealth[index];
+    }
+
+    /**
+     * set monster's health
+     * @param index monster index
+     * @param value new health
+     */
+    public void setHealth(int index, int value) {
+        INTS.setVolatile(health, index, value);
+    }
+
+    /**
+     * take damage, safe when several players hit the same monster at once
+     * @param index monster index
+     * @param damage damage to take
+     * @return true if still alive, otherwise false
+     */
+    public boolean takeDamage(int index, int damage) {
+        int current;
+        int next;
+        do {
+            current = getHealth(index);
+            next = Math.max(current - damage, 0);
+        } while (!INTS.compareAndSet(health, index, current, next));
+        return next > 0;
+    }
+
+    /**
+     * heal monster up to its maximum health, dead monsters stay dead
+     * @param index monster index
+     * @param amount health to restore
+     * @return health after healing
+     */
+    public int heal(int index, int amount) {
+        int current;
+        int next;
+        do {
+            current = getHealth(index);
+            if (current <= 0) {
+                return current;
+            }
+            next = Math.max(Math.min(current + amount, maxHealth[index]), current);
+        } while (!INTS.compareAndSet(health, index, current, next));
+        return next;
+    }
+
+    /**
+     * get monster object backed by the store, each call makes a new view of the same monster
+     * @param index monster index
+     * @return view
+     */
+    public Monster view(int index) {
+        return new StoredMonster(this, index);
+    }
+
+    /**
+     * monster whose stats live in a store, the fields it inherits are never read
+     */
+    private static final class StoredMonster extends Monster {
+        private final MonsterStore store;
+        private final int index;
+
+        StoredMonster(MonsterStore store, int index) {
+            super(null, 0, 0, 0);
+            this.store = store;
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            return store.getName(index);
+        }
+
+        @Override
+        public int getHealth() {
+            return store.getHealth(index);
+        }
+
+        @Override
+        public void setHealth(int health) {
+            store.setHealth(index, health);
+        }
+
+        @Override
+        public int getMaxHealth() {
+            return store.getMaxHealth(index);
+        }
+
+        @Override
+        public int getStrength() {
+            return store.getStrength(index);
+        }
+
+        @Override
+        public int getCraft() {
+            return store.getCraft(index);
+        }
+
+        @Override
+        public int getTotalStrength() {
+            return getStrength();
+        }
+
+        @Override
+        public int getTotalCraft() {
+            return getCraft();
+        }
+
+        @Override
+        public boolean takeDamage(int damage) {
+            return store.takeDamage(index, damage);
+        }
+
+        @Override
+        public int heal(int amount) {
+            return store.heal(index, amount);
+        }
+
+        @Override
+        public boolean isAlive() {
+            return getHealth() > 0;
+        }
+    }
+}
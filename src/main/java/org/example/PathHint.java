@@ -0,0 +1,304 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * shortest path tree towards the goal chamber that is repaired in place when door costs change
+ * an unguarded door costs one turn, a guarded door costs one turn plus the expected number of fight rounds
+ * for the player, so defeating or wounding a guardian lowers a cost and picking up an item changes the cost
+ * of every guarded door. a lower cost only spreads from the cheaper door to the chambers that get closer,
+ * a higher cost only resets the subtree that hung below the door and fills it in again from its border,
+ * everything else keeps its distance.
+ * listens to the dungeon's events to notice changes, not thread safe, each player needs their own hint.
+ * a hint belongs to the chambers of one level and stops listening once the dungeon changes level
+ */
+class PathHint implements GameListener {
+    /**
+     * cost of a door the player cannot get through, and distance of a chamber that cannot reach the goal
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final ChamberGraph graph;
+    private final Character player;
+    private final Dice dice;
+    private final int goal;
+    private final int[] cost;
+    private final int[] distance;
+    private final int[] parent;
+    private final BitSet guarded = new BitSet();
+    private final Map<Monster, Integer> guardians = new IdentityHashMap<>();
+    private final BitSet affected = new BitSet();
+    // chambers of the subtree being reset, in the order they were found
+    private final int[] subtree;
+    private long[] heap = new long[16];
+    private int heapSize;
+    private int repaired;
+
+    /**
+     * build tree for fights with one six sided die
+     * @param graph chambers and doors
+     * @param goal index of the goal chamber
+     * @param player player whose stats decide the cost of guarded doors
+     */
+    public PathHint(ChamberGraph graph, int goal, Character player) {
+        this(graph, goal, player, Dice.STANDARD);
+    }
+
+    /**
+     * build tree
+     * @param graph chambers and doors
+     * @param goal index of the goal chamber
+     * @param player player whose stats decide the cost of guarded doors
+     * @param dice dice both sides roll in a fight
+     */
+    public PathHint(ChamberGraph graph, int goal, Character player, Dice dice) {
+        this.graph = graph;
+        this.player = player;
+        this.dice = dice;
+        this.goal = goal;
+        cost = new int[graph.edgeCount()];
+        distance = new int[graph.size()];
+        parent = new int[graph.size()];
+        subtree = new int[graph.size()];
+        for (int e = 0; e < cost.length; e++) {
+            cost[e] = doorCost(graph.door(e), player, dice);
+            Monster guardian = graph.door(e).getGuardian();
+            if (guardian != null) {
+                guarded.set(e);
+                guardians.put(guardian, e);
+            }
+        }
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(parent, -1);
+        distance[goal] = 0;
+        push(0, goal);
+        settle();
+    }
+
+    /**
+     * build tree for a layout's player and goal
+     * @param layout layout
+     * @return hint
+     */
+    public static PathHint of(Layout layout) {
+        Dungeon dungeon = layout.getDungeon();
+        ChamberGraph graph = ChamberGraph.of(layout.getChambers());
+        return new PathHint(graph, graph.indexOf(dungeon.getGoalChamber()), dungeon.getPlayer(),
+                dungeon.getFightDice());
+    }
+
+    /**
+     * get door to take next on the cheapest way to the goal
+     * @param from chamber the player is in
+     * @return door, or null if the chamber is the goal or cannot reach it
+     */
+    public Door next(Chamber from) {
+        int chamber = graph.indexOf(from);
+        return chamber < 0 || parent[chamber] < 0 ? null : graph.door(parent[chamber]);
+    }
+
+    /**
+     * get expected turns from a chamber to the goal
+     * @param from chamber
+     * @return turns, or {@link #UNREACHABLE}
+     */
+    public int distance(Chamber from) {
+        int chamber = graph.indexOf(from);
+        return chamber < 0 ? UNREACHABLE : distance[chamber];
+    }
+
+    /**
+     * get number of chambers whose distance was settled by the last change, for checking the repair stays local
+     * @return chambers touched
+     */
+    public int getRepaired() {
+        return repaired;
+    }
+
+    /**
+     * cost a door again and repair the tree if it changed, for changes made without events such as undo
+     * @param door door whose guardian changed
+     */
+    public void refresh(Door door) {
+        for (int e = 0; e < cost.length; e++) {
+            if (graph.door(e) == door) {
+                refreshEdge(e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * cost every guarded door again, call after the player's stats changed
+     */
+    public void refreshGuarded() {
+        for (int e = guarded.nextSetBit(0); e >= 0; e = guarded.nextSetBit(e + 1)) {
+            refreshEdge(e);
+        }
+    }
+
+    @Override
+    public void onEvent(GameEvent event) {
+        if (event instanceof GameEvent.Fought fought) {
+            Integer edge = guardians.get(fought.monster());
+            if (edge != null) {
+                refreshEdge(edge);
+            }
+        } else if (event instanceof GameEvent.Picked picked && picked.claimed()) {
+            refreshGuarded();
+        } else if (event instanceof GameEvent.LevelChanged) {
+            event.dungeon().removeListener(this);
+        }
+    }
+
+    /**
+     * expected turns to get through a door
+     * @param door door
+     * @param player player going through
+     * @param dice dice both sides roll in a fight
+     * @return 1 for an unguarded door, 1 plus expected fight rounds for a guarded one, or {@link #UNREACHABLE}
+     */
+    static int doorCost(Door door, Character player, Dice dice) {
+        Monster guardian = door.getGuardian();
+        if (guardian == null || !guardian.isAlive()) {
+            return 1;
+        }
+        boolean useStrength = guardian.usesStrength();
+        int gap = useStrength ? player.getTotalStrength() - guardian.getStrength()
+                : player.getTotalCraft() - guardian.getCraft();
+        // expected damage dealt in a round, ties and lost rounds deal nothing to the guardian
+        double damage = 0;
+        int span = dice.max() - dice.min();
+        for (int roll = -span; roll <= span; roll++) {
+            damage += dice.difference(roll) * Math.max(0, gap + roll);
+        }
+        if (damage == 0) {
+            return UNREACHABLE;
+        }
+        // rounded up, less a little so that sums of exact fractions do not round one round too high
+        return 1 + (int) Math.ceil(guardian.getHealth() / damage - 1e-9);
+    }
+
+    private void refreshEdge(int edge) {
+        Door door = graph.door(edge);
+        Monster guardian = door.getGuardian();
+        guarded.set(edge, guardian != null);
+        if (guardian != null) {
+            guardians.put(guardian, edge);
+        }
+        int updated = doorCost(door, player, dice);
+        int old = cost[edge];
+        if (updated == old) {
+            return;
+        }
+        cost[edge] = updated;
+        repaired = 0;
+        if (updated < old) {
+            relax(edge, graph.edgeFrom(edge), graph.edgeTo(edge));
+            relax(edge, graph.edgeTo(edge), graph.edgeFrom(edge));
+        } else {
+            int from = graph.edgeFrom(edge);
+            int to = graph.edgeTo(edge);
+            if (parent[from] == edge) {
+                reset(from);
+            } else if (parent[to] == edge) {
+                reset(to);
+            } else {
+                return;
+            }
+        }
+        settle();
+    }
+
+    private void relax(int edge, int from, int to) {
+        if (distance[from] != UNREACHABLE && cost[edge] != UNREACHABLE
+                && distance[from] + cost[edge] < distance[to]) {
+            distance[to] = distance[from] + cost[edge];
+            parent[to] = edge;
+            push(distance[to], to);
+        }
+    }
+
+    // forget the distances of the subtree below a chamber and seed them again from chambers outside it,
+    // all work is in the size of the subtree, not of the graph
+    private void reset(int root) {
+        int size = 0;
+        subtree[size++] = root;
+        affected.set(root);
+        for (int i = 0; i < size; i++) {
+            int chamber = subtree[i];
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                int child = graph.neighbour(p);
+                if (parent[child] == graph.neighbourEdge(p) && !affected.get(child)) {
+                    affected.set(child);
+                    subtree[size++] = child;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            distance[subtree[i]] = UNREACHABLE;
+            parent[subtree[i]] = -1;
+        }
+        for (int i = 0; i < size; i++) {
+            int c = subtree[i];
+            for (int p = graph.firstNeighbour(c); p < graph.endNeighbour(c); p++) {
+                if (!affected.get(graph.neighbour(p))) {
+                    relax(graph.neighbourEdge(p), graph.neighbour(p), c);
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            affected.clear(subtree[i]);
+        }
+    }
+
+    // dijkstra over the queued chambers only, chambers whose distance does not change are never queued
+    private void settle() {
+        while (heapSize > 0) {
+            long top = pop();
+            int chamber = (int) top;
+            if ((int) (top >>> 32) != distance[chamber]) {
+                continue;
+            }
+            repaired++;
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                relax(graph.neighbourEdge(p), chamber, graph.neighbour(p));
+            }
+        }
+    }
+
+    private void push(int key, int chamber) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        long entry = (long) key << 32 | chamber;
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) >> 1] > entry) {
+            heap[i] = heap[(i - 1) >> 1];
+            i = (i - 1) >> 1;
+        }
+        heap[i] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
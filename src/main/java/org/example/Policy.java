@@ -0,0 +1,90 @@
+package org.example;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * strategy that picks an action for a player without asking anyone, used by bots and simulations
+ */
+interface Policy {
+    /**
+     * choose next action
+     * @param dungeon dungeon the player is in
+     * @param actions actions from {@link Dungeon#getActions()}, never empty
+     * @return index of chosen action
+     */
+    int choose(Dungeon dungeon, List<Action> actions);
+}
+
+/**
+ * simple bot: picks up every item, then heads for chambers it has not seen yet,
+ * fighting guardians in the way, and only walks back when there is nowhere new to go
+ * keeps track of visited chambers, so use one instance per game
+ */
+class GreedyPolicy implements Policy {
+    private final Set<Chamber> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Override
+    public int choose(Dungeon dungeon, List<Action> actions) {
+        Chamber current = dungeon.getCurrentChamber();
+        visited.add(current);
+
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i) instanceof Pick) {
+                return i;
+            }
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            Door door = doorOf(actions.get(i));
+            if (door != null && !visited.contains(door.getOtherChamber(current))) {
+                return i;
+            }
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i) instanceof Move) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static Door doorOf(Action action) {
+        if (action instanceof Move move) {
+            return move.getDoor();
+        }
+        if (action instanceof Fight fight) {
+            return fight.getDoor();
+        }
+        return null;
+    }
+}
+
+/**
+ * runs games without a user, the dungeon should have narration turned off
+ */
+final class Simulation {
+    private Simulation() {
+    }
+
+    /**
+     * play a game until it finishes or the turn limit is reached
+     * @param dungeon dungeon to play
+     * @param policy policy that chooses each action
+     * @param maxTurns turn limit so a policy that wanders forever still stops
+     * @return number of turns played
+     */
+    public static int play(Dungeon dungeon, Policy policy, int maxTurns) {
+        int turns = 0;
+        while (!dungeon.isFinished() && turns < maxTurns) {
+            List<Action> actions = dungeon.getActions();
+            if (actions.isEmpty()) {
+                break;
+            }
+            actions.get(policy.choose(dungeon, actions)).execute();
+            turns++;
+        }
+        return turns;
+    }
+}
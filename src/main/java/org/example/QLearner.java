@@ -0,0 +1,365 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * learns which action is worth most in each abstract state by playing many headless games
+ * all workers share one table of floats and update it without locks. two workers writing the same entry at once
+ * lose one of the updates, which learning shrugs off, and a float is always written whole, so a reader never
+ * sees a torn value. rows are packed, since the writes that collide are those of workers in the same hot
+ * states, such as the start, and no padding between rows keeps those apart.
+ * a game is worth +100 plus the health left when won, -100 when lost, and every turn costs 1
+ */
+class QLearner {
+    private static final float WIN = 100;
+    private static final float LOSS = -100;
+    private static final float TURN = -1;
+
+    private final int layoutId;
+    private final StateAbstraction shape;
+    private final int actions;
+    private final float[] values;
+    private float alpha = 0.1f;
+    // a short game needs a steep discount, otherwise walking back and forth in front of a guardian looks almost
+    // as good as fighting it and the exported bot can get stuck doing that
+    private float gamma = 0.8f;
+    private float epsilon = 0.2f;
+    private int maxTurns = 200;
+
+    /**
+     * create learner for a known layout
+     * @param layoutId layout to train on, every episode plays a new copy
+     */
+    public QLearner(int layoutId) {
+        this.layoutId = layoutId;
+        Layout sample = Layout.create(layoutId);
+        this.shape = StateAbstraction.of(sample);
+        this.actions = StateAbstraction.maxActions(sample);
+        if (actions > LearnedPolicy.MAX_ACTIONS) {
+            throw new IllegalArgumentException("Layout has more actions in a chamber than a policy can store: "
+                    + actions);
+        }
+        this.values = new float[Math.multiplyExact(shape.states(), actions)];
+    }
+
+    /**
+     * set learning rate
+     * @param alpha share of each new estimate taken into the table
+     */
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * set discount
+     * @param gamma weight of future value against the reward now
+     */
+    public void setGamma(float gamma) {
+        this.gamma = gamma;
+    }
+
+    /**
+     * set exploration
+     * @param epsilon chance of trying a random action instead of the best known one
+     */
+    public void setEpsilon(float epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * set turn limit of an episode
+     * @param maxTurns turns before an episode is given up
+     */
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * get number of abstract states
+     * @return states in the table
+     */
+    public int getStates() {
+        return shape.states();
+    }
+
+    /**
+     * play episodes and learn from them
+     * @param episodes number of games to play
+     * @param parallelism number of worker threads
+     * @param seed seed for dice and exploration, each worker gets its own split
+     * @return number of games won while training
+     */
+    public int train(int episodes, int parallelism, long seed) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[parallelism];
+        for (int w = 0; w < parallelism; w++) {
+            randoms[w] = root.split();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> IntStream.range(0, parallelism)
+                    .parallel()
+                    .map(w -> {
+                        int share = episodes / parallelism + (w < episodes % parallelism ? 1 : 0);
+                        int won = 0;
+                        for (int e = 0; e < share; e++) {
+                            if (episode(randoms[w])) {
+                                won++;
+                            }
+                        }
+                        return won;
+                    })
+                    .sum()).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * export the greedy policy, the best known action of every state
+     * @return learned policy
+     */
+    public LearnedPolicy export() {
+        byte[] best = new byte[shape.states()];
+        for (int s = 0; s < best.length; s++) {
+            best[s] = (byte) argmax(s, actions);
+        }
+        return new LearnedPolicy(layoutId, actions, best);
+    }
+
+    private boolean episode(SplittableRandom random) {
+        Layout layout = Layout.create(layoutId);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(random);
+        StateAbstraction states = StateAbstraction.of(layout);
+
+        int state = states.encode(dungeon);
+        List<Action> choices = dungeon.getActions();
+        for (int turn = 0; turn < maxTurns && !choices.isEmpty(); turn++) {
+            int count = Math.min(choices.size(), actions);
+            int action = random.nextFloat() < epsilon ? random.nextInt(count) : argmax(state, count);
+            choices.get(action).execute();
+
+            float reward = TURN;
+            float future = 0;
+            int next = states.encode(dungeon);
+            if (dungeon.isFinished()) {
+                reward += dungeon.isWon() ? WIN + dungeon.getPlayer().getHealth() : LOSS;
+                choices = List.of();
+            } else {
+                choices = dungeon.getActions();
+                future = values[next * actions + argmax(next, Math.min(choices.size(), actions))];
+            }
+            int entry = state * actions + action;
+            float old = values[entry];
+            values[entry] = old + alpha * (reward + gamma * future - old);
+            state = next;
+        }
+        return dungeon.isWon();
+    }
+
+    private int argmax(int state, int count) {
+        int base = state * actions;
+        int best = 0;
+        for (int a = 1; a < count; a++) {
+            if (values[base + a] > values[base + best]) {
+                best = a;
+            }
+        }
+        return best;
+    }
+}
+
+/**
+ * what a learner can tell apart: the chamber, a health bucket, which guardians still guard their door and which
+ * of the layout's items are in a hand. guardians and items are numbered in chamber and door order, so every
+ * copy of the same layout gives the same numbers
+ */
+final class StateAbstraction {
+    /**
+     * health buckets, from nearly dead to full health
+     */
+    static final int BUCKETS = 4;
+    private static final int MAX_BITS = 20;
+
+    private final ChamberGraph graph;
+    private final Door[] guarded;
+    private final Item[] items;
+
+    private StateAbstraction(ChamberGraph graph, Door[] guarded, Item[] items) {
+        this.graph = graph;
+        this.guarded = guarded;
+        this.items = items;
+    }
+
+    /**
+     * number the guardians and items of a layout
+     * @param layout layout at its start
+     * @return abstraction for that layout copy
+     */
+    static StateAbstraction of(Layout layout) {
+        ChamberGraph graph = ChamberGraph.of(layout.getChambers());
+        List<Door> guarded = new ArrayList<>();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (graph.door(e).getGuardian() != null) {
+                guarded.add(graph.door(e));
+            }
+        }
+        List<Item> items = new ArrayList<>();
+        for (Chamber chamber : layout.getChambers()) {
+            items.addAll(chamber.getItems());
+        }
+        if (guarded.size() + items.size() > MAX_BITS) {
+            throw new IllegalArgumentException("Layout has too many guardians and items to learn: "
+                    + (guarded.size() + items.size()));
+        }
+        return new StateAbstraction(graph, guarded.toArray(new Door[0]), items.toArray(new Item[0]));
+    }
+
+    /**
+     * most actions any chamber of a layout offers at its start, guarded or not every door gives one action
+     * @param layout layout at its start
+     * @return largest action count
+     */
+    static int maxActions(Layout layout) {
+        int most = 1;
+        for (Chamber chamber : layout.getChambers()) {
+            most = Math.max(most, chamber.getDoors().size() + chamber.getItems().size());
+        }
+        return most;
+    }
+
+    /**
+     * get number of states
+     * @return states
+     */
+    int states() {
+        int base = Math.multiplyExact(graph.size(), BUCKETS);
+        int bits = guarded.length + items.length;
+        if (base > Integer.MAX_VALUE >> bits) {
+            throw new IllegalArgumentException("Layout has too many states to learn");
+        }
+        return base << bits;
+    }
+
+    /**
+     * abstract the dungeon's current state
+     * @param dungeon dungeon of the layout this abstraction was made from
+     * @return state number
+     */
+    int encode(Dungeon dungeon) {
+        Character player = dungeon.getPlayer();
+        int bucket = Math.min(BUCKETS - 1, Math.max(0, player.getHealth()) * BUCKETS / (player.getMaxHealth() + 1));
+        int state = graph.indexOf(dungeon.getCurrentChamber()) * BUCKETS + bucket;
+        for (Door door : guarded) {
+            state = state << 1 | (door.getGuardian() != null ? 1 : 0);
+        }
+        for (Item item : items) {
+            state = state << 1 | (player.getLeftHand() == item || player.getRightHand() == item ? 1 : 0);
+        }
+        return state;
+    }
+}
+
+/**
+ * bot that plays the best action a learner found for each state, a table lookup per turn
+ */
+final class LearnedPolicy {
+    /**
+     * most actions per state, every best action is stored in a byte
+     */
+    static final int MAX_ACTIONS = Byte.MAX_VALUE;
+    // moves out of the same state a bot makes before it stops trusting the table there
+    private static final int REPEATS = 2;
+
+    private final int layoutId;
+    private final int actions;
+    private final byte[] best;
+
+    /**
+     * create policy
+     * @param layoutId layout it was trained on
+     * @param actions most actions per state
+     * @param best best action of every state
+     */
+    LearnedPolicy(int layoutId, int actions, byte[] best) {
+        this.layoutId = layoutId;
+        this.actions = actions;
+        this.best = best;
+    }
+
+    /**
+     * get layout the policy was trained on
+     * @return layout id
+     */
+    public int getLayoutId() {
+        return layoutId;
+    }
+
+    /**
+     * get a bot for one game, it needs the game's layout copy to tell guardians and items apart
+     * the bot counts the moves it makes out of each state. when the table would move it out of the same state
+     * a third time, it is walking in a circle, so it takes the next action instead, one further on every time
+     * @param layout copy of the layout the policy was trained on, at its start
+     * @return bot
+     */
+    public Policy bot(Layout layout) {
+        if (layout.getId() != layoutId) {
+            throw new IllegalArgumentException("Policy was trained on layout " + layoutId + ", not " + layout.getId());
+        }
+        StateAbstraction states = StateAbstraction.of(layout);
+        LongIntMap moves = new LongIntMap(64);
+        return (dungeon, choices) -> {
+            int state = states.encode(dungeon);
+            int choice = Math.min(best[state], choices.size() - 1);
+            if (choices.get(choice) instanceof Move) {
+                int before = moves.get(state) + 1;
+                moves.put(state, before);
+                if (before >= REPEATS) {
+                    choice = (choice + before - REPEATS + 1) % choices.size();
+                }
+            }
+            return choice;
+        };
+    }
+
+    /**
+     * write policy
+     * @param out writer to append to
+     */
+    public void encode(VarintWriter out) {
+        out.writeInt(layoutId);
+        out.writeInt(actions);
+        out.writeInt(best.length);
+        for (byte action : best) {
+            out.writeByte(action);
+        }
+    }
+
+    /**
+     * read policy
+     * @param in reader positioned at an encoded policy
+     * @return policy
+     */
+    public static LearnedPolicy decode(VarintReader in) {
+        int layoutId = in.readInt();
+        int actions = in.readInt();
+        if (actions < 1 || actions > MAX_ACTIONS) {
+            throw new IllegalArgumentException("Unexpected number of actions: " + actions);
+        }
+        byte[] best = new byte[in.readCount()];
+        for (int s = 0; s < best.length; s++) {
+            int action = in.readByte();
+            if (action >= actions) {
+                throw new IllegalArgumentException("Unexpected action: " + action);
+            }
+            best[s] = (byte) action;
+        }
+        return new LearnedPolicy(layoutId, actions, best);
+    }
+}
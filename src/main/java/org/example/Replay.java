@@ -0,0 +1,256 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * recorded game: layout id, dice seed, the index chosen from {@link Dungeon#getActions()} every turn,
+ * and the final state the game ended in
+ * encoded as varints, so a turn usually costs a single byte
+ */
+class Replay {
+    static final int VERSION = 1;
+
+    private final int layoutId;
+    private final long seed;
+    private final int[] choices;
+    private final FinalState finalState;
+
+    /**
+     * create replay
+     * @param layoutId id passed to {@link Layout#create(int)}
+     * @param seed dice seed
+     * @param choices chosen action index for each turn
+     * @param finalState state the game ended in
+     */
+    public Replay(int layoutId, long seed, int[] choices, FinalState finalState) {
+        this.layoutId = layoutId;
+        this.seed = seed;
+        this.choices = choices;
+        this.finalState = finalState;
+    }
+
+    /**
+     * get layout id
+     * @return layout id
+     */
+    public int getLayoutId() {
+        return layoutId;
+    }
+
+    /**
+     * get dice seed
+     * @return seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * get chosen action indexes
+     * @return one index per turn
+     */
+    public int[] getChoices() {
+        return choices;
+    }
+
+    /**
+     * get recorded final state
+     * @return final state
+     */
+    public FinalState getFinalState() {
+        return finalState;
+    }
+
+    /**
+     * encode replay
+     * @param out writer to append to
+     */
+    public void encode(VarintWriter out) {
+        out.writeByte(VERSION);
+        out.writeInt(layoutId);
+        out.writeSignedLong(seed);
+        out.writeInt(choices.length);
+        for (int choice : choices) {
+            out.writeInt(choice);
+        }
+        out.writeInt(finalState.outcome());
+        out.writeInt(finalState.health());
+        out.writeInt(finalState.chamber());
+    }
+
+    /**
+     * encode replay into a new array
+     * @return encoded bytes
+     */
+    public byte[] encode() {
+        VarintWriter out = new VarintWriter(16 + choices.length);
+        encode(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * decode replay
+     * @param data encoded bytes
+     * @return replay
+     */
+    public static Replay decode(byte[] data) {
+        VarintReader in = new VarintReader(data);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported replay version: " + version);
+        }
+        int layoutId = in.readInt();
+        long seed = in.readSignedLong();
+        int[] choices = new int[in.readCount()];
+        for (int i = 0; i < choices.length; i++) {
+            choices[i] = in.readInt();
+        }
+        return new Replay(layoutId, seed, choices, new FinalState(in.readInt(), in.readInt(), in.readInt()));
+    }
+
+    /**
+     * build the dungeon a replay starts from, headless and with seeded dice
+     * @param layoutId layout id
+     * @param seed dice seed
+     * @return new layout ready to play
+     */
+    static Layout start(int layoutId, long seed) {
+        Layout layout = Layout.create(layoutId);
+        layout.getDungeon().setDice(new SplittableRandom(seed));
+        return layout;
+    }
+
+    /**
+     * how a game ended
+     * @param outcome one of {@link #PLAYING}, {@link #WON}, {@link #LOST}
+     * @param health player health left
+     * @param chamber index of the chamber the player is in
+     */
+    record FinalState(int outcome, int health, int chamber) {
+        static final int PLAYING = 0;
+        static final int WON = 1;
+        static final int LOST = 2;
+
+        /**
+         * read final state of a layout
+         * @param layout layout that was played
+         * @return final state
+         */
+        static FinalState of(Layout layout) {
+            Dungeon dungeon = layout.getDungeon();
+            int outcome = dungeon.isWon() ? WON : !dungeon.getPlayer().isAlive() ? LOST : PLAYING;
+            return new FinalState(outcome, dungeon.getPlayer().getHealth(), layout.indexOf(dungeon.getCurrentChamber()));
+        }
+    }
+}
+
+/**
+ * records the choices made during a game
+ * the dungeon has to use dice seeded with the same seed, see {@link Replay#start(int, long)}
+ */
+class ReplayRecorder {
+    private final int layoutId;
+    private final long seed;
+    private int[] choices = new int[32];
+    private int turns;
+
+    /**
+     * create recorder
+     * @param layoutId id of layout being played
+     * @param seed seed of the dice
+     */
+    public ReplayRecorder(int layoutId, long seed) {
+        this.layoutId = layoutId;
+        this.seed = seed;
+    }
+
+    /**
+     * record the index of the action chosen this turn
+     * @param choice index into {@link Dungeon#getActions()}
+     */
+    public void record(int choice) {
+        if (turns == choices.length) {
+            choices = Arrays.copyOf(choices, turns * 2);
+        }
+        choices[turns++] = choice;
+    }
+
+    /**
+     * finish recording
+     * @param layout layout that was played
+     * @return replay with the final state of the layout
+     */
+    public Replay finish(Layout layout) {
+        return new Replay(layoutId, seed, Arrays.copyOf(choices, turns), Replay.FinalState.of(layout));
+    }
+}
+
+/**
+ * replays recorded games without any narration and checks they end in the recorded state
+ */
+final class ReplayVerifier {
+    private ReplayVerifier() {
+    }
+
+    /**
+     * replay a game and compare its final state
+     * @param replay replay to check
+     * @return true if the replay is valid and ends in the recorded state
+     */
+    public static boolean verify(Replay replay) {
+        Layout layout;
+        try {
+            layout = Replay.start(replay.getLayoutId(), replay.getSeed());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        for (int choice : replay.getChoices()) {
+            if (dungeon.isFinished()) {
+                return false;
+            }
+            List<Action> actions = dungeon.getActions();
+            if (choice < 0 || choice >= actions.size()) {
+                return false;
+            }
+            actions.get(choice).execute();
+        }
+        return replay.getFinalState().equals(Replay.FinalState.of(layout));
+    }
+
+    /**
+     * check encoded replay, corrupt data counts as invalid
+     * @param data encoded replay
+     * @return true if valid
+     */
+    public static boolean verify(byte[] data) {
+        try {
+            return verify(Replay.decode(data));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * check many encoded replays in parallel
+     * @param replays encoded replays
+     * @param parallelism number of worker threads
+     * @return indexes of replays that failed, in ascending order
+     */
+    public static int[] verifyAll(List<byte[]> replays, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> IntStream.range(0, replays.size())
+                    .parallel()
+                    .filter(i -> !verify(replays.get(i)))
+                    .toArray()).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * plans the order of item pickups and guardian fights on the way to the goal
+ * every item and every guarded door is a key point. walking between key points over open doors is
+ * precomputed once, then a held-karp table over subsets of key points keeps, for each set of done key points
+ * and the one done last, the way to get there most likely to be survived. subsets of the same size do not
+ * depend on each other, so each size is filled in parallel.
+ * the damage of a fight does not depend on the player's health, so the damage of a plan is a sum of
+ * independent fight damages and the player survives while the sum stays below their health. the table keeps
+ * the mean and variance of the sum and ranks ways by how many standard deviations the mean lies below the
+ * health, a lower mean and then fewer turns break ties. a low mean alone is not enough, a sure hit of two can
+ * be safer than a fight that usually costs nothing but sometimes costs everything. the few best ways to the
+ * goal are then replayed with the exact health distribution, and the one most likely to win is the plan.
+ * only two items can be held, so a plan picks at most as many items as the player has free hands, and a door
+ * that was fought is not walked back through. fights are worked out for the dungeon's fight dice, loot that
+ * guardians drop on the way is not planned for.
+ * the table has 2^keys rows, so at most {@link #MAX_KEYS} key points are allowed
+ */
+class RoutePlanner {
+    /**
+     * most key points a dungeon may have
+     */
+    public static final int MAX_KEYS = 20;
+    // ways to the goal replayed exactly at the end
+    private static final int FINALISTS = 8;
+    private static final float TURN_WEIGHT = 1e-3f;
+    private static final float NONE = Float.POSITIVE_INFINITY;
+
+    private final ChamberGraph graph;
+    private final Character player;
+    private final Dice dice;
+    private final int start;
+    private final int goal;
+    private final int keys;
+    private final Item[] items;
+    private final Chamber[] itemChambers;
+    private final int[] doors;
+    private final int itemKeys;
+    // a slot is one way to finish a key point: items have one, doors two, one for each side they are left by
+    private final int slots;
+    private final int[] slotKey;
+    private final int[] slotEntry;
+    private final int[] slotExit;
+    private final int[][] walk;
+
+    /**
+     * collect key points and walking distances for fights with one six sided die
+     * @param graph chambers and doors
+     * @param start index of the chamber the player is in
+     * @param goal index of the goal chamber
+     * @param player player whose health, stats and free hands are planned for
+     */
+    public RoutePlanner(ChamberGraph graph, int start, int goal, Character player) {
+        this(graph, start, goal, player, Dice.STANDARD);
+    }
+
+    /**
+     * collect key points and walking distances
+     * @param graph chambers and doors
+     * @param start index of the chamber the player is in
+     * @param goal index of the goal chamber
+     * @param player player whose health, stats and free hands are planned for
+     * @param dice dice both sides roll in a fight
+     */
+    public RoutePlanner(ChamberGraph graph, int start, int goal, Character player, Dice dice) {
+        this.graph = graph;
+        this.player = player;
+        this.dice = dice;
+        this.start = start;
+        this.goal = goal;
+
+        List<Item> foundItems = new ArrayList<>();
+        List<Chamber> foundChambers = new ArrayList<>();
+        for (int c = 0; c < graph.size(); c++) {
+            for (Item item : graph.chamber(c).getItems()) {
+                foundItems.add(item);
+                foundChambers.add(graph.chamber(c));
+            }
+        }
+        List<Integer> foundDoors = new ArrayList<>();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (graph.door(e).getGuardian() != null) {
+                foundDoors.add(e);
+            }
+        }
+        itemKeys = foundItems.size();
+        keys = itemKeys + foundDoors.size();
+        if (keys > MAX_KEYS) {
+            throw new IllegalArgumentException("Too many key points: " + keys + ", at most " + MAX_KEYS);
+        }
+        items = foundItems.toArray(new Item[0]);
+        itemChambers = foundChambers.toArray(new Chamber[0]);
+        doors = foundDoors.stream().mapToInt(Integer::intValue).toArray();
+
+        slots = itemKeys + 2 * doors.length;
+        slotKey = new int[slots];
+        slotEntry = new int[slots];
+        slotExit = new int[slots];
+        for (int i = 0; i < itemKeys; i++) {
+            slotKey[i] = i;
+            slotEntry[i] = graph.indexOf(itemChambers[i]);
+            slotExit[i] = slotEntry[i];
+        }
+        for (int d = 0; d < doors.length; d++) {
+            int s = itemKeys + 2 * d;
+            slotKey[s] = itemKeys + d;
+            slotEntry[s] = graph.edgeFrom(doors[d]);
+            slotExit[s] = graph.edgeTo(doors[d]);
+            slotKey[s + 1] = itemKeys + d;
+            slotEntry[s + 1] = graph.edgeTo(doors[d]);
+            slotExit[s + 1] = graph.edgeFrom(doors[d]);
+        }
+
+        // walking distances from where each slot ends, the last row is from the start
+        walk = new int[slots + 1][];
+        for (int s = 0; s < slots; s++) {
+            walk[s] = walkFrom(slotExit[s]);
+        }
+        walk[slots] = walkFrom(start);
+    }
+
+    /**
+     * create planner for a layout's player from where they are now
+     * @param layout layout
+     * @return planner
+     */
+    public static RoutePlanner of(Layout layout) {
+        Dungeon dungeon = layout.getDungeon();
+        ChamberGraph graph = ChamberGraph.of(layout.getChambers());
+        return new RoutePlanner(graph, graph.indexOf(dungeon.getCurrentChamber()),
+                graph.indexOf(dungeon.getGoalChamber()), dungeon.getPlayer(), dungeon.getFightDice());
+    }
+
+    /**
+     * get number of key points
+     * @return items plus guarded doors
+     */
+    public int getKeys() {
+        return keys;
+    }
+
+    /**
+     * find the plan most likely to reach the goal alive
+     * @return best plan, or null if the goal cannot be reached
+     */
+    public Plan plan() {
+        int stride = slots + 1;
+        int masks = 1 << keys;
+        int itemMask = (1 << itemKeys) - 1;
+        int hands = (player.getLeftHand() == null ? 1 : 0) + (player.getRightHand() == null ? 1 : 0);
+        float[] cost = new float[masks * stride];
+        float[] variance = new float[masks * stride];
+        byte[] previous = new byte[masks * stride];
+        Arrays.fill(cost, NONE);
+        cost[slots] = 0;
+
+        for (int size = 1; size <= keys; size++) {
+            int level = size;
+            IntStream.range(1, masks).parallel()
+                    .filter(mask -> Integer.bitCount(mask) == level && Integer.bitCount(mask & itemMask) <= hands)
+                    .forEach(mask -> fill(mask, cost, variance, previous));
+        }
+
+        // the best ways to the goal by the table's ranking, best first
+        float[] finalistCost = new float[FINALISTS];
+        float[] finalistVariance = new float[FINALISTS];
+        int[] finalists = new int[FINALISTS];
+        int count = 0;
+        for (int mask = 0; mask < masks; mask++) {
+            for (int s = 0; s <= slots; s++) {
+                float here = cost[mask * stride + s];
+                int toGoal = walk[s][goal];
+                if (here == NONE || toGoal < 0) {
+                    continue;
+                }
+                float total = here + toGoal * TURN_WEIGHT;
+                float spread = variance[mask * stride + s];
+                int last = FINALISTS - 1;
+                if (count == FINALISTS && !better(total, spread, finalistCost[last], finalistVariance[last])) {
+                    continue;
+                }
+                int i = Math.min(count, last);
+                for (; i > 0 && better(total, spread, finalistCost[i - 1], finalistVariance[i - 1]); i--) {
+                    finalistCost[i] = finalistCost[i - 1];
+                    finalistVariance[i] = finalistVariance[i - 1];
+                    finalists[i] = finalists[i - 1];
+                }
+                finalistCost[i] = total;
+                finalistVariance[i] = spread;
+                finalists[i] = mask * stride + s;
+                count = Math.min(count + 1, FINALISTS);
+            }
+        }
+
+        Plan best = null;
+        for (int f = 0; f < count; f++) {
+            int mask = finalists[f] / stride;
+            int[] order = new int[Integer.bitCount(mask)];
+            for (int s = finalists[f] % stride, i = order.length - 1; i >= 0; i--) {
+                order[i] = s;
+                int before = previous[mask * stride + s];
+                mask ^= 1 << slotKey[s];
+                s = before;
+            }
+            Plan plan = replay(order);
+            if (best == null || plan.winProbability() > best.winProbability()
+                    || plan.winProbability() == best.winProbability() && plan.expectedTurns() < best.expectedTurns()) {
+                best = plan;
+            }
+        }
+        return best;
+    }
+
+    // true if a damage sum with this mean and variance is more likely to be survived than the best so far
+    private boolean better(float cost, float variance, float bestCost, float bestVariance) {
+        if (bestCost == NONE) {
+            return cost != NONE;
+        }
+        double margin = score(cost, variance);
+        double bestMargin = score(bestCost, bestVariance);
+        return margin > bestMargin || margin == bestMargin && cost < bestCost;
+    }
+
+    // standard deviations the mean lies below the damage that kills, half a point under the health since damage
+    // comes in whole points, a sure sum is infinitely far on one side
+    private double score(float cost, float variance) {
+        double margin = player.getHealth() - 0.5 - cost;
+        if (variance <= 0) {
+            return margin > 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        return margin / Math.sqrt(variance);
+    }
+
+    // pull every slot of a mask from the masks with one key point less
+    private void fill(int mask, float[] cost, float[] variance, byte[] previous) {
+        int stride = slots + 1;
+        for (int s = 0; s < slots; s++) {
+            int key = slotKey[s];
+            if ((mask & (1 << key)) == 0) {
+                continue;
+            }
+            int before = mask ^ (1 << key);
+            double[] step = stepCost(before, key);
+            if (step == null) {
+                continue;
+            }
+            float best = NONE;
+            float bestVariance = 0;
+            int from = -1;
+            for (int p = 0; p <= slots; p++) {
+                float here = cost[before * stride + p];
+                int distance = walk[p][slotEntry[s]];
+                if (here == NONE || distance < 0) {
+                    continue;
+                }
+                float total = here + distance * TURN_WEIGHT + (float) step[0];
+                float spread = variance[before * stride + p] + (float) step[1];
+                if (better(total, spread, best, bestVariance)) {
+                    best = total;
+                    bestVariance = spread;
+                    from = p;
+                }
+            }
+            cost[mask * stride + s] = best;
+            variance[mask * stride + s] = bestVariance;
+            previous[mask * stride + s] = (byte) from;
+        }
+    }
+
+    // mean and variance of the damage of doing a key point with the items of a mask in hand, the mean has the
+    // expected turns added as tie breaker, or null if the guardian cannot be beaten
+    private double[] stepCost(int mask, int key) {
+        if (key < itemKeys) {
+            return new double[]{TURN_WEIGHT, 0};
+        }
+        Monster guardian = graph.door(doors[key - itemKeys]).getGuardian();
+        int gap = gap(mask, guardian);
+        double[] moments = damageMoments(gap, guardian.getHealth(), dice);
+        if (moments == null) {
+            return null;
+        }
+        moments[0] += fightExpectation(gap, guardian.getHealth(), dice)[1] * TURN_WEIGHT;
+        return moments;
+    }
+
+    private int gap(int mask, Monster guardian) {
+        boolean useStrength = guardian.usesStrength();
+        int stat = useStrength ? player.getTotalStrength() : player.getTotalCraft();
+        for (int i = 0; i < itemKeys; i++) {
+            if ((mask & (1 << i)) != 0) {
+                stat += useStrength ? items[i].getStrength() : items[i].getCraft();
+            }
+        }
+        return stat - (useStrength ? guardian.getStrength() : guardian.getCraft());
+    }
+
+    // walk through the chosen slots again to sum turns and damage and to get the exact chance to survive
+    private Plan replay(int[] order) {
+        List<Step> steps = new ArrayList<>();
+        double damage = 0;
+        double turns = 0;
+        double[] health = new double[player.getMaxHealth() + 1];
+        health[player.getHealth()] = 1;
+        int mask = 0;
+        int at = slots;
+        for (int s : order) {
+            int key = slotKey[s];
+            turns += walk[at][slotEntry[s]];
+            if (key < itemKeys) {
+                steps.add(new Step(itemChambers[key], items[key], null));
+                turns++;
+            } else {
+                Door door = graph.door(doors[key - itemKeys]);
+                Monster guardian = door.getGuardian();
+                int gap = gap(mask, guardian);
+                double[] expected = fightExpectation(gap, guardian.getHealth(), dice);
+                damage += expected[0];
+                turns += expected[1];
+                health = survive(health, gap, guardian.getHealth(), dice);
+                steps.add(new Step(graph.chamber(slotEntry[s]), null, door));
+            }
+            mask |= 1 << key;
+            at = s;
+        }
+        turns += walk[at][goal];
+        double win = 0;
+        for (int h = 1; h < health.length; h++) {
+            win += health[h];
+        }
+        return new Plan(List.copyOf(steps), damage, turns, win);
+    }
+
+    private int[] walkFrom(int from) {
+        int[] distance = new int[graph.size()];
+        Arrays.fill(distance, -1);
+        distance[from] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int chamber = queue.poll();
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                int next = graph.neighbour(p);
+                if (distance[next] < 0 && graph.door(graph.neighbourEdge(p)).getGuardian() == null) {
+                    distance[next] = distance[chamber] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * expected damage taken and rounds needed to defeat a guardian
+     * @param gap player's stat minus the guardian's stat
+     * @param health guardian's health
+     * @param dice dice both sides roll
+     * @return damage taken and rounds, or null if the player can never hit the guardian
+     */
+    static double[] fightExpectation(int gap, int health, Dice dice) {
+        double dealt = 0;
+        double taken = 0;
+        int span = dice.max() - dice.min();
+        for (int roll = -span; roll <= span; roll++) {
+            int difference = gap + roll;
+            dealt += dice.difference(roll) * Math.max(0, difference);
+            taken += dice.difference(roll) * Math.max(0, -difference);
+        }
+        if (dealt == 0) {
+            return null;
+        }
+        double rounds = health / dealt;
+        return new double[]{rounds * taken, rounds};
+    }
+
+    /**
+     * exact mean and variance of the damage taken in a fight that goes on until the guardian is defeated
+     * a round either hurts the guardian or leaves its health as it is, so both are worked out for every health
+     * the guardian can have left, from low to high
+     * @param gap player's stat minus the guardian's stat
+     * @param health guardian's health
+     * @param dice dice both sides roll
+     * @return mean and variance of the damage taken, or null if the player can never hit the guardian
+     */
+    static double[] damageMoments(int gap, int health, Dice dice) {
+        int span = dice.max() - dice.min();
+        // chance of a round that does not hurt the guardian, and the first two moments of what it costs
+        double stay = 0;
+        double taken = 0;
+        double takenSquared = 0;
+        for (int roll = -span; roll <= span; roll++) {
+            int difference = gap + roll;
+            if (difference <= 0) {
+                stay += dice.difference(roll);
+                taken += dice.difference(roll) * -difference;
+                takenSquared += dice.difference(roll) * difference * difference;
+            }
+        }
+        if (stay >= 1) {
+            return null;
+        }
+        // mean[g] and square[g] are the first two moments of the damage still to come with g health left
+        double[] mean = new double[health + 1];
+        double[] square = new double[health + 1];
+        for (int g = 1; g <= health; g++) {
+            double m = taken;
+            double q = takenSquared;
+            for (int roll = -span; roll <= span; roll++) {
+                int difference = gap + roll;
+                if (difference > 0) {
+                    int left = Math.max(0, g - difference);
+                    m += dice.difference(roll) * mean[left];
+                    q += dice.difference(roll) * square[left];
+                }
+            }
+            mean[g] = m / (1 - stay);
+            // the cross term of a round that hurts the player and the rest of the fight from the same health
+            square[g] = (q + 2 * taken * mean[g]) / (1 - stay);
+        }
+        return new double[]{mean[health], Math.max(0, square[health] - mean[health] * mean[health])};
+    }
+
+    /**
+     * push the player's health distribution through a fight to the end
+     * every round that is not a tie lowers the sum of both healths, so states are finished in falling sum order
+     * @param health chance of each player health before the fight
+     * @param gap player's stat minus the guardian's stat
+     * @param guardianHealth guardian's health
+     * @param dice dice both sides roll
+     * @return chance of each player health after winning, losing chances are dropped
+     */
+    static double[] survive(double[] health, int gap, int guardianHealth, Dice dice) {
+        int top = health.length - 1;
+        double[] after = new double[health.length];
+        // ways[k] is the chance of the player rolling k - span more than the guardian
+        int span = dice.max() - dice.min();
+        double[] ways = new double[2 * span + 1];
+        double decisive = 0;
+        for (int k = 0; k < ways.length; k++) {
+            ways[k] = dice.difference(k - span);
+            if (gap + k - span != 0) {
+                decisive += ways[k];
+            }
+        }
+        if (decisive == 0) {
+            return after;
+        }
+        double[][] mass = new double[top + 1][guardianHealth + 1];
+        for (int h = 1; h <= top; h++) {
+            mass[h][guardianHealth] = health[h];
+        }
+        for (int sum = top + guardianHealth; sum >= 2; sum--) {
+            for (int h = Math.max(1, sum - guardianHealth); h <= Math.min(top, sum - 1); h++) {
+                int g = sum - h;
+                double here = mass[h][g];
+                if (here == 0) {
+                    continue;
+                }
+                for (int k = 0; k < ways.length; k++) {
+                    int difference = gap + k - span;
+                    if (difference == 0) {
+                        continue;
+                    }
+                    double chance = here * ways[k] / decisive;
+                    if (difference > 0) {
+                        if (g - difference <= 0) {
+                            after[h] += chance;
+                        } else {
+                            mass[h][g - difference] += chance;
+                        }
+                    } else if (h + difference > 0) {
+                        mass[h + difference][g] += chance;
+                    }
+                }
+            }
+        }
+        return after;
+    }
+
+    /**
+     * one thing to do on the way: pick up an item or fight through a door
+     * @param chamber chamber the step is taken in
+     * @param item item to pick up, or null
+     * @param door door to fight through, or null
+     */
+    record Step(Chamber chamber, Item item, Door door) {
+    }
+
+    /**
+     * chosen order of key points
+     * @param steps pickups and fights in order, walking in between is left out
+     * @param expectedDamage damage the player expects to take
+     * @param expectedTurns turns the player expects to need, including walking to the goal
+     * @param winProbability chance the player survives every fight of the plan
+     */
+    record Plan(List<Step> steps, double expectedDamage, double expectedTurns, double winProbability) {
+    }
+}
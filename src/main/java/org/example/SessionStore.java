@@ -0,0 +1,501 @@
+package org.example;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+/**
+ * keeps game sessions and moves the idle ones off the heap
+ * a session that has not been used for the idle time is encoded into a native memory segment and its
+ * chambers, doors, monsters and items become garbage. the next use decodes it again, so the heap holds
+ * only the object graphs of sessions in active use.
+ * dice, narration flag and listeners stay on the heap and are put back on the rehydrated dungeon.
+ * sessions that have world timers must not be parked, the timers would keep pointing at the old objects
+ */
+class SessionStore {
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final long idleNanos;
+
+    /**
+     * create store
+     * @param idleNanos nanoseconds without use before a session may be parked
+     */
+    public SessionStore(long idleNanos) {
+        this.idleNanos = idleNanos;
+    }
+
+    /**
+     * add session
+     * @param id session id
+     * @param layout session's layout
+     */
+    public void add(long id, Layout layout) {
+        entries.put(id, new Entry(layout));
+    }
+
+    /**
+     * remove session and free its native memory
+     * @param id session id
+     * @return true if the session existed
+     */
+    public boolean remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        entry.lock.lock();
+        try {
+            entry.free();
+        } finally {
+            entry.lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * check if session exists
+     * @param id session id
+     * @return true if it exists, parked or not
+     */
+    public boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * run code on a session, rehydrating it first if it is parked
+     * the session cannot be parked or used by anyone else while the code runs
+     * @param id session id
+     * @param use code to run
+     * @param <T> result type
+     * @return result of the code, or null if there is no such session
+     */
+    public <T> T withSession(long id, Function<Layout, T> use) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        entry.lock.lock();
+        try {
+            entry.lastUsed = System.nanoTime();
+            return use.apply(entry.live());
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * park every session idle for longer than the idle time, sessions in use are skipped
+     * @return number of sessions parked
+     */
+    public int parkIdle() {
+        long now = System.nanoTime();
+        int parked = 0;
+        for (Entry entry : entries.values()) {
+            if (now - entry.lastUsed >= idleNanos && entry.lock.tryLock()) {
+                try {
+                    if (entry.park()) {
+                        parked++;
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        }
+        return parked;
+    }
+
+    /**
+     * check if a session is parked off the heap
+     * @param id session id
+     * @return true if parked
+     */
+    public boolean isParked(long id) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.parked != null;
+    }
+
+    /**
+     * get bytes of native memory held by parked sessions
+     * @return native bytes in use
+     */
+    public long parkedBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            MemorySegment segment = entry.parked;
+            if (segment != null) {
+                bytes += segment.byteSize();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * one session, either live on the heap or parked in a native segment
+     */
+    private static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long lastUsed = System.nanoTime();
+        private Layout layout;
+        private volatile MemorySegment parked;
+        private Arena arena;
+        private RandomGenerator dice;
+        private boolean narrated;
+        private List<GameListener> listeners;
+
+        Entry(Layout layout) {
+            this.layout = layout;
+        }
+
+        Layout live() {
+            if (layout == null) {
+                byte[] data = parked.toArray(ValueLayout.JAVA_BYTE);
+                layout = SessionCodec.decode(new VarintReader(data));
+                Dungeon dungeon = layout.getDungeon();
+                dungeon.setDice(dice);
+                dungeon.setNarrated(narrated);
+                for (GameListener listener : listeners) {
+                    dungeon.addListener(listener);
+                }
+                free();
+            }
+            return layout;
+        }
+
+        boolean park() {
+            if (layout == null) {
+                return false;
+            }
+            VarintWriter out = new VarintWriter(256);
+            SessionCodec.encode(layout, out);
+            arena = Arena.ofShared();
+            MemorySegment segment = arena.allocate(out.size());
+            MemorySegment.copy(out.buffer(), 0, segment, ValueLayout.JAVA_BYTE, 0, out.size());
+            Dungeon dungeon = layout.getDungeon();
+            dice = dungeon.getDice();
+            narrated = dungeon.isNarrated();
+            listeners = dungeon.getListeners();
+            parked = segment;
+            layout = null;
+            return true;
+        }
+
+        void free() {
+            if (arena != null) {
+                parked = null;
+                arena.close();
+                arena = null;
+                dice = null;
+                listeners = null;
+            }
+        }
+    }
+}
+
+/**
+ * compact binary form of a session. a session of a shared {@link DungeonTemplate} is written as the template id,
+ * the player and what the session changed, and is opened from the template again when decoded. any other layout
+ * is written whole: player, chambers with their items, doors with their guardians, and where the player is.
+ * the fight dice follow either way, and guardians written whole keep their loot tables while a template's come
+ * from the template. door and item order is kept too, so action indexes stay the same after decoding
+ */
+final class SessionCodec {
+    private static final int WHOLE = 0;
+    private static final int TEMPLATE = 1;
+    private static final int WIZARD = 0;
+    private static final int WARRIOR = 1;
+    private static final int ADVENTURER = 2;
+    private static final int AXE = 0;
+    private static final int SHIELD = 1;
+    private static final int TRINKET = 2;
+
+    private SessionCodec() {
+    }
+
+    /**
+     * encode layout
+     * @param layout layout to encode
+     * @param out writer to append to
+     */
+    public static void encode(Layout layout, VarintWriter out) {
+        Dungeon dungeon = layout.getDungeon();
+        DungeonTemplate template = DungeonTemplate.templateOf(layout);
+        if (template != null && template.isShared()) {
+            out.writeByte(TEMPLATE);
+            out.writeInt(template.getId());
+            encodePlayer(dungeon.getPlayer(), out);
+            template.encodeSession(layout, out);
+            encodeDice(dungeon.getFightDice(), out);
+            return;
+        }
+        ChamberGraph graph = ChamberGraph.of(layout.getChambers());
+        out.writeByte(WHOLE);
+        out.writeInt(layout.getId());
+        encodePlayer(dungeon.getPlayer(), out);
+
+        out.writeInt(graph.size());
+        for (int c = 0; c < graph.size(); c++) {
+            List<Item> items = graph.chamber(c).getItems();
+            out.writeInt(items.size());
+            for (Item item : items) {
+                encodeItem(item, out);
+            }
+        }
+        out.writeInt(graph.edgeCount());
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            out.writeInt(graph.edgeFrom(e));
+            out.writeInt(graph.edgeTo(e));
+            Monster guardian = graph.door(e).getGuardian();
+            out.writeByte(guardian == null ? 0 : 1);
+            if (guardian != null) {
+                out.writeString(guardian.getName());
+                out.writeInt(guardian.getStrength());
+                out.writeInt(guardian.getCraft());
+                out.writeInt(guardian.getMaxHealth());
+                out.writeInt(guardian.getHealth());
+                encodeLoot(guardian.getLoot(), out);
+            }
+        }
+        // door order of every chamber, as edge numbers, so getActions keeps its order
+        for (int c = 0; c < graph.size(); c++) {
+            List<Door> doors = graph.chamber(c).getDoors();
+            out.writeInt(doors.size());
+            for (Door door : doors) {
+                out.writeInt(edgeOf(graph, c, door));
+            }
+        }
+        out.writeInt(graph.indexOf(dungeon.getCurrentChamber()));
+        out.writeInt(graph.indexOf(dungeon.getGoalChamber()));
+        encodeDice(dungeon.getFightDice(), out);
+    }
+
+    /**
+     * decode layout, the dungeon gets a default random source and narration
+     * @param in reader positioned at an encoded layout
+     * @return new layout
+     */
+    public static Layout decode(VarintReader in) {
+        int form = in.readByte();
+        if (form == TEMPLATE) {
+            DungeonTemplate template = DungeonTemplate.of(in.readInt());
+            Layout layout = template.decodeSession(decodePlayer(in), in);
+            layout.getDungeon().setFightDice(decodeDice(in));
+            return layout;
+        }
+        if (form != WHOLE) {
+            throw new IllegalArgumentException("Unknown session form: " + form);
+        }
+        int id = in.readInt();
+        Character player = decodePlayer(in);
+
+        Chamber[] chambers = new Chamber[in.readInt()];
+        for (int c = 0; c < chambers.length; c++) {
+            chambers[c] = new Chamber();
+            int items = in.readInt();
+            for (int i = 0; i < items; i++) {
+                chambers[c].addItem(decodeItem(in));
+            }
+        }
+        Door[] doors = new Door[in.readInt()];
+        for (int e = 0; e < doors.length; e++) {
+            Chamber from = chambers[in.readInt()];
+            Chamber to = chambers[in.readInt()];
+            Monster guardian = null;
+            if (in.readByte() == 1) {
+                guardian = new Monster(in.readString(), in.readInt(), in.readInt(), in.readInt());
+                guardian.setHealth(in.readInt());
+                guardian.setLoot(decodeLoot(in));
+            }
+            doors[e] = Door.connect(from, to, guardian);
+        }
+        for (Chamber chamber : chambers) {
+            List<Door> order = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                order.add(doors[in.readInt()]);
+            }
+            chamber.getDoors().clear();
+            chamber.getDoors().addAll(order);
+        }
+        Dungeon dungeon = new Dungeon(player, chambers[in.readInt()], chambers[in.readInt()]);
+        dungeon.setFightDice(decodeDice(in));
+        return new Layout(id, dungeon, chambers);
+    }
+
+    // count and sides, then the face weights as double bits if the dice are weighted
+    private static void encodeDice(Dice dice, VarintWriter out) {
+        double[] faces = dice.getFaces();
+        out.writeInt(dice.getCount());
+        out.writeInt(faces.length);
+        out.writeByte(dice.isWeighted() ? 1 : 0);
+        if (dice.isWeighted()) {
+            for (double face : faces) {
+                out.writeLong(Double.doubleToLongBits(face));
+            }
+        }
+    }
+
+    private static Dice decodeDice(VarintReader in) {
+        int count = in.readInt();
+        int sides = in.readInt();
+        if (in.readByte() == 0) {
+            return count == 1 && sides == 6 ? Dice.STANDARD : new Dice(count, sides);
+        }
+        double[] faces = new double[sides];
+        for (int f = 0; f < sides; f++) {
+            faces[f] = Double.longBitsToDouble(in.readLong());
+        }
+        return Dice.weighted(count, faces);
+    }
+
+    // 0 for no table, else 1, the weight of nothing and every entry with one item it makes
+    private static void encodeLoot(LootTable loot, VarintWriter out) {
+        out.writeByte(loot == null ? 0 : 1);
+        if (loot == null) {
+            return;
+        }
+        out.writeLong(Double.doubleToLongBits(loot.getNothing()));
+        out.writeInt(loot.getDrops().size());
+        for (LootTable.Drop drop : loot.getDrops()) {
+            out.writeLong(Double.doubleToLongBits(drop.weight()));
+            encodeItem(drop.item().get(), out);
+        }
+    }
+
+    private static LootTable decodeLoot(VarintReader in) {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        double nothing = Double.longBitsToDouble(in.readLong());
+        int count = in.readCount();
+        List<LootTable.Drop> drops = new ArrayList<>(count);
+        for (int d = 0; d < count; d++) {
+            double weight = Double.longBitsToDouble(in.readLong());
+            // every drop makes a new item, so the entry keeps the item's bytes and decodes them again
+            VarintWriter item = new VarintWriter();
+            encodeItem(decodeItem(in), item);
+            byte[] bytes = item.toByteArray();
+            drops.add(new LootTable.Drop(weight, () -> decodeItem(new VarintReader(bytes))));
+        }
+        return new LootTable(nothing, drops);
+    }
+
+    private static int edgeOf(ChamberGraph graph, int chamber, Door door) {
+        for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+            if (graph.door(graph.neighbourEdge(p)) == door) {
+                return graph.neighbourEdge(p);
+            }
+        }
+        throw new IllegalArgumentException("Door leads out of the layout and cannot be parked");
+    }
+
+    private static void encodePlayer(Character player, VarintWriter out) {
+        if (player instanceof Wizard) {
+            out.writeByte(WIZARD);
+            out.writeString(player.getName());
+        } else if (player instanceof Warrior) {
+            out.writeByte(WARRIOR);
+            out.writeString(player.getName());
+        } else if (player instanceof Adventurer) {
+            out.writeByte(ADVENTURER);
+            out.writeString(player.getName());
+            out.writeInt(player.getMaxHealth());
+            out.writeInt(player.getStrength());
+            out.writeInt(player.getCraft());
+        } else {
+            throw new IllegalArgumentException("Cannot park a " + player.getClass().getSimpleName());
+        }
+        out.writeInt(player.getHealth());
+        List<Item> inventory = player.getInventory();
+        out.writeInt(inventory.size());
+        for (Item item : inventory) {
+            encodeItem(item, out);
+        }
+        encodeHand(player.getLeftHand(), inventory, out);
+        encodeHand(player.getRightHand(), inventory, out);
+    }
+
+    private static Character decodePlayer(VarintReader in) {
+        int kind = in.readByte();
+        String name = in.readString();
+        Character player;
+        switch (kind) {
+            case WIZARD -> player = new Wizard(name);
+            case WARRIOR -> player = new Warrior(name);
+            case ADVENTURER -> player = new Adventurer(name, in.readInt(), in.readInt(), in.readInt());
+            default -> throw new IllegalArgumentException("Unknown character kind: " + kind);
+        }
+        player.setHealth(in.readInt());
+        int items = in.readInt();
+        for (int i = 0; i < items; i++) {
+            player.addItem(decodeItem(in));
+        }
+        player.setLeftHand(decodeHand(player.getInventory(), in));
+        player.setRightHand(decodeHand(player.getInventory(), in));
+        return player;
+    }
+
+    // 0 is an empty hand, 1 + i is inventory item i, -1 is an item that is not in the inventory and follows inline
+    private static void encodeHand(Item hand, List<Item> inventory, VarintWriter out) {
+        if (hand == null) {
+            out.writeSignedInt(0);
+            return;
+        }
+        int index = inventory.indexOf(hand);
+        out.writeSignedInt(index + 1 > 0 ? index + 1 : -1);
+        if (index < 0) {
+            encodeItem(hand, out);
+        }
+    }
+
+    private static Item decodeHand(List<Item> inventory, VarintReader in) {
+        int hand = in.readSignedInt();
+        if (hand == 0) {
+            return null;
+        }
+        return hand > 0 ? inventory.get(hand - 1) : decodeItem(in);
+    }
+
+    /**
+     * encode one item, known items take a single byte
+     * @param item item
+     * @param out writer to append to
+     */
+    static void encodeItem(Item item, VarintWriter out) {
+        if (item instanceof Axe) {
+            out.writeByte(AXE);
+        } else if (item instanceof Shield) {
+            out.writeByte(SHIELD);
+        } else {
+            out.writeByte(TRINKET);
+            out.writeString(item.getName());
+            out.writeSignedInt(item.getStrength());
+            out.writeSignedInt(item.getCraft());
+        }
+    }
+
+    /**
+     * decode one item
+     * @param in reader positioned at an encoded item
+     * @return new item
+     */
+    static Item decodeItem(VarintReader in) {
+        int kind = in.readByte();
+        switch (kind) {
+            case AXE:
+                return new Axe();
+            case SHIELD:
+                return new Shield();
+            case TRINKET:
+                return new Trinket(in.readString(), in.readSignedInt(), in.readSignedInt());
+            default:
+                throw new IllegalArgumentException("Unknown item kind: " + kind);
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * proves that a character can win a dungeon with some luck, or that it never can, by visiting every state a game
+ * can reach
+ * a state is the chamber, the items picked, the item in each hand, the player's health and the health left to
+ * every guardian, 0 meaning defeated, all packed into one long. a fight round branches into every difference
+ * the fight dice can make, so the dungeon is winnable exactly when some branch walks into the goal alive.
+ * loot could make a dungeon winnable that the packed state calls lost, so guardians with loot are rejected.
+ * states are explored one turn at a time: the turn's frontier is shared out to the workers in chunks and every
+ * state goes into a striped primitive hash set, which takes 11 to 22 bytes a state. with a spill directory the
+ * frontiers are written to disk, so memory only holds the visited set
+ */
+class SolvabilityChecker {
+    // states per frontier chunk, a worker takes a whole chunk at a time
+    private static final int CHUNK = 1 << 14;
+
+    private final ChamberGraph graph;
+    private final int start;
+    private final int goal;
+    private final int[] guardianOf;
+    private final boolean[] strong;
+    private final int[] guardianStat;
+    private final int[] guardianHealth;
+    // every difference the player's roll can be over the guardian's
+    private final int[] rollDifferences;
+    // items are numbered from 1 so that 0 can mean an empty hand
+    private final int[] itemStrength;
+    private final int[] itemCraft;
+    private final int[][] chamberItems;
+    private final int strength;
+    private final int craft;
+    private final long first;
+
+    private final int handBits;
+    private final int pickedShift;
+    private final int healthShift;
+    private final int healthBits;
+    private final int[] guardianShift;
+    private final int[] guardianBits;
+    private final int chamberBits;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long expectedStates = 1 << 16;
+    private Path spillDirectory;
+
+    /**
+     * create checker for a dungeon fought with one six sided die
+     * @param chambers all chambers of the dungeon
+     * @param start chamber the character starts in
+     * @param goal goal chamber
+     * @param player character to check, items already in its hands count
+     */
+    public SolvabilityChecker(Chamber[] chambers, Chamber start, Chamber goal, Character player) {
+        this(chambers, start, goal, player, Dice.STANDARD);
+    }
+
+    /**
+     * create checker for a dungeon as it is now, the chambers, doors and character are only read
+     * @param chambers all chambers of the dungeon
+     * @param start chamber the character starts in
+     * @param goal goal chamber
+     * @param player character to check, items already in its hands count
+     * @param dice dice both sides roll in a fight
+     */
+    public SolvabilityChecker(Chamber[] chambers, Chamber start, Chamber goal, Character player, Dice dice) {
+        graph = ChamberGraph.of(chambers);
+        this.start = graph.indexOf(start);
+        this.goal = graph.indexOf(goal);
+        if (this.start < 0 || this.goal < 0) {
+            throw new IllegalArgumentException("Start and goal must be part of the dungeon");
+        }
+
+        guardianOf = new int[graph.edgeCount()];
+        List<Monster> guardians = new ArrayList<>();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            Door door = graph.door(e);
+            guardianOf[e] = door.isLocked() ? guardians.size() : -1;
+            if (door.isLocked()) {
+                guardians.add(door.getGuardian());
+            }
+        }
+        strong = new boolean[guardians.size()];
+        guardianStat = new int[guardians.size()];
+        guardianHealth = new int[guardians.size()];
+        for (int g = 0; g < guardians.size(); g++) {
+            Monster guardian = guardians.get(g);
+            strong[g] = guardian.usesStrength();
+            guardianStat[g] = strong[g] ? guardian.getStrength() : guardian.getCraft();
+            guardianHealth[g] = guardian.getHealth();
+            if (guardian.getLoot() != null && guardian.getLoot().size() > 0) {
+                throw new IllegalArgumentException("Guardians that drop loot cannot be checked");
+            }
+        }
+        int span = dice.max() - dice.min();
+        rollDifferences = IntStream.rangeClosed(-span, span).filter(d -> dice.difference(d) > 0).toArray();
+
+        List<Item> items = new ArrayList<>();
+        items.add(null);
+        chamberItems = new int[chambers.length][];
+        for (int c = 0; c < chambers.length; c++) {
+            List<Item> lying = chambers[c].getItems();
+            chamberItems[c] = new int[lying.size()];
+            for (int i = 0; i < lying.size(); i++) {
+                chamberItems[c][i] = items.size();
+                items.add(lying.get(i));
+            }
+        }
+        int left = held(player.getLeftHand(), items);
+        int right = held(player.getRightHand(), items);
+        itemStrength = new int[items.size()];
+        itemCraft = new int[items.size()];
+        for (int i = 1; i < items.size(); i++) {
+            itemStrength[i] = items.get(i).getStrength();
+            itemCraft[i] = items.get(i).getCraft();
+        }
+        strength = player.getStrength();
+        craft = player.getCraft();
+
+        // chamber, left hand, right hand, picked items, health, then the health of every guardian
+        chamberBits = bits(chambers.length - 1);
+        handBits = bits(items.size() - 1);
+        pickedShift = chamberBits + 2 * handBits;
+        healthShift = pickedShift + items.size() - 1;
+        healthBits = bits(Math.max(player.getHealth(), player.getMaxHealth()));
+        guardianShift = new int[guardians.size()];
+        guardianBits = new int[guardians.size()];
+        int used = healthShift + healthBits;
+        for (int g = 0; g < guardians.size(); g++) {
+            guardianShift[g] = used;
+            guardianBits[g] = bits(guardianHealth[g]);
+            used += guardianBits[g];
+        }
+        if (used > 63) {
+            throw new IllegalArgumentException("State of this dungeon needs " + used + " bits, at most 63 fit");
+        }
+
+        long state = this.start | (long) left << chamberBits | (long) right << chamberBits + handBits
+                | (long) Math.max(player.getHealth(), 0) << healthShift;
+        if (left > 0) {
+            state |= 1L << pickedShift + left - 1;
+        }
+        if (right > 0) {
+            state |= 1L << pickedShift + right - 1;
+        }
+        for (int g = 0; g < guardians.size(); g++) {
+            state |= (long) guardianHealth[g] << guardianShift[g];
+        }
+        first = state;
+    }
+
+    /**
+     * create checker for a layout and the character it was built with
+     * @param layout layout at its start
+     * @return checker
+     */
+    public static SolvabilityChecker of(Layout layout) {
+        return of(layout, layout.getDungeon().getPlayer());
+    }
+
+    /**
+     * create checker for a layout played by another character, such as a wizard instead of a warrior
+     * @param layout layout at its start
+     * @param player character to check
+     * @return checker
+     */
+    public static SolvabilityChecker of(Layout layout, Character player) {
+        Dungeon dungeon = layout.getDungeon();
+        return new SolvabilityChecker(layout.getChambers(), dungeon.getCurrentChamber(), dungeon.getGoalChamber(),
+                player, dungeon.getFightDice());
+    }
+
+    /**
+     * set number of worker threads
+     * @param parallelism workers expanding the frontier
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * set expected number of states, the visited set starts this big and saves growing on the way
+     * @param expectedStates expected states
+     */
+    public void setExpectedStates(long expectedStates) {
+        this.expectedStates = expectedStates;
+    }
+
+    /**
+     * set where frontiers are spilled
+     * @param spillDirectory directory for temporary frontier files, or null to keep frontiers in memory
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * get number of bits a state takes
+     * @return bits of the packed state
+     */
+    public int getStateBits() {
+        return guardianShift.length == 0 ? healthShift + healthBits
+                : guardianShift[guardianShift.length - 1] + guardianBits[guardianBits.length - 1];
+    }
+
+    /**
+     * explore until the goal is reached or every state has been seen
+     * @return report
+     * @throws IOException if a frontier cannot be spilled
+     */
+    public Report check() throws IOException {
+        if ((first >>> healthShift & mask(healthBits)) == 0) {
+            return new Report(false, 1, -1);
+        }
+        if (start == goal) {
+            return new Report(true, 1, 0);
+        }
+        ConcurrentLongSet visited = new ConcurrentLongSet(expectedStates);
+        visited.add(first);
+        Frontier current = new Frontier(spillDirectory);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            current.add(new long[]{first}, 1);
+            for (int turn = 1; current.size() > 0; turn++) {
+                Frontier next = new Frontier(spillDirectory);
+                boolean won;
+                try {
+                    won = expand(pool, current, next, visited);
+                } finally {
+                    current.close();
+                    current = next;
+                }
+                if (won) {
+                    return new Report(true, visited.size(), turn);
+                }
+            }
+            return new Report(false, visited.size(), -1);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            current.close();
+            pool.shutdown();
+        }
+    }
+
+    // expands every state of a turn, returns true as soon as some state walks into the goal
+    private boolean expand(ForkJoinPool pool, Frontier current, Frontier next, ConcurrentLongSet visited) {
+        AtomicInteger claimed = new AtomicInteger();
+        AtomicBoolean won = new AtomicBoolean();
+        pool.submit(() -> IntStream.range(0, parallelism)
+                .parallel()
+                .forEach(w -> {
+                    Expansion expansion = new Expansion(visited, next);
+                    for (int c = claimed.getAndIncrement(); c < current.chunks() && !won.get();
+                         c = claimed.getAndIncrement()) {
+                        long[] states = current.read(c);
+                        int count = current.count(c);
+                        for (int s = 0; s < count && !expansion.won; s++) {
+                            expansion.expand(states[s]);
+                        }
+                        if (expansion.won) {
+                            won.set(true);
+                        }
+                    }
+                    expansion.flush();
+                })).join();
+        return won.get();
+    }
+
+    private static int held(Item item, List<Item> items) {
+        if (item == null) {
+            return 0;
+        }
+        items.add(item);
+        return items.size() - 1;
+    }
+
+    private static int bits(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static long mask(int bits) {
+        return (1L << bits) - 1;
+    }
+
+    /**
+     * result of a check
+     * @param winnable some run of luck wins the dungeon
+     * @param states states visited, every reachable state when not winnable
+     * @param turns fewest turns to win counting each fight round, or -1 if not winnable
+     */
+    record Report(boolean winnable, long states, int turns) {
+    }
+
+    /**
+     * one worker's expansion of states, its new states are collected into chunks of the next frontier
+     */
+    private final class Expansion {
+        private final ConcurrentLongSet visited;
+        private final Frontier next;
+        private long[] found = new long[CHUNK];
+        private int size;
+        private boolean won;
+
+        Expansion(ConcurrentLongSet visited, Frontier next) {
+            this.visited = visited;
+            this.next = next;
+        }
+
+        void expand(long state) {
+            int chamber = (int) (state & mask(chamberBits));
+            int left = (int) (state >>> chamberBits & mask(handBits));
+            int right = (int) (state >>> chamberBits + handBits & mask(handBits));
+            int health = (int) (state >>> healthShift & mask(healthBits));
+            for (int p = graph.firstNeighbour(chamber); p < graph.endNeighbour(chamber); p++) {
+                int to = graph.neighbour(p);
+                int g = guardianOf[graph.neighbourEdge(p)];
+                int guarding = g < 0 ? 0 : (int) (state >>> guardianShift[g] & mask(guardianBits[g]));
+                if (guarding == 0) {
+                    if (to == goal) {
+                        won = true;
+                        return;
+                    }
+                    offer(state & ~mask(chamberBits) | to);
+                    continue;
+                }
+                int gap = (strong[g] ? strength + itemStrength[left] + itemStrength[right]
+                        : craft + itemCraft[left] + itemCraft[right]) - guardianStat[g];
+                long withoutGuardian = state & ~(mask(guardianBits[g]) << guardianShift[g]);
+                long withoutHealth = state & ~(mask(healthBits) << healthShift);
+                // ties change nothing
+                for (int roll : rollDifferences) {
+                    int difference = gap + roll;
+                    if (difference > 0) {
+                        offer(withoutGuardian | (long) Math.max(guarding - difference, 0) << guardianShift[g]);
+                    } else if (difference < 0 && health + difference > 0) {
+                        offer(withoutHealth | (long) (health + difference) << healthShift);
+                    }
+                }
+            }
+            for (int item : chamberItems[chamber]) {
+                long bit = 1L << pickedShift + item - 1;
+                if ((state & bit) != 0) {
+                    continue;
+                }
+                long picked = state | bit;
+                if (left == 0) {
+                    picked |= (long) item << chamberBits;
+                } else if (right == 0) {
+                    picked |= (long) item << chamberBits + handBits;
+                }
+                offer(picked);
+            }
+        }
+
+        void flush() {
+            if (size > 0) {
+                next.add(found, size);
+                found = null;
+                size = 0;
+            }
+        }
+
+        private void offer(long state) {
+            if (!visited.add(state)) {
+                return;
+            }
+            found[size++] = state;
+            if (size == CHUNK) {
+                next.add(found, size);
+                found = new long[CHUNK];
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * states of one turn in chunks, held in memory or written to a spill file
+     */
+    private static final class Frontier {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final Path path;
+        private final FileChannel file;
+        private final AtomicLong end = new AtomicLong();
+        private long size;
+
+        Frontier(Path directory) throws IOException {
+            if (directory == null) {
+                path = null;
+                file = null;
+            } else {
+                path = Files.createTempFile(directory, "frontier", ".bin");
+                file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        void add(long[] states, int count) {
+            if (file == null) {
+                append(new Chunk(states, count, -1));
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.nativeOrder());
+            buffer.asLongBuffer().put(states, 0, count);
+            long offset = end.getAndAdd(buffer.capacity());
+            try {
+                for (long at = offset; buffer.hasRemaining(); ) {
+                    at += file.write(buffer, at);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            append(new Chunk(null, count, offset));
+        }
+
+        synchronized int chunks() {
+            return chunks.size();
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        synchronized int count(int chunk) {
+            return chunks.get(chunk).count;
+        }
+
+        long[] read(int index) {
+            Chunk chunk;
+            synchronized (this) {
+                chunk = chunks.get(index);
+            }
+            if (chunk.states != null) {
+                return chunk.states;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(chunk.count * Long.BYTES).order(ByteOrder.nativeOrder());
+            try {
+                for (long at = chunk.offset; buffer.hasRemaining(); ) {
+                    int read = file.read(buffer, at);
+                    if (read < 0) {
+                        throw new IOException("Frontier file " + path + " ends early");
+                    }
+                    at += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long[] states = new long[chunk.count];
+            buffer.flip();
+            buffer.asLongBuffer().get(states);
+            return states;
+        }
+
+        void close() throws IOException {
+            if (file != null && file.isOpen()) {
+                file.close();
+                Files.deleteIfExists(path);
+            }
+        }
+
+        private synchronized void append(Chunk chunk) {
+            chunks.add(chunk);
+            size += chunk.count;
+        }
+    }
+
+    /**
+     * chunk of a frontier, either its states or where they are in the spill file
+     */
+    private record Chunk(long[] states, int count, long offset) {
+    }
+}
+
+/**
+ * set of non-negative longs split into segments by hash, each segment an open addressing table with its own lock
+ * threads adding to different segments never wait for each other, and since each segment grows on its own no
+ * table comes near the array size limit and growing never copies the whole set at once
+ */
+final class ConcurrentLongSet {
+    private static final long EMPTY = -1;
+    private static final int SEGMENT_BITS = 8;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    /**
+     * create set
+     * @param expected expected number of entries
+     */
+    public ConcurrentLongSet(long expected) {
+        int perSegment = (int) Math.min(Math.max(expected >> SEGMENT_BITS, 4), 1 << 28);
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = new Segment(Integer.highestOneBit(perSegment * 2 - 1) << 1);
+        }
+    }
+
+    /**
+     * add key if missing
+     * @param key key, must not be negative
+     * @return true if the key was added, otherwise false if it was already there
+     */
+    public boolean add(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative");
+        }
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (hash >>> 64 - SEGMENT_BITS)].add(key, (int) (hash ^ hash >>> 32));
+    }
+
+    /**
+     * check key is in the set
+     * @param key key
+     * @return true if present
+     */
+    public boolean contains(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (hash >>> 64 - SEGMENT_BITS)].contains(key, (int) (hash ^ hash >>> 32));
+    }
+
+    /**
+     * get number of entries
+     * @return size
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        private long[] keys;
+        private int size;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        synchronized boolean add(long key, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            if (++size * 4 > keys.length * 3) {
+                grow();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long key, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] old = keys;
+            keys = new long[old.length * 2];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (long key : old) {
+                if (key != EMPTY) {
+                    long hash = key * 0x9E3779B97F4A7C15L;
+                    int slot = (int) (hash ^ hash >>> 32) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                }
+            }
+        }
+    }
+}
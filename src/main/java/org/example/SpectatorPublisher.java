@@ -0,0 +1,254 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * publishes the events of live games to spectators (dashboards, streams, loggers)
+ * register it with {@link Dungeon#addListener(GameListener)} on every session that should be watched.
+ * every subscriber gets its own bounded buffer and its own delivery task on the executor,
+ * so the player's thread only ever appends to buffers and never waits for a subscriber
+ */
+class SpectatorPublisher implements Flow.Publisher<GameEvent>, GameListener, AutoCloseable {
+    /**
+     * what happens when a subscriber's buffer is full
+     */
+    enum Overflow {
+        /**
+         * throw away the oldest buffered event to make room
+         */
+        DROP_OLDEST,
+        /**
+         * overwrite the newest buffered event, so the subscriber sees a sample that always ends with the latest event
+         */
+        SAMPLE,
+        /**
+         * lose nothing: events wait outside the buffer until the subscriber requests more.
+         * the waiting happens in the delivery task, the player's thread is never blocked.
+         * a subscriber that lets more than {@link #MAX_WAITING} events pile up is failed instead
+         */
+        BLOCK
+    }
+
+    static final int DEFAULT_CAPACITY = 256;
+    static final int MAX_WAITING = 1 << 16;
+
+    private final Executor executor;
+    private final List<SpectatorSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * create publisher delivering on the common fork/join pool
+     */
+    public SpectatorPublisher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * create publisher
+     * @param executor executor running the delivery tasks
+     */
+    public SpectatorPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+        subscribe(subscriber, Overflow.DROP_OLDEST, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * subscribe with a buffer policy
+     * @param subscriber subscriber
+     * @param overflow what to do when the buffer is full
+     * @param capacity buffer size
+     */
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber, Overflow overflow, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        SpectatorSubscription subscription = new SpectatorSubscription(subscriber, overflow, capacity);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * hand event to every subscriber, never blocks
+     * @param event event that happened
+     */
+    @Override
+    public void onEvent(GameEvent event) {
+        if (closed) {
+            return;
+        }
+        for (SpectatorSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * get number of subscribers
+     * @return number of active subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * stop publishing, subscribers get their buffered events and then onComplete
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (SpectatorSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * one subscriber's buffer and demand, drained by at most one delivery task at a time
+     */
+    private final class SpectatorSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super GameEvent> subscriber;
+        private final Overflow overflow;
+        private final int capacity;
+        private final ArrayDeque<GameEvent> buffer;
+        private final ConcurrentLinkedQueue<GameEvent> waiting = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger waitingCount = new AtomicInteger();
+        private final AtomicInteger work = new AtomicInteger();
+        private long demand;
+        private boolean completing;
+        private Throwable error;
+        private volatile boolean cancelled;
+
+        SpectatorSubscription(Flow.Subscriber<? super GameEvent> subscriber, Overflow overflow, int capacity) {
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            this.capacity = capacity;
+            this.buffer = new ArrayDeque<>(Math.min(capacity, 1024));
+        }
+
+        void offer(GameEvent event) {
+            if (cancelled) {
+                return;
+            }
+            if (overflow == Overflow.BLOCK) {
+                if (waitingCount.incrementAndGet() > MAX_WAITING) {
+                    fail(new IllegalStateException("Subscriber fell more than " + MAX_WAITING + " events behind"));
+                    return;
+                }
+                waiting.add(event);
+            } else {
+                synchronized (this) {
+                    if (buffer.size() == capacity) {
+                        if (overflow == Overflow.DROP_OLDEST) {
+                            buffer.pollFirst();
+                        } else {
+                            buffer.pollLast();
+                        }
+                    }
+                    buffer.addLast(event);
+                }
+            }
+            signal();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completing = true;
+            }
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Request must be positive but was " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        // stop taking events and let the delivery task hand the error to the subscriber
+        private void fail(Throwable throwable) {
+            synchronized (this) {
+                if (error == null) {
+                    error = throwable;
+                }
+            }
+            subscriptions.remove(this);
+            signal();
+        }
+
+        private void signal() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                while (!cancelled) {
+                    GameEvent next;
+                    boolean done;
+                    Throwable failed;
+                    synchronized (this) {
+                        failed = error;
+                        // blocked events move into the buffer only as space frees up
+                        while (buffer.size() < capacity && !waiting.isEmpty()) {
+                            buffer.addLast(waiting.poll());
+                            waitingCount.decrementAndGet();
+                        }
+                        next = demand > 0 ? buffer.pollFirst() : null;
+                        if (next != null) {
+                            demand--;
+                        }
+                        done = next == null && completing && buffer.isEmpty() && waiting.isEmpty();
+                    }
+                    if (failed != null) {
+                        cancelled = true;
+                        waiting.clear();
+                        subscriber.onError(failed);
+                        return;
+                    }
+                    if (done) {
+                        cancelled = true;
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    try {
+                        subscriber.onNext(next);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        subscriber.onError(e);
+                        return;
+                    }
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * keeps one remote client in step with what the player sees: their own status and the chamber they are in
+ * the first message is a full snapshot, after that each message only holds what changed since the last one.
+ * a message starts with one byte of flags saying which parts follow, numbers are varints and small fields
+ * are packed together, for example an item index and the hand it went to share one varint.
+ * a fight is usually three or four bytes and a pickup two. the encoder compares against a small copy of what
+ * it sent last, so changes made without an action, such as undo or world ticks, are sent too.
+ * messages are written into a caller's {@link VarintWriter}, which can be reset and reused for every turn
+ */
+class StateSync {
+    static final int HEALTH = 1;
+    static final int STATS = 1 << 1;
+    static final int CHAMBER = 1 << 2;
+    static final int DOORS = 1 << 3;
+    static final int ITEM_TAKEN = 1 << 4;
+    static final int HANDS = 1 << 5;
+    static final int FINISHED = 1 << 6;
+    static final int SNAPSHOT = 1 << 7;
+
+    // hand field of an item taken: to the inventory only, to a hand, or by someone else
+    static final int TO_INVENTORY = 0;
+    static final int TO_LEFT = 1;
+    static final int TO_RIGHT = 2;
+    static final int TAKEN_AWAY = 3;
+
+    private final Dungeon dungeon;
+    private boolean sent;
+    private int health;
+    private int strength;
+    private int craft;
+    private Item left;
+    private Item right;
+    private boolean finished;
+    private Chamber chamber;
+    private Monster[] guardians = new Monster[4];
+    private int[] guardianHealth = new int[4];
+    private int doorCount;
+    private Item[] items = new Item[4];
+    private int itemCount;
+    private int[] changedDoors = new int[4];
+
+    /**
+     * create sync for one client
+     * @param dungeon dungeon the client watches
+     */
+    public StateSync(Dungeon dungeon) {
+        this.dungeon = dungeon;
+    }
+
+    /**
+     * send a full snapshot with the next message, for example after the client reconnects
+     */
+    public void reset() {
+        sent = false;
+    }
+
+    /**
+     * write the changes since the last message
+     * @param out writer to append to
+     * @return true if a message was written, otherwise false if nothing changed
+     */
+    public boolean encode(VarintWriter out) {
+        Character player = dungeon.getPlayer();
+        Chamber current = dungeon.getCurrentChamber();
+        if (!sent) {
+            out.writeByte(SNAPSHOT);
+            out.writeString(player.getName());
+            out.writeInt(player.getMaxHealth());
+            out.writeInt(player.getHealth());
+            out.writeSignedInt(player.getTotalStrength());
+            out.writeSignedInt(player.getTotalCraft());
+            writeHand(player.getLeftHand(), out);
+            writeHand(player.getRightHand(), out);
+            writeChamber(current, out);
+            out.writeByte(finishedState());
+            remember(player, current);
+            sent = true;
+            return true;
+        }
+
+        int flags = 0;
+        if (player.getHealth() != health) {
+            flags |= HEALTH;
+        }
+        if (player.getTotalStrength() != strength || player.getTotalCraft() != craft) {
+            flags |= STATS;
+        }
+        int changed = 0;
+        int taken = -1;
+        int hand = TO_INVENTORY;
+        if (current != chamber) {
+            flags |= CHAMBER;
+        } else {
+            changed = changedDoors(current);
+            if (changed < 0) {
+                flags |= CHAMBER;
+            } else {
+                if (changed > 0) {
+                    flags |= DOORS;
+                }
+                List<Item> now = current.getItems();
+                if (!sameItems(now, -1)) {
+                    taken = takenIndex(now);
+                    if (taken < 0) {
+                        flags |= CHAMBER;
+                    } else {
+                        flags |= ITEM_TAKEN;
+                        Item item = items[taken];
+                        if (player.getLeftHand() == item && left != item) {
+                            hand = TO_LEFT;
+                        } else if (player.getRightHand() == item && right != item) {
+                            hand = TO_RIGHT;
+                        } else if (!player.getInventory().contains(item)) {
+                            hand = TAKEN_AWAY;
+                        }
+                    }
+                }
+            }
+            if ((flags & CHAMBER) != 0) {
+                flags &= ~DOORS;
+            }
+        }
+        Item expectLeft = hand == TO_LEFT ? items[taken] : left;
+        Item expectRight = hand == TO_RIGHT ? items[taken] : right;
+        if (player.getLeftHand() != expectLeft || player.getRightHand() != expectRight) {
+            flags |= HANDS;
+        }
+        if (dungeon.isFinished() != finished) {
+            flags |= FINISHED;
+        }
+        if (flags == 0) {
+            return false;
+        }
+
+        out.writeByte(flags);
+        if ((flags & HEALTH) != 0) {
+            out.writeSignedInt(player.getHealth() - health);
+        }
+        if ((flags & STATS) != 0) {
+            out.writeSignedInt(player.getTotalStrength() - strength);
+            out.writeSignedInt(player.getTotalCraft() - craft);
+        }
+        if ((flags & CHAMBER) != 0) {
+            writeChamber(current, out);
+        }
+        if ((flags & DOORS) != 0) {
+            out.writeInt(changed);
+            for (int i = 0; i < changed; i++) {
+                int door = changedDoors[i];
+                Monster guardian = current.getDoors().get(door).getGuardian();
+                out.writeInt(door << 1 | (guardian == null ? 1 : 0));
+                if (guardian != null) {
+                    out.writeSignedInt(guardian.getHealth() - guardianHealth[door]);
+                }
+            }
+        }
+        if ((flags & ITEM_TAKEN) != 0) {
+            out.writeInt(taken << 2 | hand);
+        }
+        if ((flags & HANDS) != 0) {
+            writeHand(player.getLeftHand(), out);
+            writeHand(player.getRightHand(), out);
+        }
+        if ((flags & FINISHED) != 0) {
+            out.writeByte(finishedState());
+        }
+        remember(player, current);
+        return true;
+    }
+
+    // doors whose guardian lost health or was removed, or -1 if a door got a different guardian
+    private int changedDoors(Chamber current) {
+        List<Door> doors = current.getDoors();
+        if (doors.size() != doorCount) {
+            return -1;
+        }
+        int changed = 0;
+        for (int i = 0; i < doorCount; i++) {
+            Monster guardian = doors.get(i).getGuardian();
+            if (guardian != guardians[i]) {
+                if (guardian != null) {
+                    return -1;
+                }
+            } else if (guardian == null || guardian.getHealth() == guardianHealth[i]) {
+                continue;
+            }
+            if (changed == changedDoors.length) {
+                changedDoors = Arrays.copyOf(changedDoors, changed * 2);
+            }
+            changedDoors[changed++] = i;
+        }
+        return changed;
+    }
+
+    private boolean sameItems(List<Item> now, int skip) {
+        if (now.size() != itemCount - (skip < 0 ? 0 : 1)) {
+            return false;
+        }
+        for (int i = 0, j = 0; i < itemCount; i++) {
+            if (i != skip && now.get(j++) != items[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // index of the one item that is gone, or -1 if the items changed in any other way
+    private int takenIndex(List<Item> now) {
+        if (now.size() != itemCount - 1) {
+            return -1;
+        }
+        int i = 0;
+        while (i < now.size() && now.get(i) == items[i]) {
+            i++;
+        }
+        return sameItems(now, i) ? i : -1;
+    }
+
+    private void remember(Character player, Chamber current) {
+        health = player.getHealth();
+        strength = player.getTotalStrength();
+        craft = player.getTotalCraft();
+        left = player.getLeftHand();
+        right = player.getRightHand();
+        finished = dungeon.isFinished();
+        chamber = current;
+        List<Door> doors = current.getDoors();
+        doorCount = doors.size();
+        if (guardians.length < doorCount) {
+            guardians = new Monster[doorCount * 2];
+            guardianHealth = new int[doorCount * 2];
+        }
+        for (int i = 0; i < doorCount; i++) {
+            guardians[i] = doors.get(i).getGuardian();
+            guardianHealth[i] = guardians[i] == null ? 0 : guardians[i].getHealth();
+        }
+        List<Item> now = current.getItems();
+        itemCount = 0;
+        for (Item item : now) {
+            if (itemCount == items.length) {
+                items = Arrays.copyOf(items, itemCount * 2);
+            }
+            items[itemCount++] = item;
+        }
+    }
+
+    // bit 0 is finished and bit 1 is won
+    private int finishedState() {
+        return (dungeon.isFinished() ? 1 : 0) | (dungeon.isWon() ? 2 : 0);
+    }
+
+    private static void writeHand(Item item, VarintWriter out) {
+        out.writeByte(item == null ? 0 : 1);
+        if (item != null) {
+            SessionCodec.encodeItem(item, out);
+        }
+    }
+
+    private static void writeChamber(Chamber chamber, VarintWriter out) {
+        List<Door> doors = chamber.getDoors();
+        out.writeInt(doors.size());
+        for (Door door : doors) {
+            Monster guardian = door.getGuardian();
+            out.writeByte(guardian == null ? 0 : 1);
+            if (guardian != null) {
+                out.writeString(guardian.getName());
+                out.writeInt(guardian.getStrength());
+                out.writeInt(guardian.getCraft());
+                out.writeInt(guardian.getHealth());
+            }
+        }
+        List<Item> items = chamber.getItems();
+        out.writeInt(items.size());
+        for (Item item : items) {
+            SessionCodec.encodeItem(item, out);
+        }
+    }
+}
+
+/**
+ * client side copy of what the player sees, kept up to date by the messages of a {@link StateSync}
+ */
+class StateView {
+    private String name;
+    private int maxHealth;
+    private int health;
+    private int strength;
+    private int craft;
+    private Item leftHand;
+    private Item rightHand;
+    private final List<Monster> guardians = new ArrayList<>();
+    private final List<Item> items = new ArrayList<>();
+    private boolean finished;
+    private boolean won;
+
+    /**
+     * apply one message
+     * @param in reader positioned at a message
+     */
+    public void apply(VarintReader in) {
+        int flags = in.readByte();
+        if ((flags & StateSync.SNAPSHOT) != 0) {
+            name = in.readString();
+            maxHealth = in.readInt();
+            health = in.readInt();
+            strength = in.readSignedInt();
+            craft = in.readSignedInt();
+            leftHand = readHand(in);
+            rightHand = readHand(in);
+            readChamber(in);
+            readFinished(in);
+            return;
+        }
+        if ((flags & StateSync.HEALTH) != 0) {
+            health += in.readSignedInt();
+        }
+        if ((flags & StateSync.STATS) != 0) {
+            strength += in.readSignedInt();
+            craft += in.readSignedInt();
+        }
+        if ((flags & StateSync.CHAMBER) != 0) {
+            readChamber(in);
+        }
+        if ((flags & StateSync.DOORS) != 0) {
+            int changed = in.readInt();
+            for (int i = 0; i < changed; i++) {
+                int packed = in.readInt();
+                int door = packed >>> 1;
+                if ((packed & 1) != 0) {
+                    guardians.set(door, null);
+                } else {
+                    Monster guardian = guardians.get(door);
+                    guardian.setHealth(guardian.getHealth() + in.readSignedInt());
+                }
+            }
+        }
+        if ((flags & StateSync.ITEM_TAKEN) != 0) {
+            int packed = in.readInt();
+            Item item = items.remove(packed >>> 2);
+            if ((packed & 3) == StateSync.TO_LEFT) {
+                leftHand = item;
+            } else if ((packed & 3) == StateSync.TO_RIGHT) {
+                rightHand = item;
+            }
+        }
+        if ((flags & StateSync.HANDS) != 0) {
+            leftHand = readHand(in);
+            rightHand = readHand(in);
+        }
+        if ((flags & StateSync.FINISHED) != 0) {
+            readFinished(in);
+        }
+    }
+
+    /**
+     * get player's name
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * get player's health
+     * @return health
+     */
+    public int getHealth() {
+        return health;
+    }
+
+    /**
+     * get player's maximum health
+     * @return maximum health
+     */
+    public int getMaxHealth() {
+        return maxHealth;
+    }
+
+    /**
+     * get player's strength with items
+     * @return total strength
+     */
+    public int getStrength() {
+        return strength;
+    }
+
+    /**
+     * get player's craft with items
+     * @return total craft
+     */
+    public int getCraft() {
+        return craft;
+    }
+
+    /**
+     * get item in left hand
+     * @return item or null
+     */
+    public Item getLeftHand() {
+        return leftHand;
+    }
+
+    /**
+     * get item in right hand
+     * @return item or null
+     */
+    public Item getRightHand() {
+        return rightHand;
+    }
+
+    /**
+     * get guardians of the chamber's doors in door order
+     * @return guardian of each door, null for unguarded doors
+     */
+    public List<Monster> getGuardians() {
+        return guardians;
+    }
+
+    /**
+     * get items in the chamber
+     * @return items
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * check if game is finished
+     * @return true if finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * check if game was won
+     * @return true if won
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    private void readChamber(VarintReader in) {
+        guardians.clear();
+        int doors = in.readInt();
+        for (int i = 0; i < doors; i++) {
+            Monster guardian = null;
+            if (in.readByte() == 1) {
+                String monster = in.readString();
+                int monsterStrength = in.readInt();
+                int monsterCraft = in.readInt();
+                int monsterHealth = in.readInt();
+                guardian = new Monster(monster, monsterStrength, monsterCraft, monsterHealth);
+            }
+            guardians.add(guardian);
+        }
+        items.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            items.add(SessionCodec.decodeItem(in));
+        }
+    }
+
+    private void readFinished(VarintReader in) {
+        int state = in.readByte();
+        finished = (state & 1) != 0;
+        won = (state & 2) != 0;
+    }
+
+    private static Item readHand(VarintReader in) {
+        return in.readByte() == 0 ? null : SessionCodec.decodeItem(in);
+    }
+}
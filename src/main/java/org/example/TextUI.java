@@ -6,11 +6,39 @@ import java.io.InputStreamReader;
 import java.util.*;
 
 public class TextUI {
+    private ReplayRecorder recorder;
+    private World world;
+    private PathHint hint;
+
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void setWorld(World world) {
+        this.world = world;
+    }
+
+    public void setHint(PathHint hint) {
+        this.hint = hint;
+    }
+
     public void play(Dungeon d) {
+        int turns = 0;
         while (!d.isFinished()) {
             print(d);
             Action a = ask(d);
+            TurnEvent turn = new TurnEvent();
+            turn.begin();
             a.execute();
+            if (world != null) {
+                world.tick();
+            }
+            turns++;
+            if (turn.shouldCommit()) {
+                turn.turn = turns;
+                turn.action = a.getClass().getSimpleName();
+                turn.commit();
+            }
         }
     }
 
@@ -39,6 +67,12 @@ public class TextUI {
             }
         }
 
+        if (world != null) {
+            for (Monster roamer : world.getRoamers(r)) {
+                s.append("A " + roamer.getName() + " is roaming in this chamber\n");
+            }
+        }
+
         if (!r.getItems().isEmpty()) {
             s.append("\nItems in this chamber:\n");
             for (Item item : r.getItems()) {
@@ -72,6 +106,9 @@ public class TextUI {
             Action a = actions.get(i);
             s.append("\t" + i + ": " + a.toString() + "\n");
         }
+        if (hint != null) {
+            s.append("\th: Show a hint\n");
+        }
         System.out.println(s.toString());
 
         BufferedReader reader = new BufferedReader(
@@ -79,9 +116,17 @@ public class TextUI {
         try {
             System.out.print("Enter your choice: ");
             String input = reader.readLine();
+            while (hint != null && "h".equals(input)) {
+                System.out.println(hint(d, actions));
+                System.out.print("Enter your choice: ");
+                input = reader.readLine();
+            }
             int command = Integer.parseInt(input);
 
             if (command >= 0 && command < actions.size()) {
+                if (recorder != null) {
+                    recorder.record(command);
+                }
                 return actions.get(command);
             } else {
                 return new PrintError(d, new IllegalArgumentException("Invalid choice. Please enter a number between 0 and " + (actions.size() - 1)));
@@ -92,4 +137,19 @@ public class TextUI {
             return new PrintError(d, new IllegalArgumentException("Please enter a valid number"));
         }
     }
+
+    private String hint(Dungeon d, List<Action> actions) {
+        Door door = hint.next(d.getCurrentChamber());
+        if (door == null) {
+            return "Hint: there is no way to the goal from here";
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            Action a = actions.get(i);
+            Door target = a instanceof Move m ? m.getDoor() : a instanceof Fight f ? f.getDoor() : null;
+            if (target == door) {
+                return "Hint: option " + i + " (" + a + "), about " + hint.distance(d.getCurrentChamber()) + " turns to the goal";
+            }
+        }
+        return "Hint: go through " + door;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package org.example;
+
+/**
+ * hierarchical timing wheel counting whole world ticks
+ * there are 11 levels of 64 slots each, level l holds events whose deadline differs from the current tick
+ * first in bits 6l to 6l+5, so every long deadline has a slot and nothing overflows.
+ * scheduling and cancelling are O(1) because each slot is an intrusive doubly linked list.
+ * when the low bits of the current tick roll over, the matching slot of the higher level is moved down,
+ * so an event is moved at most once per level and {@link #tick()} only looks at events that are due.
+ * not thread safe, the world that owns the wheel calls it from a single thread
+ */
+class TimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+    private final Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+    private long now;
+    private int size;
+
+    /**
+     * create wheel at tick 0
+     */
+    public TimingWheel() {
+        for (Timeout[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = Timeout.sentinel();
+            }
+        }
+    }
+
+    /**
+     * get current tick
+     * @return ticks since the wheel was created
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * get number of pending events
+     * @return number of scheduled events that have not run or been cancelled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * run task after a number of ticks
+     * @param delay ticks to wait, at least 1
+     * @param task task to run
+     * @return handle that can cancel the task
+     */
+    public Timeout schedule(long delay, Runnable task) {
+        if (delay < 1) {
+            throw new IllegalArgumentException("Delay must be at least one tick but was " + delay);
+        }
+        Timeout timeout = new Timeout(now + delay, task);
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * advance one tick and run every task due on it, tasks may schedule or cancel other tasks
+     * @return number of tasks run
+     */
+    public int tick() {
+        now++;
+        int top = 0;
+        while (top + 1 < LEVELS && (now & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        // move higher levels down first, they may fill a lower slot that is due on this tick
+        for (int level = top; level > 0; level--) {
+            Timeout head = wheels[level][(int) (now >>> (BITS * level)) & MASK];
+            Timeout timeout = head.next;
+            head.next = head;
+            head.prev = head;
+            while (timeout != head) {
+                Timeout next = timeout.next;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+
+        int run = 0;
+        Timeout head = wheels[0][(int) now & MASK];
+        while (head.next != head) {
+            Timeout timeout = head.next;
+            timeout.unlink();
+            size--;
+            run++;
+            timeout.task.run();
+        }
+        return run;
+    }
+
+    private void insert(Timeout timeout) {
+        long difference = timeout.deadline ^ now;
+        int level = difference == 0 ? 0 : (Long.SIZE - 1 - Long.numberOfLeadingZeros(difference)) / BITS;
+        Timeout head = wheels[level][(int) (timeout.deadline >>> (BITS * level)) & MASK];
+        timeout.wheel = this;
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    /**
+     * scheduled task, also used as list sentinel for each slot
+     */
+    static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private TimingWheel wheel;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        private static Timeout sentinel() {
+            Timeout head = new Timeout(-1, null);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+
+        /**
+         * get tick the task runs on
+         * @return deadline tick
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * check if task is still waiting
+         * @return true if not yet run or cancelled
+         */
+        public boolean isPending() {
+            return next != null;
+        }
+
+        /**
+         * cancel task
+         * @return true if it was pending, otherwise false if it already ran or was cancelled
+         */
+        public boolean cancel() {
+            if (next == null) {
+                return false;
+            }
+            unlink();
+            wheel.size--;
+            return true;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
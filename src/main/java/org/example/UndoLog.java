@@ -0,0 +1,101 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * history of executed actions that can be stepped backward and forward
+ * every action keeps the small inverse delta of what it changed (a chamber, two healths and a guardian,
+ * or an item and a hand), so each step is O(1) and the dungeon is never copied.
+ * executing a new action after undoing drops the actions that could have been redone.
+ * meant for one player's own history, undoing does not know about changes made by other players.
+ * the history is dropped when the dungeon changes level, the old level's chambers are gone for good
+ */
+class UndoLog {
+    private final List<Action> actions = new ArrayList<>();
+    private int done;
+    // level of the dungeon the recorded actions were done on
+    private int level;
+
+    /**
+     * execute action and record it
+     * @param action action to execute
+     */
+    public void execute(Action action) {
+        int before = action.dungeon.getLevel();
+        action.execute();
+        onLevel(action.dungeon.getLevel());
+        if (level != before) {
+            // the action took the player to another level, there is nothing left it could be undone to
+            return;
+        }
+        actions.subList(done, actions.size()).clear();
+        actions.add(action);
+        done++;
+    }
+
+    /**
+     * take back the last done action
+     * @return true if there was an action to undo, otherwise false
+     */
+    public boolean undo() {
+        if (done == 0 || !onLevel()) {
+            return false;
+        }
+        Action action = actions.get(--done);
+        action.undo();
+        action.dungeon.reopen();
+        return true;
+    }
+
+    /**
+     * apply the last undone action again
+     * @return true if there was an action to redo, otherwise false
+     */
+    public boolean redo() {
+        if (done == actions.size() || !onLevel()) {
+            return false;
+        }
+        actions.get(done++).redo();
+        return true;
+    }
+
+    /**
+     * check if anything can be undone
+     * @return true if undo would do something
+     */
+    public boolean canUndo() {
+        return done > 0 && onLevel();
+    }
+
+    /**
+     * check if anything can be redone
+     * @return true if redo would do something
+     */
+    public boolean canRedo() {
+        return done < actions.size() && onLevel();
+    }
+
+    /**
+     * get number of actions currently done
+     * @return actions that undo can take back
+     */
+    public int size() {
+        return onLevel() ? done : 0;
+    }
+
+    private boolean onLevel() {
+        return actions.isEmpty() || onLevel(actions.get(0).dungeon.getLevel());
+    }
+
+    // drops the history if the dungeon is on another level than the one it was recorded on
+    private boolean onLevel(int current) {
+        if (current == level) {
+            return true;
+        }
+        actions.clear();
+        done = 0;
+        level = current;
+        return false;
+    }
+}
@@ -0,0 +1,257 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * growable byte buffer that writes integers as varints, 7 bits per byte with the high bit
+ * marking that another byte follows, so small values take a single byte
+ * call {@link #reset()} to reuse the same buffer for the next message
+ */
+final class VarintWriter {
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * create writer with a small initial buffer
+     */
+    public VarintWriter() {
+        this(64);
+    }
+
+    /**
+     * create writer
+     * @param capacity initial buffer size in bytes
+     */
+    public VarintWriter(int capacity) {
+        this.buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * write unsigned int as varint
+     * @param value value, treated as unsigned
+     */
+    public void writeInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * write unsigned long as varint
+     * @param value value, treated as unsigned
+     */
+    public void writeLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * write signed int with zigzag encoding so small negative numbers stay short
+     * @param value value
+     */
+    public void writeSignedInt(int value) {
+        writeInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * write signed long with zigzag encoding
+     * @param value value
+     */
+    public void writeSignedLong(long value) {
+        writeLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * write string as varint length followed by utf-8 bytes
+     * @param value string
+     */
+    public void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * write a single raw byte
+     * @param value byte value
+     */
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * get number of bytes written
+     * @return size in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * get the internal buffer, only the first {@link #size()} bytes are valid
+     * @return backing array
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * copy written bytes
+     * @return new array with exactly the written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * forget written bytes but keep the buffer
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
+
+/**
+ * reads values written by {@link VarintWriter}
+ */
+final class VarintReader {
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    /**
+     * create reader over a whole array
+     * @param buffer encoded bytes
+     */
+    public VarintReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    /**
+     * create reader over part of an array
+     * @param buffer encoded bytes
+     * @param offset first byte to read
+     * @param length number of bytes to read
+     */
+    public VarintReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * read unsigned varint int
+     * @return value
+     */
+    public int readInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = next();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * read unsigned varint long
+     * @return value
+     */
+    public long readLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = next();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * read zigzag encoded int
+     * @return value
+     */
+    public int readSignedInt() {
+        int raw = readInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * read zigzag encoded long
+     * @return value
+     */
+    public long readSignedLong() {
+        long raw = readLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * read string written by {@link VarintWriter#writeString(String)}
+     * @return string
+     */
+    public String readString() {
+        int length = readInt();
+        if (length < 0 || length > limit - position) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * read the number of entries that follow, each entry takes at least one byte
+     * @return count, never more than the bytes left
+     */
+    public int readCount() {
+        int count = readInt();
+        if (count < 0 || count > limit - position) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        return count;
+    }
+
+    /**
+     * read a single raw byte
+     * @return byte value from 0 to 255
+     */
+    public int readByte() {
+        return next() & 0xFF;
+    }
+
+    /**
+     * check if there is more to read
+     * @return true if bytes remain
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    private byte next() {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        return buffer[position++];
+    }
+}
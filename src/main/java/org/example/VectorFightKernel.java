@@ -0,0 +1,45 @@
+package org.example;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * simd version of {@link FightKernel}, only loaded when the vector module is present
+ */
+final class VectorFightKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorFightKernel() {
+    }
+
+    /**
+     * resolve one round of each fight using full vector lanes, the remainder falls back to the scalar loop
+     * @param count number of fights to resolve
+     * @param playerStat player's strength or craft
+     * @param playerHp player's health
+     * @param monsterStat monster's strength or craft
+     * @param monsterHp monster's health
+     * @param playerRoll player's d6 roll
+     * @param monsterRoll monster's d6 roll
+     */
+    static void resolve(int count, int[] playerStat, int[] playerHp, int[] monsterStat, int[] monsterHp,
+                        int[] playerRoll, int[] monsterRoll) {
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector playerTotal = IntVector.fromArray(SPECIES, playerStat, i)
+                    .add(IntVector.fromArray(SPECIES, playerRoll, i));
+            IntVector monsterTotal = IntVector.fromArray(SPECIES, monsterStat, i)
+                    .add(IntVector.fromArray(SPECIES, monsterRoll, i));
+            IntVector difference = playerTotal.sub(monsterTotal);
+
+            // a positive difference hurts the monster, a negative one hurts the player, zero is a miss
+            IntVector monsterDamage = difference.max(0);
+            IntVector playerDamage = difference.neg().max(0);
+
+            IntVector.fromArray(SPECIES, monsterHp, i).sub(monsterDamage).max(0).intoArray(monsterHp, i);
+            IntVector.fromArray(SPECIES, playerHp, i).sub(playerDamage).max(0).intoArray(playerHp, i);
+        }
+        FightKernel.resolveScalar(i, count, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+    }
+}
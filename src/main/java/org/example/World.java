@@ -0,0 +1,276 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * things that happen on their own between player turns: roaming monsters, guardians regaining health,
+ * and timed effects such as poison or regeneration on any character
+ * everything is driven by {@link #tick()}, which advances a {@link TimingWheel},
+ * so only the events that are due on a tick cost anything
+ */
+class World {
+    private final TimingWheel wheel = new TimingWheel();
+    private final RandomGenerator random;
+    private final Map<Chamber, List<Monster>> roamers = new IdentityHashMap<>();
+
+    /**
+     * create world
+     * @param random random source for roaming monsters
+     */
+    public World(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * advance world by one tick
+     * @return number of events that ran
+     */
+    public int tick() {
+        return wheel.tick();
+    }
+
+    /**
+     * get current tick
+     * @return current tick
+     */
+    public long now() {
+        return wheel.now();
+    }
+
+    /**
+     * get number of scheduled events
+     * @return pending events
+     */
+    public int pending() {
+        return wheel.size();
+    }
+
+    /**
+     * run a task once after a delay
+     * @param delay ticks to wait
+     * @param task task to run
+     * @return handle to cancel the task
+     */
+    public TimingWheel.Timeout schedule(long delay, Runnable task) {
+        return wheel.schedule(delay, task);
+    }
+
+    /**
+     * let a door guardian regain health every few ticks until it is defeated
+     * @param door door the guardian is at
+     * @param amount health regained each time
+     * @param period ticks between regains
+     * @return regeneration, stops by itself once the guardian is gone and can be cancelled at any time
+     */
+    public Regeneration regenerate(Door door, int amount, int period) {
+        Monster guardian = door.getGuardian();
+        if (guardian == null) {
+            throw new IllegalArgumentException("Door has no guardian");
+        }
+        Regeneration regeneration = new Regeneration(door, guardian, amount, period);
+        regeneration.next = wheel.schedule(period, regeneration);
+        return regeneration;
+    }
+
+    /**
+     * apply an effect to a character every few ticks
+     * @param target character affected
+     * @param amount health change each time, negative for poison and positive for regeneration
+     * @param period ticks between changes
+     * @param times how many times the effect applies
+     * @return effect, can be cancelled at any time
+     */
+    public Effect applyEffect(Character target, int amount, int period, int times) {
+        if (times < 1) {
+            throw new IllegalArgumentException("Effect must apply at least once");
+        }
+        Effect effect = new Effect(target, amount, period, times);
+        effect.next = wheel.schedule(period, effect);
+        return effect;
+    }
+
+    /**
+     * add a monster that wanders to a random neighbouring chamber every few ticks
+     * @param monster roaming monster
+     * @param start chamber it starts in
+     * @param period ticks between moves
+     * @return roamer, leaves the world once the monster dies or it is cancelled
+     */
+    public Roamer addRoamer(Monster monster, Chamber start, int period) {
+        roamers.computeIfAbsent(start, chamber -> new ArrayList<>()).add(monster);
+        Roamer roamer = new Roamer(monster, start, period);
+        roamer.next = wheel.schedule(period, roamer);
+        return roamer;
+    }
+
+    /**
+     * get roaming monsters in a chamber
+     * @param chamber chamber to look in
+     * @return monsters currently in that chamber
+     */
+    public List<Monster> getRoamers(Chamber chamber) {
+        List<Monster> here = roamers.get(chamber);
+        return here == null ? List.of() : List.copyOf(here);
+    }
+
+    private void leave(Chamber chamber, Monster monster) {
+        List<Monster> here = roamers.get(chamber);
+        here.remove(monster);
+        if (here.isEmpty()) {
+            roamers.remove(chamber);
+        }
+    }
+
+    /**
+     * door guardian regaining health
+     */
+    final class Regeneration implements Runnable {
+        private final Door door;
+        private final Monster guardian;
+        private final int amount;
+        private final int period;
+        private TimingWheel.Timeout next;
+
+        private Regeneration(Door door, Monster guardian, int amount, int period) {
+            this.door = door;
+            this.guardian = guardian;
+            this.amount = amount;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (door.getGuardian() == guardian && guardian.isAlive()) {
+                guardian.heal(amount);
+                next = wheel.schedule(period, this);
+            }
+        }
+
+        /**
+         * check if the guardian still regains health
+         * @return true until the guardian is gone or the regeneration is cancelled
+         */
+        public boolean isActive() {
+            return next.isPending();
+        }
+
+        /**
+         * stop regeneration
+         */
+        public void cancel() {
+            next.cancel();
+        }
+    }
+
+    /**
+     * monster wandering between chambers
+     */
+    final class Roamer implements Runnable {
+        private final Monster monster;
+        private final int period;
+        private Chamber current;
+        private TimingWheel.Timeout next;
+
+        private Roamer(Monster monster, Chamber start, int period) {
+            this.monster = monster;
+            this.current = start;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (!monster.isAlive()) {
+                leave(current, monster);
+                return;
+            }
+            List<Door> doors = current.getDoors();
+            if (!doors.isEmpty()) {
+                Chamber to = doors.get(random.nextInt(doors.size())).getOtherChamber(current);
+                leave(current, monster);
+                roamers.computeIfAbsent(to, chamber -> new ArrayList<>()).add(monster);
+                current = to;
+            }
+            next = wheel.schedule(period, this);
+        }
+
+        /**
+         * get chamber the monster is in
+         * @return current chamber
+         */
+        public Chamber getChamber() {
+            return current;
+        }
+
+        /**
+         * check if the monster still roams
+         * @return true until it dies or the roamer is cancelled
+         */
+        public boolean isActive() {
+            return next.isPending();
+        }
+
+        /**
+         * stop roaming and take the monster out of the world
+         */
+        public void cancel() {
+            if (next.cancel()) {
+                leave(current, monster);
+            }
+        }
+    }
+
+    /**
+     * repeating health change on one character
+     */
+    final class Effect implements Runnable {
+        private final Character target;
+        private final int amount;
+        private final int period;
+        private int remaining;
+        private TimingWheel.Timeout next;
+
+        private Effect(Character target, int amount, int period, int times) {
+            this.target = target;
+            this.amount = amount;
+            this.period = period;
+            this.remaining = times;
+        }
+
+        @Override
+        public void run() {
+            if (!target.isAlive()) {
+                remaining = 0;
+                return;
+            }
+            if (amount < 0) {
+                target.takeDamage(-amount);
+            } else {
+                target.heal(amount);
+            }
+            if (--remaining > 0) {
+                next = wheel.schedule(period, this);
+            }
+        }
+
+        /**
+         * get times the effect still applies
+         * @return remaining applications
+         */
+        public int getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * stop effect
+         */
+        public void cancel() {
+            if (next.cancel()) {
+                remaining = 0;
+            }
+        }
+    }
+}
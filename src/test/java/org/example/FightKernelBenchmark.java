@@ -0,0 +1,95 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jmh comparison of the scalar and simd fight kernels
+ * run with: mvn test-compile, then start main with the test classpath
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FightKernelBenchmark {
+    @Param({"1024", "65536"})
+    private int fights;
+
+    private int[] playerStat;
+    private int[] monsterStat;
+    private int[] playerRoll;
+    private int[] monsterRoll;
+    private int[] startPlayerHp;
+    private int[] startMonsterHp;
+    private int[] playerHp;
+    private int[] monsterHp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        playerStat = new int[fights];
+        monsterStat = new int[fights];
+        playerRoll = new int[fights];
+        monsterRoll = new int[fights];
+        startPlayerHp = new int[fights];
+        startMonsterHp = new int[fights];
+        for (int i = 0; i < fights; i++) {
+            playerStat[i] = random.nextInt(8);
+            monsterStat[i] = random.nextInt(6);
+            startPlayerHp[i] = 15 + random.nextInt(6);
+            startMonsterHp[i] = 3 + random.nextInt(5);
+        }
+        FightKernel.roll(random, playerRoll, fights);
+        FightKernel.roll(random, monsterRoll, fights);
+        playerHp = new int[fights];
+        monsterHp = new int[fights];
+    }
+
+    // every call starts from the same health, the copy is part of each benchmark and measured alone by copy()
+    private void resetHealth() {
+        System.arraycopy(startPlayerHp, 0, playerHp, 0, fights);
+        System.arraycopy(startMonsterHp, 0, monsterHp, 0, fights);
+    }
+
+    @Benchmark
+    public int[] copy() {
+        resetHealth();
+        return monsterHp;
+    }
+
+    @Benchmark
+    public int[] scalar() {
+        resetHealth();
+        FightKernel.resolveScalar(0, fights, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        return monsterHp;
+    }
+
+    @Benchmark
+    public int[] vector() {
+        resetHealth();
+        VectorFightKernel.resolve(fights, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        return monsterHp;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FightKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
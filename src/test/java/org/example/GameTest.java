@@ -2,6 +2,47 @@ package org.example;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -545,4 +586,2354 @@ class ActionTest {
         assertDoesNotThrow(() -> printError.execute());
         assertTrue(printError.toString().contains("Error"));
     }
-}
\ No newline at end of file
+}
+
+/**
+ * test class for several players sharing one dungeon
+ */
+class SharedWorldTest {
+    /**
+     * test only one player can claim an item when many race for it
+     */
+    @Test
+    void testConcurrentPickClaimsItemOnce() throws Exception {
+        Item axe = new Axe();
+        Chamber chamber = new Chamber(axe);
+        int players = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(players);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger claims = new AtomicInteger();
+
+        for (int i = 0; i < players; i++) {
+            pool.submit(() -> {
+                start.await();
+                if (chamber.removeItem(axe)) {
+                    claims.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, claims.get());
+        assertTrue(chamber.getItems().isEmpty());
+    }
+
+    /**
+     * test concurrent damage is never lost and guardian is removed exactly once
+     */
+    @Test
+    void testConcurrentGuardianDamage() throws Exception {
+        Monster troll = new Monster("Troll", 5, 0, 1000);
+        Door door = Door.connect(new Chamber(), new Chamber(), troll);
+        int players = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(players);
+        AtomicInteger removals = new AtomicInteger();
+        Future<?>[] futures = new Future<?>[players];
+
+        for (int i = 0; i < players; i++) {
+            futures[i] = pool.submit(() -> {
+                for (int hit = 0; hit < 200; hit++) {
+                    if (!troll.takeDamage(1) && door.removeGuardian(troll)) {
+                        removals.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        assertEquals(0, troll.getHealth());
+        assertEquals(1, removals.get());
+        assertFalse(door.isLocked());
+    }
+
+    /**
+     * test fighting a guardian that another player already defeated
+     */
+    @Test
+    void testFightAlreadyDefeatedGuardian() {
+        Chamber chamber1 = new Chamber();
+        Chamber chamber2 = new Chamber();
+        Monster goblin = new Monster("Goblin", 1, 0, 3);
+        Door door = Door.connect(chamber1, chamber2, goblin);
+        Character player = new Wizard("Gandalf");
+        Dungeon dungeon = new Dungeon(player, chamber1, chamber2);
+        Fight fight = new Fight(dungeon, goblin, door);
+
+        goblin.takeDamage(3);
+        fight.execute();
+
+        assertFalse(door.isLocked());
+        assertNull(door.getGuardian());
+        assertEquals(15, player.getHealth());
+    }
+}
+
+/**
+ * test class for batch fight kernel
+ */
+class FightKernelTest {
+    /**
+     * test kernel follows the fight rules for a hit, a loss and a miss
+     */
+    @Test
+    void testKernelMatchesFightRules() {
+        int[] playerStat = {5, 2, 3};
+        int[] playerHp = {15, 15, 15};
+        int[] monsterStat = {1, 3, 3};
+        int[] monsterHp = {3, 5, 5};
+        int[] playerRoll = {4, 1, 2};
+        int[] monsterRoll = {2, 6, 2};
+
+        FightKernel.resolve(3, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+
+        assertArrayEquals(new int[]{0, 5, 5}, monsterHp);
+        assertArrayEquals(new int[]{15, 9, 15}, playerHp);
+    }
+
+    /**
+     * test vector and scalar paths give identical results, including the tail lanes
+     */
+    @Test
+    void testVectorMatchesScalar() {
+        SplittableRandom random = new SplittableRandom(7);
+        int count = 1003;
+        int[] playerStat = new int[count];
+        int[] monsterStat = new int[count];
+        int[] playerHp = new int[count];
+        int[] monsterHp = new int[count];
+        int[] playerRoll = new int[count];
+        int[] monsterRoll = new int[count];
+        for (int i = 0; i < count; i++) {
+            playerStat[i] = random.nextInt(10);
+            monsterStat[i] = random.nextInt(10);
+            playerHp[i] = random.nextInt(20);
+            monsterHp[i] = random.nextInt(20);
+        }
+        FightKernel.roll(random, playerRoll, count);
+        FightKernel.roll(random, monsterRoll, count);
+        int[] scalarPlayerHp = playerHp.clone();
+        int[] scalarMonsterHp = monsterHp.clone();
+
+        VectorFightKernel.resolve(count, playerStat, playerHp, monsterStat, monsterHp, playerRoll, monsterRoll);
+        FightKernel.resolveScalar(0, count, playerStat, scalarPlayerHp, monsterStat, scalarMonsterHp, playerRoll, monsterRoll);
+
+        assertArrayEquals(scalarPlayerHp, playerHp);
+        assertArrayEquals(scalarMonsterHp, monsterHp);
+    }
+}
+
+/**
+ * test class for balance sweep
+ */
+class BalanceSweepTest {
+    private BalanceSweep sweep(long seed) {
+        return new BalanceSweep(new BalanceSweep.Range(0, 2, 2), BalanceSweep.Range.of(3), BalanceSweep.Range.of(3),
+                BalanceSweep.Range.of(15), BalanceSweep.Range.of(2), BalanceSweep.Range.of(5),
+                List.of("none", "Axe+Shield"), 200, seed);
+    }
+
+    /**
+     * test sweep writes header and one row per grid point
+     */
+    @Test
+    void testSweepWritesRowPerCell() throws Exception {
+        BalanceSweep sweep = sweep(1);
+        StringWriter out = new StringWriter();
+        sweep.run(out, 2);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(4, sweep.cellCount());
+        assertEquals(BalanceSweep.HEADER, lines[0]);
+        assertEquals(5, lines.length);
+    }
+
+    /**
+     * test same seed gives same results and items help
+     */
+    @Test
+    void testSimulationIsRepeatable() {
+        BalanceSweep.CellResult first = sweep(3).simulate(1);
+        BalanceSweep.CellResult second = sweep(3).simulate(1);
+
+        assertEquals("Axe+Shield", first.getCell().itemSet());
+        assertEquals(first.toCsv(), second.toCsv());
+        assertEquals(200, first.getGames());
+        assertTrue(first.winRate() > 0.5);
+        assertTrue(first.meanTurns() >= 6);
+    }
+}
+
+/**
+ * test class for replays
+ */
+class ReplayTest {
+    private Replay playRecorded(long seed) {
+        Layout layout = Replay.start(Layout.STANDARD, seed);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        ReplayRecorder recorder = new ReplayRecorder(Layout.STANDARD, seed);
+        GreedyPolicy policy = new GreedyPolicy();
+        while (!dungeon.isFinished()) {
+            List<Action> actions = dungeon.getActions();
+            int choice = policy.choose(dungeon, actions);
+            recorder.record(choice);
+            actions.get(choice).execute();
+        }
+        return recorder.finish(layout);
+    }
+
+    /**
+     * test varints round trip, including negative and large values
+     */
+    @Test
+    void testVarintRoundTrip() {
+        VarintWriter out = new VarintWriter(1);
+        out.writeInt(0);
+        out.writeInt(127);
+        out.writeInt(300);
+        out.writeSignedLong(-5);
+        out.writeSignedLong(Long.MIN_VALUE);
+        assertEquals(1 + 1 + 2 + 1 + 10, out.size());
+
+        VarintReader in = new VarintReader(out.toByteArray());
+        assertEquals(0, in.readInt());
+        assertEquals(127, in.readInt());
+        assertEquals(300, in.readInt());
+        assertEquals(-5, in.readSignedLong());
+        assertEquals(Long.MIN_VALUE, in.readSignedLong());
+        assertFalse(in.hasRemaining());
+    }
+
+    /**
+     * test recorded game encodes compactly and verifies
+     */
+    @Test
+    void testRecordedGameVerifies() {
+        Replay replay = playRecorded(42);
+        byte[] data = replay.encode();
+
+        assertTrue(data.length < 20 + replay.getChoices().length);
+        assertNotEquals(Replay.FinalState.PLAYING, replay.getFinalState().outcome());
+        assertTrue(ReplayVerifier.verify(data));
+    }
+
+    /**
+     * test tampered replays are rejected, checked in parallel
+     */
+    @Test
+    void testTamperedReplayFails() {
+        List<byte[]> replays = new ArrayList<>();
+        for (long seed = 0; seed < 50; seed++) {
+            replays.add(playRecorded(seed).encode());
+        }
+        Replay good = Replay.decode(replays.get(7));
+        Replay.FinalState state = good.getFinalState();
+        Replay forged = new Replay(good.getLayoutId(), good.getSeed(), good.getChoices(),
+                new Replay.FinalState(state.outcome(), state.health() + 1, state.chamber()));
+        replays.set(7, forged.encode());
+        replays.set(9, new byte[]{1, 0});
+
+        assertArrayEquals(new int[]{7, 9}, ReplayVerifier.verifyAll(replays, 4));
+    }
+
+    /**
+     * test a choice count that is negative or past the end of the data is rejected
+     */
+    @Test
+    void testCorruptCountFails() {
+        Replay good = playRecorded(3);
+        for (int count : new int[]{-1, Integer.MAX_VALUE, good.getChoices().length + 1}) {
+            VarintWriter out = new VarintWriter();
+            out.writeByte(Replay.VERSION);
+            out.writeInt(good.getLayoutId());
+            out.writeSignedLong(good.getSeed());
+            out.writeInt(count);
+            for (int choice : good.getChoices()) {
+                out.writeInt(choice);
+            }
+            byte[] corrupt = out.toByteArray();
+            assertThrows(IllegalArgumentException.class, () -> Replay.decode(corrupt));
+            assertFalse(ReplayVerifier.verify(corrupt));
+        }
+    }
+}
+
+/**
+ * test class for spectator event stream
+ */
+class SpectatorPublisherTest {
+    /**
+     * subscriber that records events and requests only when told to
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<GameEvent> {
+        final List<GameEvent> events = new CopyOnWriteArrayList<>();
+        Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(GameEvent item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private Dungeon corridor(int length, SpectatorPublisher publisher) {
+        Chamber[] chambers = new Chamber[length];
+        for (int i = 0; i < length; i++) {
+            chambers[i] = new Chamber();
+        }
+        for (int i = 1; i < length; i++) {
+            Door.connect(chambers[i - 1], chambers[i]);
+        }
+        Dungeon dungeon = new Dungeon(new Wizard("Gandalf"), chambers[0], chambers[length - 1]);
+        dungeon.setNarrated(false);
+        dungeon.addListener(publisher);
+        return dungeon;
+    }
+
+    private void walk(Dungeon dungeon) {
+        while (!dungeon.isFinished()) {
+            List<Action> actions = dungeon.getActions();
+            actions.get(actions.size() - 1).execute();
+        }
+    }
+
+    /**
+     * test drop oldest keeps the newest events, ending with the finished event
+     */
+    @Test
+    void testDropOldestKeepsNewest() {
+        SpectatorPublisher publisher = new SpectatorPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, SpectatorPublisher.Overflow.DROP_OLDEST, 2);
+        Dungeon dungeon = corridor(6, publisher);
+
+        walk(dungeon);
+        subscriber.subscription.request(10);
+
+        assertEquals(2, subscriber.events.size());
+        assertTrue(subscriber.events.get(0) instanceof GameEvent.Moved);
+        assertEquals(new GameEvent.Finished(dungeon, true), subscriber.events.get(1));
+    }
+
+    /**
+     * test block policy loses nothing even with a tiny buffer, and completes on close
+     */
+    @Test
+    void testBlockIsLossless() {
+        SpectatorPublisher publisher = new SpectatorPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, SpectatorPublisher.Overflow.BLOCK, 1);
+        walk(corridor(6, publisher));
+        publisher.close();
+
+        for (int i = 0; i < 6; i++) {
+            subscriber.subscription.request(1);
+        }
+
+        assertEquals(6, subscriber.events.size());
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    /**
+     * test slow subscriber does not slow down the player
+     */
+    @Test
+    void testSlowSubscriberDoesNotBlockPlayer() throws Exception {
+        SpectatorPublisher publisher = new SpectatorPublisher();
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSubscriber slow = new RecordingSubscriber() {
+            @Override
+            public void onNext(GameEvent item) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onNext(item);
+            }
+        };
+        publisher.subscribe(slow, SpectatorPublisher.Overflow.BLOCK, 1);
+        slow.subscription.request(Long.MAX_VALUE);
+        Dungeon dungeon = corridor(200, publisher);
+
+        long start = System.nanoTime();
+        walk(dungeon);
+        long elapsed = System.nanoTime() - start;
+        release.countDown();
+
+        assertTrue(dungeon.isFinished());
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * test block policy fails a subscriber that never requests instead of keeping every event
+     */
+    @Test
+    void testBlockFailsWhenTooFarBehind() {
+        SpectatorPublisher publisher = new SpectatorPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, SpectatorPublisher.Overflow.BLOCK, 1);
+        GameEvent event = new GameEvent.Finished(null, false);
+
+        // one event for the buffer, a full waiting queue and one more
+        for (int i = 0; i < 1 + SpectatorPublisher.MAX_WAITING + 1; i++) {
+            publisher.onEvent(event);
+        }
+
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertTrue(subscriber.events.isEmpty());
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    /**
+     * test a request that is not positive fails the subscriber from the delivery task, not the caller
+     */
+    @Test
+    void testBadRequestFailsOnDeliveryTask() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        SpectatorPublisher publisher = new SpectatorPublisher(tasks::add);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertNull(subscriber.error);
+        assertEquals(0, publisher.getSubscriberCount());
+
+        tasks.poll().run();
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertFalse(subscriber.completed);
+    }
+}
+
+/**
+ * test class for timing wheel and world ticks
+ */
+class WorldTest {
+    /**
+     * test tasks run exactly on their tick, also across level boundaries
+     */
+    @Test
+    void testTasksRunOnDeadline() {
+        TimingWheel wheel = new TimingWheel();
+        List<Long> ran = new ArrayList<>();
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 5000, 300000};
+        for (long delay : delays) {
+            wheel.schedule(delay, () -> ran.add(wheel.now()));
+        }
+        while (wheel.size() > 0) {
+            wheel.tick();
+        }
+
+        assertEquals(Arrays.asList(1L, 63L, 64L, 65L, 4095L, 4096L, 5000L, 300000L), ran);
+    }
+
+    /**
+     * test cancelled tasks never run
+     */
+    @Test
+    void testCancel() {
+        TimingWheel wheel = new TimingWheel();
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timeout keep = wheel.schedule(100, runs::incrementAndGet);
+        TimingWheel.Timeout drop = wheel.schedule(100, runs::incrementAndGet);
+
+        assertTrue(drop.cancel());
+        assertFalse(drop.cancel());
+        for (int i = 0; i < 100; i++) {
+            wheel.tick();
+        }
+
+        assertEquals(1, runs.get());
+        assertFalse(keep.isPending());
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * test poison hurts on schedule and guardian regenerates up to its health
+     */
+    @Test
+    void testEffectsAndRegeneration() {
+        World world = new World(new SplittableRandom(1));
+        Character player = new Wizard("Gandalf");
+        Monster goblin = new Monster("Goblin", 1, 0, 3);
+        Door door = Door.connect(new Chamber(), new Chamber(), goblin);
+        goblin.takeDamage(2);
+
+        World.Effect poison = world.applyEffect(player, -2, 3, 2);
+        world.regenerate(door, 1, 2);
+        for (int i = 0; i < 10; i++) {
+            world.tick();
+        }
+
+        assertEquals(11, player.getHealth());
+        assertEquals(0, poison.getRemaining());
+        assertEquals(3, goblin.getHealth());
+    }
+
+    /**
+     * test roaming monster moves to neighbouring chambers
+     */
+    @Test
+    void testRoamerMoves() {
+        World world = new World(new SplittableRandom(1));
+        Chamber first = new Chamber();
+        Chamber second = new Chamber();
+        Door.connect(first, second);
+        Monster wolf = new Monster("Wolf", 2, 0, 4);
+
+        world.addRoamer(wolf, first, 5);
+        assertEquals(List.of(wolf), world.getRoamers(first));
+        for (int i = 0; i < 5; i++) {
+            world.tick();
+        }
+
+        assertTrue(world.getRoamers(first).isEmpty());
+        assertEquals(List.of(wolf), world.getRoamers(second));
+    }
+
+    /**
+     * test handles still cancel after their task rescheduled itself
+     */
+    @Test
+    void testCancelAfterReschedule() {
+        World world = new World(new SplittableRandom(1));
+        Chamber first = new Chamber();
+        Chamber second = new Chamber();
+        Monster goblin = new Monster("Goblin", 1, 0, 10);
+        Door door = Door.connect(first, second, goblin);
+        goblin.takeDamage(8);
+        Monster wolf = new Monster("Wolf", 2, 0, 4);
+
+        World.Regeneration regeneration = world.regenerate(door, 1, 2);
+        World.Roamer roamer = world.addRoamer(wolf, first, 2);
+        for (int i = 0; i < 6; i++) {
+            world.tick();
+        }
+        assertEquals(5, goblin.getHealth());
+        regeneration.cancel();
+        roamer.cancel();
+        for (int i = 0; i < 6; i++) {
+            world.tick();
+        }
+
+        assertEquals(5, goblin.getHealth());
+        assertFalse(regeneration.isActive());
+        assertFalse(roamer.isActive());
+        assertTrue(world.getRoamers(roamer.getChamber()).isEmpty());
+        assertEquals(0, world.pending());
+    }
+}
+
+/**
+ * test class for dungeon validator
+ */
+class DungeonValidatorTest {
+    /**
+     * test standard layout is valid but needs fights
+     */
+    @Test
+    void testStandardLayout() {
+        DungeonValidator.Report report = DungeonValidator.validate(Layout.create(Layout.STANDARD));
+
+        assertTrue(report.isValid());
+        assertTrue(report.goalReachable());
+        assertFalse(report.goalReachableUnguarded());
+        assertEquals(1, report.components());
+    }
+
+    /**
+     * test cut off goal and orphaned chambers are reported
+     */
+    @Test
+    void testOrphanedChambers() {
+        Chamber[] chambers = new Chamber[6];
+        for (int i = 0; i < chambers.length; i++) {
+            chambers[i] = new Chamber();
+        }
+        Door.connect(chambers[0], chambers[1]);
+        Door.connect(chambers[1], chambers[0]);
+        Door.connect(chambers[2], chambers[3]);
+        Door.connect(chambers[3], chambers[4], new Monster("Troll", 4, 0, 8));
+
+        DungeonValidator.Report report = DungeonValidator.validate(chambers, chambers[0], chambers[4]);
+
+        assertFalse(report.goalReachable());
+        assertFalse(report.isValid());
+        assertEquals(3, report.components());
+        assertEquals(2, report.orphanedComponents());
+        assertArrayEquals(new int[]{2, 3, 4, 5}, report.orphanedChambers());
+    }
+}
+
+/**
+ * test class for markov chain analysis
+ */
+class MarkovAnalyzerTest {
+    /**
+     * test exact result of a single guardian matches simulated games
+     */
+    @Test
+    void testSingleFightMatchesSimulation() {
+        Monster troll = new Monster("Troll", 3, 0, 6);
+        Chamber start = new Chamber();
+        Chamber goal = new Chamber();
+        Door.connect(start, goal, troll);
+        MarkovAnalyzer analyzer = new MarkovAnalyzer(new Chamber[]{start, goal}, start, goal, new Wizard("Gandalf"));
+
+        MarkovAnalyzer.Result result = analyzer.analyze(analyzer.towardsGoal());
+
+        SplittableRandom dice = new SplittableRandom(5);
+        int games = 20000;
+        int wins = 0;
+        long turns = 0;
+        for (int game = 0; game < games; game++) {
+            Chamber simStart = new Chamber();
+            Chamber simGoal = new Chamber();
+            Door.connect(simStart, simGoal, new Monster("Troll", 3, 0, 6));
+            Dungeon dungeon = new Dungeon(new Wizard("Gandalf"), simStart, simGoal);
+            dungeon.setNarrated(false);
+            dungeon.setDice(dice);
+            turns += Simulation.play(dungeon, new GreedyPolicy(), 1000);
+            if (dungeon.isWon()) {
+                wins++;
+            }
+        }
+
+        assertTrue(result.converged());
+        assertEquals((double) wins / games, result.winProbability(), 0.02);
+        assertEquals((double) turns / games, result.expectedTurns(), 0.3);
+    }
+
+    /**
+     * test standard layout is usually but not always won
+     */
+    @Test
+    void testStandardLayout() {
+        Layout layout = Layout.create(Layout.STANDARD);
+        MarkovAnalyzer analyzer = new MarkovAnalyzer(layout);
+
+        MarkovAnalyzer.Result result = analyzer.analyze(analyzer.towardsGoal());
+
+        assertTrue(result.converged());
+        assertTrue(result.winProbability() > 0.9 && result.winProbability() < 1);
+        assertTrue(result.expectedTurns() > 6);
+        assertTrue(result.states() > 10);
+    }
+}
+
+/**
+ * test class for http game server
+ */
+class GameServerTest {
+    private static HttpResponse<String> send(HttpClient client, String method, String url)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * test json writer escapes strings and separates members
+     */
+    @Test
+    void testJsonWriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonWriter(out).beginObject().name("a").value(-12).name("b").beginArray().value(true).value("x\"\n")
+                .endArray().endObject();
+
+        assertEquals("{\"a\":-12,\"b\":[true,\"x\\\"\\u000a\"]}", out.toString());
+    }
+
+    /**
+     * test creating a session, listing actions, playing and streaming events
+     */
+    @Test
+    void testPlayOverHttp() throws Exception {
+        try (GameServer server = new GameServer()) {
+            String base = "http://localhost:" + server.start(0) + "/sessions";
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> created = send(client, "POST", base);
+            assertEquals(201, created.statusCode());
+            assertTrue(created.body().contains("\"id\":1"));
+            assertTrue(created.body().contains("\"chamber\":0"));
+
+            CompletableFuture<HttpResponse<Stream<String>>> events =
+                    client.sendAsync(HttpRequest.newBuilder(URI.create(base + "/1/events")).build(),
+                            HttpResponse.BodyHandlers.ofLines());
+            Iterator<String> lines = events.get(5, TimeUnit.SECONDS).body().iterator();
+
+            HttpResponse<String> actions = send(client, "GET", base + "/1/actions");
+            assertEquals("[{\"index\":0,\"description\":\"Move through Unguarded door to another chamber\"}]",
+                    actions.body());
+
+            HttpResponse<String> moved = send(client, "POST", base + "/1/actions/0");
+            assertEquals(200, moved.statusCode());
+            assertTrue(moved.body().contains("\"chamber\":1"));
+            assertEquals(400, send(client, "POST", base + "/1/actions/9").statusCode());
+            assertEquals(404, send(client, "GET", base + "/7").statusCode());
+
+            assertEquals("event: moved", lines.next());
+            assertEquals("data: {\"from\":0,\"to\":1}", lines.next());
+        }
+    }
+}
+
+/**
+ * test class for parking sessions off the heap
+ */
+class SessionStoreTest {
+    /**
+     * test a parked session comes back with the same state and the same actions
+     */
+    @Test
+    void testParkAndRehydrate() {
+        Layout layout = Layout.create(Layout.STANDARD_WARRIOR);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.getActions().get(0).execute();
+        dungeon.getActions().get(dungeon.getActions().size() - 1).execute();
+        dungeon.getPlayer().takeDamage(4);
+        layout.getChambers()[2].addItem(new Trinket("Amulet", 0, 2));
+        List<String> before = new ArrayList<>();
+        dungeon.getActions().forEach(action -> before.add(action.toString()));
+        SpectatorPublisher publisher = new SpectatorPublisher(Runnable::run);
+        dungeon.addListener(publisher);
+
+        SessionStore store = new SessionStore(0);
+        store.add(1, layout);
+        assertEquals(1, store.parkIdle());
+        assertTrue(store.isParked(1));
+        assertTrue(store.parkedBytes() > 0);
+
+        List<String> after = store.withSession(1, restored -> {
+            List<String> actions = new ArrayList<>();
+            restored.getDungeon().getActions().forEach(action -> actions.add(action.toString()));
+            return actions;
+        });
+        Layout restored = store.withSession(1, l -> l);
+
+        assertFalse(store.isParked(1));
+        assertEquals(0, store.parkedBytes());
+        assertNotSame(layout, restored);
+        assertEquals(before, after);
+        assertEquals(16, restored.getDungeon().getPlayer().getHealth());
+        assertEquals("Axe", restored.getDungeon().getPlayer().getLeftHand().getName());
+        assertEquals(1, restored.indexOf(restored.getDungeon().getCurrentChamber()));
+        assertFalse(restored.getDungeon().isNarrated());
+        assertEquals(List.of(publisher), restored.getDungeon().getListeners());
+    }
+
+    /**
+     * test sessions in recent use are not parked
+     */
+    @Test
+    void testActiveSessionsStayOnHeap() {
+        SessionStore store = new SessionStore(TimeUnit.HOURS.toNanos(1));
+        store.add(1, Layout.create(Layout.STANDARD));
+
+        assertEquals(0, store.parkIdle());
+        assertFalse(store.isParked(1));
+        assertTrue(store.remove(1));
+        assertFalse(store.contains(1));
+    }
+}
+
+/**
+ * test class for undo and redo
+ */
+class UndoLogTest {
+    /**
+     * test undoing a winning fight restores both healths and the guardian, and redo gives the same result
+     */
+    @Test
+    void testUndoFight() {
+        Chamber a = new Chamber();
+        Chamber b = new Chamber();
+        Monster rat = new Monster("Rat", 0, 0, 1);
+        Door door = Door.connect(a, b, rat);
+        Dungeon dungeon = new Dungeon(new Warrior("Conan"), a, b);
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(1));
+        UndoLog log = new UndoLog();
+
+        while (door.getGuardian() != null) {
+            log.execute(new Fight(dungeon, rat, door));
+        }
+        int health = dungeon.getPlayer().getHealth();
+        int fights = log.size();
+
+        while (log.undo()) {
+        }
+        assertSame(rat, door.getGuardian());
+        assertEquals(1, rat.getHealth());
+        assertEquals(dungeon.getPlayer().getMaxHealth(), dungeon.getPlayer().getHealth());
+
+        while (log.redo()) {
+        }
+        assertEquals(fights, log.size());
+        assertNull(door.getGuardian());
+        assertFalse(rat.isAlive());
+        assertEquals(health, dungeon.getPlayer().getHealth());
+    }
+
+    /**
+     * test undoing a pick puts the item back where it was and clears the hand
+     */
+    @Test
+    void testUndoPick() {
+        Chamber a = new Chamber();
+        Axe axe = new Axe();
+        Shield shield = new Shield();
+        a.addItem(axe);
+        a.addItem(shield);
+        Dungeon dungeon = new Dungeon(new Wizard("Gandalf"), a, new Chamber());
+        dungeon.setNarrated(false);
+        UndoLog log = new UndoLog();
+
+        log.execute(new Pick(dungeon, axe));
+        log.execute(new Pick(dungeon, shield));
+        assertSame(shield, dungeon.getPlayer().getRightHand());
+
+        log.undo();
+        log.undo();
+        assertEquals(List.of(axe, shield), a.getItems());
+        assertNull(dungeon.getPlayer().getLeftHand());
+        assertNull(dungeon.getPlayer().getRightHand());
+        assertTrue(dungeon.getPlayer().getInventory().isEmpty());
+
+        log.redo();
+        assertSame(axe, dungeon.getPlayer().getLeftHand());
+        assertEquals(List.of(shield), a.getItems());
+    }
+
+    /**
+     * test executing after an undo drops the redo history and moves can be walked back
+     */
+    @Test
+    void testNewActionDropsRedo() {
+        Layout layout = Layout.create(Layout.STANDARD);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        UndoLog log = new UndoLog();
+
+        log.execute(dungeon.getActions().get(0));
+        assertEquals(1, layout.indexOf(dungeon.getCurrentChamber()));
+        log.undo();
+        assertEquals(0, layout.indexOf(dungeon.getCurrentChamber()));
+        assertTrue(log.canRedo());
+
+        log.execute(dungeon.getActions().get(0));
+        assertFalse(log.canRedo());
+        assertFalse(log.redo());
+        assertEquals(1, log.size());
+    }
+
+    /**
+     * test undoing the winning move lets the game finish again and send a new finished event
+     */
+    @Test
+    void testUndoFinishedGame() {
+        Chamber a = new Chamber();
+        Chamber b = new Chamber();
+        Door.connect(a, b);
+        Dungeon dungeon = new Dungeon(new Wizard("Gandalf"), a, b);
+        dungeon.setNarrated(false);
+        List<GameEvent> events = new ArrayList<>();
+        dungeon.addListener(events::add);
+        UndoLog log = new UndoLog();
+
+        log.execute(dungeon.getActions().get(0));
+        assertTrue(dungeon.isFinished());
+        log.undo();
+        assertFalse(dungeon.isFinished());
+        log.execute(dungeon.getActions().get(0));
+
+        assertEquals(2, events.stream().filter(event -> event instanceof GameEvent.Finished).count());
+    }
+}
+
+/**
+ * test class for path hints
+ */
+class PathHintTest {
+    /**
+     * test the hint follows the standard layout and gets shorter when the goblin is defeated or an item is picked
+     */
+    @Test
+    void testHintUpdatesFromEvents() {
+        Layout layout = Layout.create(Layout.STANDARD);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        PathHint hint = PathHint.of(layout);
+        dungeon.addListener(hint);
+        Chamber[] chambers = layout.getChambers();
+
+        assertSame(chambers[0].getDoors().get(0), hint.next(chambers[0]));
+        assertNull(hint.next(chambers[4]));
+        int start = hint.distance(chambers[0]);
+
+        dungeon.getActions().get(0).execute();
+        Action pick = dungeon.getActions().get(2);
+        assertInstanceOf(Pick.class, pick);
+        pick.execute();
+        assertTrue(hint.distance(chambers[0]) < start);
+
+        Door goblinDoor = chambers[1].getDoors().get(1);
+        Monster goblin = goblinDoor.getGuardian();
+        goblin.setHealth(0);
+        goblinDoor.removeGuardian(goblin);
+        hint.refresh(goblinDoor);
+        assertEquals(1 + 1 + hint.distance(chambers[2]), hint.distance(chambers[0]));
+        assertEquals(2, hint.getRepaired());
+    }
+
+    /**
+     * test repaired distances match a tree built from scratch while doors open and close on a random map
+     */
+    @Test
+    void testRepairMatchesRebuild() {
+        SplittableRandom random = new SplittableRandom(5);
+        Chamber[] chambers = new Chamber[200];
+        for (int i = 0; i < chambers.length; i++) {
+            chambers[i] = new Chamber();
+        }
+        List<Door> doors = new ArrayList<>();
+        List<Monster> monsters = new ArrayList<>();
+        for (int i = 1; i < chambers.length; i++) {
+            for (int k = 0; k < 2; k++) {
+                Monster guardian = random.nextInt(3) == 0 ? null : new Monster("M", random.nextInt(4), random.nextInt(4), 1 + random.nextInt(6));
+                doors.add(Door.connect(chambers[i], chambers[random.nextInt(i)], guardian));
+                monsters.add(guardian);
+            }
+        }
+        ChamberGraph graph = ChamberGraph.of(chambers);
+        Warrior player = new Warrior("Conan");
+        PathHint hint = new PathHint(graph, 0, player);
+
+        for (int step = 0; step < 300; step++) {
+            int d = random.nextInt(doors.size());
+            Door door = doors.get(d);
+            if (door.getGuardian() != null) {
+                door.removeGuardian(door.getGuardian());
+            } else if (monsters.get(d) != null) {
+                door.restoreGuardian(monsters.get(d));
+            }
+            hint.refresh(door);
+
+            PathHint rebuilt = new PathHint(graph, 0, player);
+            for (Chamber chamber : chambers) {
+                assertEquals(rebuilt.distance(chamber), hint.distance(chamber));
+            }
+        }
+    }
+}
+
+/**
+ * test class for route planning
+ */
+class RoutePlannerTest {
+    /**
+     * test the warrior's best plan on the standard layout takes both items before the fights they help with
+     */
+    @Test
+    void testStandardPlan() {
+        Layout layout = Layout.create(Layout.STANDARD_WARRIOR);
+        Chamber[] chambers = layout.getChambers();
+        RoutePlanner.Plan plan = RoutePlanner.of(layout).plan();
+
+        assertEquals(4, plan.steps().size());
+        assertNotNull(plan.steps().get(0).item());
+        assertSame(chambers[1], plan.steps().get(1).chamber());
+        assertEquals("Goblin", plan.steps().get(1).door().getGuardian().getName());
+        assertNotNull(plan.steps().get(2).item());
+        assertEquals("Spider", plan.steps().get(3).door().getGuardian().getName());
+        assertTrue(plan.winProbability() > 0.5 && plan.winProbability() <= 1);
+        assertTrue(plan.expectedTurns() >= 8);
+    }
+
+    /**
+     * test the plan goes for the better chance to survive, not the lower expected damage
+     */
+    @Test
+    void testPlanMaximisesWinProbability() {
+        Chamber start = new Chamber();
+        Chamber left = new Chamber();
+        Chamber right = new Chamber();
+        Chamber goal = new Chamber();
+        Monster ogre = new Monster("Ogre", 4, 0, 1);
+        Monster orc = new Monster("Orc", 3, 0, 4);
+        Door.connect(start, left, ogre);
+        Door.connect(start, right, orc);
+        Door.connect(left, goal);
+        Door.connect(right, goal);
+        Warrior player = new Warrior("Conan");
+        player.setHealth(2);
+        ChamberGraph graph = ChamberGraph.of(new Chamber[]{start, left, right, goal});
+
+        RoutePlanner.Plan plan = new RoutePlanner(graph, 0, 3, player).plan();
+
+        // the ogre is one lucky roll away but hits hard, the orc takes longer but rarely hurts much
+        assertTrue(RoutePlanner.fightExpectation(1, 1, Dice.STANDARD)[0]
+                < RoutePlanner.fightExpectation(2, 4, Dice.STANDARD)[0]);
+        assertEquals(1, plan.steps().size());
+        assertSame(orc, plan.steps().get(0).door().getGuardian());
+        double[] health = new double[player.getMaxHealth() + 1];
+        health[2] = 1;
+        double win = Arrays.stream(RoutePlanner.survive(health, 2, 4, Dice.STANDARD)).sum();
+        assertEquals(win, plan.winProbability(), 1e-9);
+    }
+
+    /**
+     * test the exact chance to survive a fight agrees with playing the fight many times
+     */
+    @Test
+    void testSurviveMatchesFights() {
+        Dungeon dungeon = new Dungeon(new Adventurer("Tester", 8, 2, 0), new Chamber(), new Chamber());
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(3));
+        int games = 20000;
+        int won = 0;
+        for (int i = 0; i < games; i++) {
+            dungeon.getPlayer().setHealth(8);
+            Monster orc = new Monster("Orc", 3, 0, 6);
+            Door door = Door.connect(new Chamber(), new Chamber(), orc);
+            while (door.getGuardian() != null && dungeon.getPlayer().isAlive()) {
+                new Fight(dungeon, orc, door).execute();
+            }
+            if (dungeon.getPlayer().isAlive()) {
+                won++;
+            }
+        }
+        double[] health = new double[9];
+        health[8] = 1;
+        double exact = Arrays.stream(RoutePlanner.survive(health, -1, 6, Dice.STANDARD)).sum();
+        assertEquals(exact, (double) won / games, 0.02);
+    }
+
+    /**
+     * test the damage moments of a fight agree with the health distribution of a player who cannot die in it
+     */
+    @Test
+    void testDamageMomentsMatchSurvive() {
+        for (int gap = -2; gap <= 3; gap++) {
+            double[] health = new double[1001];
+            health[1000] = 1;
+            double[] after = RoutePlanner.survive(health, gap, 7, Dice.STANDARD);
+            double mean = 0;
+            double square = 0;
+            for (int h = 1; h < after.length; h++) {
+                mean += after[h] * (1000 - h);
+                square += after[h] * (1000 - h) * (1000 - h);
+            }
+            double[] moments = RoutePlanner.damageMoments(gap, 7, Dice.STANDARD);
+            assertEquals(mean, moments[0], 1e-6);
+            assertEquals(square - mean * mean, moments[1], 1e-6);
+        }
+        assertNull(RoutePlanner.damageMoments(-5, 7, Dice.STANDARD));
+    }
+
+    /**
+     * test a dungeon with more key points than the table can hold is rejected
+     */
+    @Test
+    void testTooManyKeys() {
+        Chamber[] chambers = new Chamber[RoutePlanner.MAX_KEYS + 2];
+        for (int i = 0; i < chambers.length; i++) {
+            chambers[i] = new Chamber(new Axe());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new RoutePlanner(ChamberGraph.of(chambers), 0, 1, new Warrior("Conan")));
+    }
+}
+
+/**
+ * test class for keeping remote clients in step
+ */
+class StateSyncTest {
+    /**
+     * test the client's view matches the dungeon after every action of random games with undos
+     */
+    @Test
+    void testViewFollowsGame() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int game = 0; game < 50; game++) {
+            Layout layout = Layout.create(game % 2 == 0 ? Layout.STANDARD : Layout.STANDARD_WARRIOR);
+            Dungeon dungeon = layout.getDungeon();
+            dungeon.setNarrated(false);
+            dungeon.setDice(random.split());
+            StateSync sync = new StateSync(dungeon);
+            StateView view = new StateView();
+            VarintWriter out = new VarintWriter();
+            UndoLog log = new UndoLog();
+
+            for (int turn = 0; turn < 60; turn++) {
+                out.reset();
+                if (sync.encode(out)) {
+                    view.apply(new VarintReader(out.buffer(), 0, out.size()));
+                }
+                assertMatches(dungeon, view);
+                if (dungeon.isFinished()) {
+                    break;
+                }
+                if (log.canUndo() && random.nextInt(5) == 0) {
+                    log.undo();
+                } else {
+                    List<Action> actions = dungeon.getActions();
+                    log.execute(actions.get(random.nextInt(actions.size())));
+                }
+            }
+        }
+    }
+
+    /**
+     * test a fight and a pickup only take a few bytes, and nothing is sent when nothing changed
+     */
+    @Test
+    void testDeltasAreSmall() {
+        Layout layout = Layout.create(Layout.STANDARD_WARRIOR);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(2));
+        StateSync sync = new StateSync(dungeon);
+        VarintWriter out = new VarintWriter();
+        sync.encode(out);
+
+        out.reset();
+        assertFalse(sync.encode(out));
+        dungeon.getActions().get(0).execute();
+        sync.encode(out);
+
+        out.reset();
+        dungeon.getActions().get(2).execute();
+        assertTrue(sync.encode(out));
+        assertTrue(out.size() <= 4, "pickup took " + out.size() + " bytes");
+
+        out.reset();
+        dungeon.getActions().get(1).execute();
+        sync.encode(out);
+        assertTrue(out.size() <= 5, "fight took " + out.size() + " bytes");
+    }
+
+    private static void assertMatches(Dungeon dungeon, StateView view) {
+        Character player = dungeon.getPlayer();
+        assertEquals(player.getName(), view.getName());
+        assertEquals(player.getHealth(), view.getHealth());
+        assertEquals(player.getTotalStrength(), view.getStrength());
+        assertEquals(player.getTotalCraft(), view.getCraft());
+        assertEquals(String.valueOf(player.getLeftHand()), String.valueOf(view.getLeftHand()));
+        assertEquals(String.valueOf(player.getRightHand()), String.valueOf(view.getRightHand()));
+        List<Door> doors = dungeon.getCurrentChamber().getDoors();
+        assertEquals(doors.size(), view.getGuardians().size());
+        for (int i = 0; i < doors.size(); i++) {
+            assertEquals(String.valueOf(doors.get(i).getGuardian()), String.valueOf(view.getGuardians().get(i)));
+        }
+        assertEquals(dungeon.getCurrentChamber().getItems().toString(), view.getItems().toString());
+        assertEquals(dungeon.isFinished(), view.isFinished());
+        assertEquals(dungeon.isWon(), view.isWon());
+    }
+}
+
+/**
+ * test class for leaderboard
+ */
+class LeaderboardTest {
+    /**
+     * test wins rank above losses, then fewer turns, then more health, overall and per layout
+     */
+    @Test
+    void testRanking() {
+        Leaderboard board = new Leaderboard(3);
+        board.record(new Leaderboard.Score("a", "Wizard", 0, 9, 4, true));
+        board.record(new Leaderboard.Score("b", "Warrior", 1, 5, 1, false));
+        board.record(new Leaderboard.Score("c", "Warrior", 1, 9, 7, true));
+        board.record(new Leaderboard.Score("d", "Wizard", 0, 6, 2, true));
+
+        assertEquals(List.of("d", "c", "a"), board.top(10).stream().map(Leaderboard.Score::player).toList());
+        assertEquals(List.of("c", "b"), board.top(1, 5).stream().map(Leaderboard.Score::player).toList());
+        assertTrue(board.top(7, 5).isEmpty());
+        assertEquals(4, board.getRecorded());
+    }
+
+    /**
+     * test many threads recording at once keep the exact best scores and readers always see a sorted board
+     */
+    @Test
+    void testConcurrentRecording() throws Exception {
+        Leaderboard board = new Leaderboard(50);
+        int threads = 8;
+        int games = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            pool.submit(() -> {
+                for (int i = 0; i < games; i++) {
+                    int turns = (i * 7919 + thread * 104729) % 100000;
+                    board.record(new Leaderboard.Score("p" + thread, "Warrior", thread % 2, turns, 1, true));
+                }
+                done.countDown();
+            });
+        }
+        Future<Boolean> reader = pool.submit(() -> {
+            while (done.getCount() > 0) {
+                List<Leaderboard.Score> top = board.top(50);
+                for (int i = 1; i < top.size(); i++) {
+                    if (top.get(i - 1).turns() > top.get(i).turns()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(reader.get(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < games; i++) {
+                expected.add((i * 7919 + t * 104729) % 100000);
+            }
+        }
+        Collections.sort(expected);
+        assertEquals(expected.subList(0, 50), board.top(50).stream().map(Leaderboard.Score::turns).toList());
+        assertEquals(threads * games, board.getRecorded());
+    }
+
+    /**
+     * test the server serves its leaderboard as json
+     */
+    @Test
+    void testLeaderboardOverHttp() throws Exception {
+        try (GameServer server = new GameServer()) {
+            String base = "http://localhost:" + server.start(0) + "/leaderboard";
+            server.getLeaderboard().record(new Leaderboard.Score("Conan", "Warrior", 1, 12, 9, true));
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> all = client.send(
+                    HttpRequest.newBuilder(URI.create(base + "?limit=5")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> other = client.send(
+                    HttpRequest.newBuilder(URI.create(base + "?layout=0")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, all.statusCode());
+            assertEquals("[{\"player\":\"Conan\",\"archetype\":\"Warrior\",\"layout\":1,\"turns\":12,\"health\":9,\"won\":true}]",
+                    all.body());
+            assertEquals("[]", other.body());
+        }
+    }
+}
+
+/**
+ * test class for campaigns
+ */
+class CampaignTest {
+    /**
+     * test reaching a goal moves the same character on to the next level and only the last goal wins
+     */
+    @Test
+    void testPlayerMovesThroughLevels() {
+        Warrior player = new Warrior("Conan");
+        Campaign campaign = new Campaign(player, LevelGenerator.of(Layout.STANDARD), 3, 1, Runnable::run);
+        Dungeon dungeon = campaign.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(4));
+        Chamber[] first = campaign.getChambers();
+
+        Simulation.play(dungeon, new GreedyPolicy(), 500);
+
+        assertTrue(dungeon.isWon());
+        assertEquals(2, campaign.getLevel());
+        assertNotSame(first, campaign.getChambers());
+        assertSame(player, dungeon.getPlayer());
+        assertSame(campaign.getChambers()[4], dungeon.getCurrentChamber());
+        assertFalse(campaign.hasStalled());
+    }
+
+    /**
+     * test the next level is built in the background once the player is close to the goal
+     */
+    @Test
+    void testNextLevelIsPrefetched() {
+        List<Runnable> tasks = new ArrayList<>();
+        Campaign campaign = new Campaign(new Warrior("Conan"), LevelGenerator.of(Layout.STANDARD), 2, 1, tasks::add);
+        Dungeon dungeon = campaign.getDungeon();
+        dungeon.setNarrated(false);
+        Chamber[] chambers = campaign.getChambers();
+
+        new Move(dungeon, chambers[0].getDoors().get(0)).execute();
+        assertFalse(campaign.isPrefetching());
+        dungeon.setCurrentChamber(chambers[2]);
+        new Move(dungeon, chambers[2].getDoors().get(1)).execute();
+        assertTrue(campaign.isPrefetching());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        new Move(dungeon, chambers[3].getDoors().get(1)).execute();
+        assertEquals(1, campaign.getLevel());
+        assertFalse(campaign.hasStalled());
+        assertFalse(dungeon.isFinished());
+    }
+
+    /**
+     * test a level that is not built yet keeps the player on the goal instead of holding up the move
+     */
+    @Test
+    void testLateLevelDoesNotBlock() {
+        List<Runnable> tasks = new ArrayList<>();
+        Campaign campaign = new Campaign(new Warrior("Conan"), LevelGenerator.of(Layout.STANDARD), 2, 0, tasks::add);
+        Dungeon dungeon = campaign.getDungeon();
+        dungeon.setNarrated(false);
+        Chamber[] chambers = campaign.getChambers();
+        List<Chamber> seen = new ArrayList<>();
+        dungeon.addListener(event -> seen.add(dungeon.getCurrentChamber()));
+
+        dungeon.setCurrentChamber(chambers[3]);
+        new Move(dungeon, chambers[3].getDoors().get(1)).execute();
+        assertEquals(List.of(chambers[4]), seen);
+        assertSame(chambers[4], dungeon.getCurrentChamber());
+        assertEquals(0, campaign.getLevel());
+        assertTrue(campaign.hasStalled());
+        assertFalse(dungeon.isFinished());
+
+        tasks.get(0).run();
+        assertTrue(campaign.advance());
+        assertEquals(1, campaign.getLevel());
+        assertSame(campaign.getChambers()[0], dungeon.getCurrentChamber());
+    }
+
+    /**
+     * test a late level is picked up when the next turn's actions are asked for, without another action
+     */
+    @Test
+    void testLateLevelIsRetriedNextTurn() {
+        List<Runnable> tasks = new ArrayList<>();
+        Campaign campaign = new Campaign(new Warrior("Conan"), LevelGenerator.of(Layout.STANDARD), 2, 0, tasks::add);
+        Dungeon dungeon = campaign.getDungeon();
+        dungeon.setNarrated(false);
+        Chamber[] chambers = campaign.getChambers();
+
+        dungeon.setCurrentChamber(chambers[3]);
+        new Move(dungeon, chambers[3].getDoors().get(1)).execute();
+        assertEquals(chambers[4].getDoors().size(), dungeon.getActions().size());
+        assertEquals(0, campaign.getLevel());
+
+        tasks.get(0).run();
+        List<Action> actions = dungeon.getActions();
+        assertEquals(1, campaign.getLevel());
+        assertSame(campaign.getChambers()[0], dungeon.getCurrentChamber());
+        assertEquals(campaign.getChambers()[0].getDoors().size(), actions.size());
+    }
+
+    /**
+     * test moving on is published and the moves of the old level cannot be undone
+     */
+    @Test
+    void testLevelChangeIsPublishedAndEndsUndo() {
+        Campaign campaign = new Campaign(new Warrior("Conan"), LevelGenerator.of(Layout.STANDARD), 2, 1, Runnable::run);
+        Dungeon dungeon = campaign.getDungeon();
+        dungeon.setNarrated(false);
+        Chamber[] chambers = campaign.getChambers();
+        List<GameEvent.LevelChanged> changes = new ArrayList<>();
+        dungeon.addListener(event -> {
+            if (event instanceof GameEvent.LevelChanged changed) {
+                changes.add(changed);
+            }
+        });
+        PathHint hint = new PathHint(ChamberGraph.of(chambers), 4, dungeon.getPlayer());
+        dungeon.addListener(hint);
+        UndoLog log = new UndoLog();
+
+        dungeon.setCurrentChamber(chambers[2]);
+        log.execute(new Move(dungeon, chambers[2].getDoors().get(1)));
+        assertTrue(log.canUndo());
+        log.execute(new Move(dungeon, chambers[3].getDoors().get(1)));
+
+        Chamber start = campaign.getChambers()[0];
+        assertEquals(List.of(new GameEvent.LevelChanged(dungeon, 1, chambers[4], start)), changes);
+        assertFalse(dungeon.getListeners().contains(hint));
+        assertFalse(log.canUndo());
+        assertFalse(log.undo());
+        assertSame(start, dungeon.getCurrentChamber());
+
+        log.execute(new Move(dungeon, start.getDoors().get(0)));
+        assertTrue(log.undo());
+        assertSame(start, dungeon.getCurrentChamber());
+    }
+
+    /**
+     * test random levels are the same for the same seed and grow deeper down
+     */
+    @Test
+    void testRandomLevels() {
+        Level a = LevelGenerator.random(9).generate(3);
+        Level b = LevelGenerator.random(9).generate(3);
+
+        assertEquals(11, a.chambers().length);
+        assertEquals(ChamberGraph.of(a.chambers()).edgeCount(), ChamberGraph.of(b.chambers()).edgeCount());
+        for (int i = 0; i < a.chambers().length; i++) {
+            assertEquals(a.chambers()[i].getItems().toString(), b.chambers()[i].getItems().toString());
+            assertEquals(a.chambers()[i].getDoors().toString(), b.chambers()[i].getDoors().toString());
+        }
+        assertTrue(DungeonValidator.validate(a.chambers(), a.startChamber(), a.goalChamber()).goalReachable());
+    }
+}
+
+/**
+ * test class for monsters kept as columns
+ */
+class MonsterStoreTest {
+    /**
+     * test a fight through a door whose guardian lives in a store changes the store and removes the guardian
+     */
+    @Test
+    void testFightStoredGuardian() {
+        MonsterStore store = new MonsterStore(1);
+        store.add("Bat", 0, 0, 2);
+        int goblin = store.add("Goblin", 1, 0, 3);
+        Chamber a = new Chamber();
+        Chamber b = new Chamber();
+        Door door = Door.connect(a, b, store, goblin);
+        Dungeon dungeon = new Dungeon(new Warrior("Conan"), a, b);
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(6));
+
+        assertTrue(door.isLocked());
+        Monster guardian = door.getGuardian();
+        assertSame(guardian, door.getGuardian());
+        assertEquals("Goblin (Strength: 1, Health: 3)", guardian.toString());
+        while (door.getGuardian() != null) {
+            dungeon.getActions().get(0).execute();
+        }
+        assertEquals(0, store.getHealth(goblin));
+        assertFalse(guardian.isAlive());
+        assertEquals(2, store.getHealth(0));
+        assertFalse(door.isLocked());
+    }
+
+    /**
+     * test names are shared through the table and health changes go to the columns
+     */
+    @Test
+    void testColumns() {
+        MonsterStore store = new MonsterStore(2);
+        for (int i = 0; i < 1000; i++) {
+            store.add(i % 2 == 0 ? "Orc" : "Wraith", i % 5, 0, 10);
+        }
+        Monster view = store.view(7);
+        view.takeDamage(4);
+        store.heal(7, 1);
+
+        assertEquals(1000, store.size());
+        assertEquals(2, store.nameCount());
+        assertEquals("Wraith", view.getName());
+        assertEquals(7, store.getHealth(7));
+        assertEquals(10, view.getMaxHealth());
+        assertEquals(2, view.getTotalStrength());
+        assertTrue(view.getInventory().isEmpty());
+    }
+}
+
+/**
+ * test class for flight recorder events
+ */
+class FlightEventsTest {
+    /**
+     * test a recording with the bundled profile sees actions, fights and action listings of a game
+     */
+    @Test
+    void testEventsAreRecorded() throws Exception {
+        Path file = Files.createTempFile("dungeon", ".jfr");
+        int turns;
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording(FlightEvents.profile())) {
+            recording.enable("org.example.GetActions").withThreshold(Duration.ZERO);
+            recording.start();
+            Layout layout = Layout.create(Layout.STANDARD_WARRIOR);
+            layout.getDungeon().setNarrated(false);
+            layout.getDungeon().setDice(new SplittableRandom(8));
+            turns = Simulation.play(layout.getDungeon(), new GreedyPolicy(), 200);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        boolean fightHasRolls = false;
+        for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+            counts.merge(event.getEventType().getName(), 1, Integer::sum);
+            if (event.getEventType().getName().equals("org.example.Fight")) {
+                fightHasRolls |= event.getInt("playerRoll") >= 1 && event.getInt("monsterRoll") <= 6;
+            }
+        }
+        Files.delete(file);
+
+        assertEquals(turns, counts.get("org.example.Action"));
+        assertTrue(counts.get("org.example.GetActions") >= turns);
+        assertTrue(counts.getOrDefault("org.example.Fight", 0) >= 2);
+        assertTrue(fightHasRolls);
+    }
+
+    /**
+     * test the bundled profile covers every dungeon event
+     */
+    @Test
+    void testProfile() throws Exception {
+        Map<String, String> settings = FlightEvents.profile().getSettings();
+
+        for (String event : List.of("Turn", "Action", "Fight", "GetActions")) {
+            assertEquals("true", settings.get("org.example." + event + "#enabled"));
+            assertNotNull(settings.get("org.example." + event + "#stackTrace"));
+        }
+        assertEquals("1 ms", settings.get("org.example.GetActions#threshold"));
+    }
+}
+
+/**
+ * test class for q-learning
+ */
+class QLearnerTest {
+    private static int[] play(Function<Layout, Policy> bots, int games) {
+        SplittableRandom random = new SplittableRandom(77);
+        int won = 0;
+        int turns = 0;
+        for (int g = 0; g < games; g++) {
+            Layout layout = Layout.create(Layout.STANDARD_WARRIOR);
+            layout.getDungeon().setNarrated(false);
+            layout.getDungeon().setDice(random.split());
+            turns += Simulation.play(layout.getDungeon(), bots.apply(layout), 200);
+            if (layout.getDungeon().isWon()) {
+                won++;
+            }
+        }
+        return new int[]{won, turns};
+    }
+
+    /**
+     * test training gives a bot that wins as often as the greedy bot and far faster than random play
+     */
+    @Test
+    void testLearnedBot() {
+        QLearner learner = new QLearner(Layout.STANDARD_WARRIOR);
+        learner.train(40000, 1, 1);
+        LearnedPolicy policy = learner.export();
+        SplittableRandom random = new SplittableRandom(5);
+
+        int[] learned = play(policy::bot, 500);
+        int[] greedy = play(layout -> new GreedyPolicy(), 500);
+        int[] wandering = play(layout -> (dungeon, actions) -> random.nextInt(actions.size()), 500);
+
+        assertEquals(320, learner.getStates());
+        assertTrue(learned[0] * 5 >= greedy[0] * 4, learned[0] + " wins against " + greedy[0]);
+        assertTrue(learned[1] * 2 < wandering[1], learned[1] + " turns against " + wandering[1]);
+    }
+
+    /**
+     * test an exported policy reads back the same and refuses other layouts
+     */
+    @Test
+    void testExport() {
+        QLearner learner = new QLearner(Layout.STANDARD);
+        learner.train(2000, 2, 3);
+        LearnedPolicy policy = learner.export();
+        VarintWriter out = new VarintWriter();
+        policy.encode(out);
+        LearnedPolicy copy = LearnedPolicy.decode(new VarintReader(out.toByteArray()));
+
+        Layout a = Layout.create(Layout.STANDARD);
+        Layout b = Layout.create(Layout.STANDARD);
+        a.getDungeon().setNarrated(false);
+        b.getDungeon().setNarrated(false);
+        a.getDungeon().setDice(new SplittableRandom(4));
+        b.getDungeon().setDice(new SplittableRandom(4));
+        Policy first = policy.bot(a);
+        Policy second = copy.bot(b);
+        for (int turn = 0; turn < 6 && !a.getDungeon().isFinished(); turn++) {
+            int choice = first.choose(a.getDungeon(), a.getDungeon().getActions());
+            assertEquals(choice, second.choose(b.getDungeon(), b.getDungeon().getActions()));
+            a.getDungeon().getActions().get(choice).execute();
+            b.getDungeon().getActions().get(choice).execute();
+        }
+        assertThrows(IllegalArgumentException.class, () -> policy.bot(Layout.create(Layout.STANDARD_WARRIOR)));
+    }
+
+    /**
+     * test workers training the same table at once still give a bot that wins
+     */
+    @Test
+    void testParallelTraining() {
+        QLearner learner = new QLearner(Layout.STANDARD_WARRIOR);
+        int won = learner.train(40000, 4, 1);
+        LearnedPolicy policy = learner.export();
+
+        int[] learned = play(policy::bot, 500);
+        int[] greedy = play(layout -> new GreedyPolicy(), 500);
+
+        assertTrue(won > 0);
+        assertTrue(learned[0] * 2 >= greedy[0], learned[0] + " wins against " + greedy[0]);
+    }
+
+    /**
+     * test a bot whose table walks it in a circle breaks out of it
+     */
+    @Test
+    void testBotLeavesCircles() {
+        Layout sample = Layout.create(Layout.STANDARD);
+        int states = StateAbstraction.of(sample).states();
+        // every state says take the first door, which goes back and forth between the first two chambers
+        LearnedPolicy policy = new LearnedPolicy(Layout.STANDARD, StateAbstraction.maxActions(sample),
+                new byte[states]);
+        Layout layout = Layout.create(Layout.STANDARD);
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(2));
+        Set<Chamber> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        dungeon.addListener(event -> seen.add(dungeon.getCurrentChamber()));
+
+        Simulation.play(dungeon, policy.bot(layout), 200);
+
+        assertTrue(seen.size() > 2, seen.size() + " chambers");
+    }
+
+    /**
+     * test a stored policy with an action outside its action count is rejected
+     */
+    @Test
+    void testCorruptPolicyFails() {
+        VarintWriter out = new VarintWriter();
+        new LearnedPolicy(Layout.STANDARD, 3, new byte[]{0, 2, 1}).encode(out);
+        byte[] data = out.toByteArray();
+        data[data.length - 1] = 3;
+
+        assertThrows(IllegalArgumentException.class, () -> LearnedPolicy.decode(new VarintReader(data)));
+    }
+}
+
+/**
+ * test class for the solvability checker
+ */
+class SolvabilityCheckerTest {
+    // a ring of orcs with items in every chamber and a goal behind a dragon nobody can hurt without the sword
+    private static Chamber[] ring(boolean sword) {
+        Chamber[] chambers = new Chamber[6];
+        for (int i = 0; i < chambers.length; i++) {
+            chambers[i] = new Chamber(i % 2 == 1 ? new Axe() : new Shield());
+        }
+        for (int i = 0; i < 3; i++) {
+            Door.connect(chambers[i], chambers[(i + 1) % 3], new Monster("Orc", 4, 0, 4 + i));
+        }
+        Door.connect(chambers[2], chambers[3]);
+        Door.connect(chambers[3], chambers[5], new Monster("Dragon", 30, 0, 9));
+        Door.connect(chambers[1], chambers[4], new Monster("Wraith", 0, 6, 4));
+        if (sword) {
+            chambers[4].addItem(new Trinket("Sword", 25, 0));
+        }
+        return chambers;
+    }
+
+    /**
+     * test both standard layouts can be won by their own character in the fewest possible turns
+     */
+    @Test
+    void testStandardLayouts() throws IOException {
+        SolvabilityChecker.Report wizard = SolvabilityChecker.of(Layout.create(Layout.STANDARD)).check();
+        SolvabilityChecker.Report warrior = SolvabilityChecker.of(Layout.create(Layout.STANDARD_WARRIOR)).check();
+
+        assertTrue(wizard.winnable());
+        assertEquals(6, wizard.turns());
+        assertTrue(warrior.winnable());
+        // the warrior needs a second round or the shield to get past the spider
+        assertEquals(7, warrior.turns());
+    }
+
+    /**
+     * test a dragon makes the goal unwinnable until a sword lies within reach
+     */
+    @Test
+    void testUnwinnable() throws IOException {
+        Chamber[] chambers = ring(false);
+        SolvabilityChecker.Report report = new SolvabilityChecker(chambers, chambers[0], chambers[5],
+                new Warrior("Conan")).check();
+        Chamber[] armed = ring(true);
+        SolvabilityChecker.Report sword = new SolvabilityChecker(armed, armed[0], armed[5], new Warrior("Conan")).check();
+
+        assertFalse(report.winnable());
+        assertEquals(-1, report.turns());
+        assertTrue(report.states() > 1000, report.states() + " states");
+        assertTrue(sword.winnable());
+    }
+
+    /**
+     * test parallel workers spilling to disk visit exactly the states a single worker does in memory
+     */
+    @Test
+    void testParallelSpill() throws IOException {
+        Chamber[] chambers = ring(false);
+        SolvabilityChecker single = new SolvabilityChecker(chambers, chambers[0], chambers[5], new Wizard("Merlin"));
+        single.setParallelism(1);
+        SolvabilityChecker spilled = new SolvabilityChecker(chambers, chambers[0], chambers[5], new Wizard("Merlin"));
+        Path directory = Files.createTempDirectory("frontier");
+        spilled.setParallelism(4);
+        spilled.setExpectedStates(16);
+        spilled.setSpillDirectory(directory);
+
+        SolvabilityChecker.Report expected = single.check();
+        assertEquals(expected, spilled.check());
+        try (Stream<Path> left = Files.list(directory)) {
+            assertEquals(0, left.count());
+        }
+        Files.delete(directory);
+        assertTrue(expected.states() > 1 << 14, expected.states() + " states");
+    }
+}
+
+/**
+ * test class for dungeon templates
+ */
+class DungeonTemplateTest {
+    private static void win(Layout layout, long seed) {
+        Dungeon dungeon = layout.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(seed));
+        Simulation.play(dungeon, new GreedyPolicy(), 200);
+    }
+
+    /**
+     * test sessions of one template do not see each other's picks and kills
+     */
+    @Test
+    void testSessionsAreIndependent() {
+        DungeonTemplate template = DungeonTemplate.of(Layout.create(Layout.STANDARD_WARRIOR));
+        Layout played = template.open(new Warrior("Conan"));
+        Layout fresh = template.open(new Warrior("Hercules"));
+        win(played, 3);
+
+        assertTrue(played.getDungeon().isWon());
+        assertTrue(DungeonTemplate.overlayOf(played).touched() >= 2);
+        assertEquals(0, DungeonTemplate.overlayOf(fresh).touched());
+        assertEquals(1, fresh.getChambers()[1].getItems().size());
+        for (Door door : fresh.getChambers()[2].getDoors()) {
+            if (door.getGuardian() != null) {
+                assertEquals(door.getGuardian().getMaxHealth(), door.getGuardian().getHealth());
+            }
+        }
+        assertEquals(played.getDungeon().getGoalChamber(), played.getDungeon().getCurrentChamber());
+        assertEquals(4, played.indexOf(played.getDungeon().getCurrentChamber()));
+        assertEquals(-1, fresh.indexOf(played.getDungeon().getCurrentChamber()));
+    }
+
+    /**
+     * test a template session plays, undoes and redoes the same as a game built from its own objects
+     */
+    @Test
+    void testSameAsCopy() {
+        Layout copy = Layout.create(Layout.STANDARD);
+        Layout session = DungeonTemplate.of(Layout.STANDARD).open(Layout.createPlayer(Layout.STANDARD));
+        win(copy, 8);
+        win(session, 8);
+        assertEquals(copy.getDungeon().getPlayer().getHealth(), session.getDungeon().getPlayer().getHealth());
+        assertEquals(copy.getDungeon().getPlayer().getInventory().size(),
+                session.getDungeon().getPlayer().getInventory().size());
+
+        Layout undone = DungeonTemplate.of(Layout.STANDARD).open(Layout.createPlayer(Layout.STANDARD));
+        Dungeon dungeon = undone.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(2));
+        UndoLog log = new UndoLog();
+        log.execute(dungeon.getActions().get(0));
+        log.execute(dungeon.getActions().get(2));
+        log.execute(dungeon.getActions().get(1));
+        assertEquals(0, dungeon.getCurrentChamber().getItems().size());
+        while (log.undo()) {
+        }
+        assertEquals(0, undone.indexOf(dungeon.getCurrentChamber()));
+        assertEquals(1, undone.getChambers()[1].getItems().size());
+        assertNull(dungeon.getPlayer().getLeftHand());
+        assertEquals(dungeon.getPlayer().getMaxHealth(), dungeon.getPlayer().getHealth());
+    }
+
+    /**
+     * test opening sessions of a large template does not build its chambers
+     */
+    @Test
+    void testOpenIsLazy() {
+        Level level = LevelGenerator.random(5).generate(400);
+        Layout layout = new Layout(9, new Dungeon(new Warrior("Conan"), level.startChamber(), level.goalChamber()),
+                level.chambers());
+        DungeonTemplate template = DungeonTemplate.of(layout);
+        List<Layout> sessions = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            sessions.add(template.open(new Warrior("Conan")));
+        }
+
+        assertEquals(805, template.getChamberCount());
+        Layout last = sessions.get(sessions.size() - 1);
+        assertEquals(0, last.indexOf(last.getDungeon().getCurrentChamber()));
+        assertEquals(level.chambers()[0].getDoors().size(), last.getDungeon().getCurrentChamber().getDoors().size());
+        assertEquals(804, last.indexOf(last.getDungeon().getGoalChamber()));
+    }
+
+    /**
+     * test a session is encoded as its template and overlay and plays on the same after decoding
+     */
+    @Test
+    void testEncodeAsOverlay() {
+        DungeonTemplate template = DungeonTemplate.of(Layout.STANDARD_WARRIOR);
+        Layout session = template.open(Layout.createPlayer(Layout.STANDARD_WARRIOR));
+        Dungeon dungeon = session.getDungeon();
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(6));
+        Simulation.play(dungeon, new GreedyPolicy(), 4);
+        dungeon.getCurrentChamber().addItem(new Trinket("Amulet", 0, 2));
+
+        VarintWriter out = new VarintWriter();
+        SessionCodec.encode(session, out);
+        Layout copy = SessionCodec.decode(new VarintReader(out.toByteArray()));
+        Dungeon restored = copy.getDungeon();
+        restored.setNarrated(false);
+
+        assertTrue(out.size() < 64, out.size() + " bytes");
+        assertSame(template, DungeonTemplate.templateOf(copy));
+        assertEquals(DungeonTemplate.overlayOf(session).touched(), DungeonTemplate.overlayOf(copy).touched());
+        assertEquals(session.indexOf(dungeon.getCurrentChamber()), copy.indexOf(restored.getCurrentChamber()));
+        assertEquals(dungeon.getActions().toString(), restored.getActions().toString());
+
+        dungeon.setDice(new SplittableRandom(7));
+        restored.setDice(new SplittableRandom(7));
+        SplittableRandom first = new SplittableRandom(8);
+        SplittableRandom second = new SplittableRandom(8);
+        Simulation.play(dungeon, (d, actions) -> first.nextInt(actions.size()), 100);
+        Simulation.play(restored, (d, actions) -> second.nextInt(actions.size()), 100);
+        assertEquals(session.indexOf(dungeon.getCurrentChamber()), copy.indexOf(restored.getCurrentChamber()));
+        assertEquals(dungeon.getPlayer().getHealth(), restored.getPlayer().getHealth());
+        assertEquals(DungeonTemplate.overlayOf(session).touched(), DungeonTemplate.overlayOf(copy).touched());
+    }
+}
+
+/**
+ * test class for fight dice and loot tables
+ */
+class DiceTest {
+    /**
+     * test alias sampling follows the weights and never draws a zero weight
+     */
+    @Test
+    void testAliasTable() {
+        AliasTable table = new AliasTable(new double[]{1, 0, 3, 6});
+        SplittableRandom random = new SplittableRandom(12);
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < 100000; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        assertEquals(0, counts[1]);
+        assertEquals(10000, counts[0], 600);
+        assertEquals(30000, counts[2], 900);
+        assertEquals(60000, counts[3], 900);
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{0, 0}));
+    }
+
+    /**
+     * test several dice add up, weighted faces are honoured and a plain d6 draws what nextInt did
+     */
+    @Test
+    void testDice() {
+        Dice twoDice = new Dice(2, 6);
+        Dice loaded = Dice.weighted(1, 0, 0, 0, 0, 0, 1);
+        SplittableRandom random = new SplittableRandom(3);
+        int sevens = 0;
+        for (int i = 0; i < 36000; i++) {
+            int total = twoDice.roll(random);
+            assertTrue(total >= 2 && total <= 12);
+            if (total == 7) {
+                sevens++;
+            }
+            assertEquals(6, loaded.roll(random));
+        }
+
+        assertEquals(6000, sevens, 400);
+        assertEquals(6.0 / 36, twoDice.probability(7), 1e-12);
+        assertEquals(0, twoDice.probability(13));
+        assertEquals(12, twoDice.max());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new SplittableRandom(i).nextInt(6) + 1,
+                    Dice.STANDARD.roll(new SplittableRandom(i)));
+        }
+    }
+
+    /**
+     * test a defeated guardian drops its loot into the chamber, and undo takes it away again
+     */
+    @Test
+    void testLootDrop() {
+        Chamber a = new Chamber();
+        Chamber b = new Chamber();
+        Monster rat = new Monster("Rat", 0, 0, 1);
+        rat.setLoot(LootTable.of(0, new LootTable.Drop(1, () -> new Trinket("Tail", 0, 1))));
+        Door door = Door.connect(a, b, rat);
+        Dungeon dungeon = new Dungeon(new Warrior("Conan"), a, b);
+        dungeon.setNarrated(false);
+        dungeon.setDice(new SplittableRandom(1));
+        dungeon.setFightDice(new Dice(3, 4));
+        UndoLog log = new UndoLog();
+
+        while (door.getGuardian() != null) {
+            log.execute(new Fight(dungeon, rat, door));
+        }
+        assertEquals(1, a.getItems().size());
+        assertEquals("Tail", a.getItems().get(0).getName());
+        Item tail = a.getItems().get(0);
+
+        log.undo();
+        assertTrue(a.getItems().isEmpty());
+        log.redo();
+        assertSame(tail, a.getItems().get(0));
+    }
+
+    /**
+     * test a parked session keeps its fight dice and its guardians' loot tables
+     */
+    @Test
+    void testCodecKeepsDiceAndLoot() {
+        Layout layout = Layout.create(Layout.STANDARD);
+        Dice loaded = Dice.weighted(2, 1, 0, 3);
+        layout.getDungeon().setFightDice(loaded);
+        Monster guardian = layout.getChambers()[1].getDoors().get(1).getGuardian();
+        guardian.setLoot(LootTable.of(1, new LootTable.Drop(3, () -> new Trinket("Fang", 1, 0)),
+                new LootTable.Drop(1, Axe::new)));
+        Layout template = DungeonTemplate.of(Layout.STANDARD_WARRIOR).open(new Warrior("Conan"));
+        template.getDungeon().setFightDice(new Dice(3, 4));
+
+        VarintWriter out = new VarintWriter();
+        SessionCodec.encode(layout, out);
+        SessionCodec.encode(template, out);
+        VarintReader in = new VarintReader(out.toByteArray());
+        Layout copy = SessionCodec.decode(in);
+        Layout templateCopy = SessionCodec.decode(in);
+
+        Dice dice = copy.getDungeon().getFightDice();
+        assertEquals(loaded.toString(), dice.toString());
+        for (int total = dice.min(); total <= dice.max(); total++) {
+            assertEquals(loaded.probability(total), dice.probability(total), 1e-12);
+        }
+        assertEquals("3d4", templateCopy.getDungeon().getFightDice().toString());
+        LootTable loot = copy.getChambers()[1].getDoors().get(1).getGuardian().getLoot();
+        assertEquals(2, loot.size());
+        assertEquals(1, loot.getNothing());
+        assertEquals(3, loot.getDrops().get(0).weight());
+        Item fang = loot.getDrops().get(0).item().get();
+        assertEquals("Fang", fang.getName());
+        assertNotSame(fang, loot.getDrops().get(0).item().get());
+        assertTrue(loot.getDrops().get(1).item().get() instanceof Axe);
+    }
+
+    /**
+     * test the analysers work with the dungeon's fight dice and turn down loot they cannot follow
+     */
+    @Test
+    void testAnalysersUseDice() throws IOException {
+        Chamber start = new Chamber();
+        Chamber goal = new Chamber();
+        Monster troll = new Monster("Troll", 8, 0, 5);
+        Door.connect(start, goal, troll);
+        Chamber[] chambers = {start, goal};
+
+        assertTrue(new SolvabilityChecker(chambers, start, goal, new Warrior("Conan")).check().winnable());
+        assertFalse(new SolvabilityChecker(chambers, start, goal, new Warrior("Conan"), new Dice(1, 1)).check()
+                .winnable());
+        MarkovAnalyzer flat = new MarkovAnalyzer(chambers, start, goal, new Warrior("Conan"), new Dice(1, 1));
+        assertEquals(0, flat.analyze(flat.towardsGoal()).winProbability(), 1e-12);
+        assertNull(RoutePlanner.fightExpectation(-3, 5, new Dice(1, 1)));
+        Door guarded = start.getDoors().get(0);
+        assertEquals(PathHint.UNREACHABLE, PathHint.doorCost(guarded, new Warrior("Conan"), new Dice(1, 1)));
+        // with a d6 each the troll is hit on 3 of the 36 pairs for 4 damage in all, so its 5 health takes 45 rounds
+        assertEquals(46, PathHint.doorCost(guarded, new Warrior("Conan"), Dice.STANDARD));
+
+        // the exact chance matches games played with two three sided dice
+        Dice dice = new Dice(2, 3);
+        Dungeon dungeon = new Dungeon(new Warrior("Conan"), start, goal);
+        dungeon.setNarrated(false);
+        dungeon.setFightDice(dice);
+        dungeon.setDice(new SplittableRandom(5));
+        int games = 20000;
+        int won = 0;
+        for (int i = 0; i < games; i++) {
+            dungeon.getPlayer().setHealth(8);
+            Monster orc = new Monster("Orc", 6, 0, 6);
+            Door door = Door.connect(new Chamber(), new Chamber(), orc);
+            while (door.getGuardian() != null && dungeon.getPlayer().isAlive()) {
+                new Fight(dungeon, orc, door).execute();
+            }
+            if (dungeon.getPlayer().isAlive()) {
+                won++;
+            }
+        }
+        double[] health = new double[9];
+        health[8] = 1;
+        double exact = Arrays.stream(RoutePlanner.survive(health, -1, 6, dice)).sum();
+        assertEquals(exact, (double) won / games, 0.02);
+
+        troll.setLoot(LootTable.of(0, new LootTable.Drop(1, Shield::new)));
+        assertThrows(IllegalArgumentException.class, () -> new MarkovAnalyzer(chambers, start, goal,
+                new Warrior("Conan")));
+        assertThrows(IllegalArgumentException.class, () -> new SolvabilityChecker(chambers, start, goal,
+                new Warrior("Conan")));
+    }
+}
+
+/**
+ * test class for interest management in a shared world
+ */
+class InterestManagerTest {
+    private Chamber[] line;
+    private Door[] doors;
+
+    @BeforeEach
+    void setUp() {
+        line = new Chamber[5];
+        doors = new Door[4];
+        for (int c = 0; c < line.length; c++) {
+            line[c] = new Chamber();
+        }
+        for (int d = 0; d < doors.length; d++) {
+            doors[d] = Door.connect(line[d], line[d + 1]);
+        }
+    }
+
+    private Dungeon player(int chamber) {
+        Dungeon dungeon = new Dungeon(new Warrior("Conan"), line[chamber], line[4]);
+        dungeon.setNarrated(false);
+        return dungeon;
+    }
+
+    /**
+     * test with radius 0 only players in the same chamber see each other, and moves update who is where
+     */
+    @Test
+    void testSameChamber() {
+        InterestManager interest = new InterestManager(line, 0);
+        List<GameEvent> seenByB = new CopyOnWriteArrayList<>();
+        List<GameEvent> seenByC = new CopyOnWriteArrayList<>();
+        Dungeon a = player(0);
+        interest.join(a, event -> { });
+        interest.join(player(1), seenByB::add);
+        interest.join(player(3), seenByC::add);
+        assertEquals(1, interest.population(line[0]));
+
+        new Move(a, doors[0]).perform();
+        assertEquals(0, interest.population(line[0]));
+        assertEquals(2, interest.population(line[1]));
+        assertEquals(1, seenByB.size());
+        assertInstanceOf(GameEvent.Moved.class, seenByB.get(0));
+        new Move(a, doors[1]).perform();
+        assertEquals(2, seenByB.size());
+        new Move(a, doors[2]).perform();
+        assertEquals(2, seenByB.size());
+        assertEquals(1, seenByC.size());
+
+        // chamber changes outside of moves are followed as well
+        a.setCurrentChamber(line[1]);
+        assertEquals(2, interest.population(line[1]));
+        assertEquals(1, interest.population(line[3]));
+    }
+
+    /**
+     * test with radius 1 players a door away see the event, farther players do not, and leaving stops it
+     */
+    @Test
+    void testRadius() {
+        InterestManager interest = new InterestManager(line, 1);
+        AtomicInteger near = new AtomicInteger();
+        AtomicInteger far = new AtomicInteger();
+        Dungeon a = player(2);
+        interest.join(a, event -> { });
+        InterestManager.Member nearMember = interest.join(player(1), event -> near.incrementAndGet());
+        interest.join(player(4), event -> far.incrementAndGet());
+        assertEquals(2, interest.watchers(line[2]));
+        assertEquals(1, interest.watchers(line[0]));
+
+        new Pick(a, new Axe()).perform();
+        assertEquals(1, near.get());
+        assertEquals(0, far.get());
+        new Move(a, doors[2]).perform();
+        assertEquals(2, near.get());
+        assertEquals(1, far.get());
+
+        nearMember.leave();
+        new Move(a, doors[2]).perform();
+        assertEquals(2, near.get());
+        assertEquals(2, far.get());
+        assertEquals(4, interest.getDelivered());
+        assertEquals(0, interest.watchers(line[0]));
+    }
+}
+
+/**
+ * test class for the cluster router
+ */
+class ClusterRouterTest {
+    private static HttpResponse<String> send(HttpClient client, String method, String url)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * test keys spread evenly over the nodes and a new node only takes keys, about its share of them
+     */
+    @Test
+    void testHashRing() {
+        HashRing ring = new HashRing(ClusterRouter.DEFAULT_VIRTUAL_NODES).with("a").with("b").with("c");
+        Map<String, Integer> counts = new HashMap<>();
+        for (long key = 0; key < 30000; key++) {
+            counts.merge(ring.nodeFor(key), 1, Integer::sum);
+        }
+        for (int count : counts.values()) {
+            assertEquals(10000, count, 1500);
+        }
+
+        HashRing grown = ring.with("d");
+        int moved = 0;
+        for (long key = 0; key < 30000; key++) {
+            if (!grown.nodeFor(key).equals(ring.nodeFor(key))) {
+                assertEquals("d", grown.nodeFor(key));
+                moved++;
+            }
+        }
+        assertEquals(7500, moved, 1500);
+        assertSame(grown, grown.with("d"));
+        assertNull(new HashRing(4).nodeFor(1));
+    }
+
+    /**
+     * test sessions keep their state through the router while nodes join and leave
+     */
+    @Test
+    void testHandoff() throws Exception {
+        GameServer[] servers = {new GameServer(), new GameServer(), new GameServer()};
+        URI[] nodes = new URI[servers.length];
+        try (ClusterRouter router = new ClusterRouter()) {
+            for (int s = 0; s < servers.length; s++) {
+                nodes[s] = URI.create("http://127.0.0.1:" + servers[s].start(0));
+            }
+            String base = "http://127.0.0.1:" + router.start(0);
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals(503, send(client, "POST", base + "/sessions").statusCode());
+            router.join(nodes[0]);
+            assertEquals(204, send(client, "PUT", base + "/nodes?url=" + nodes[1]).statusCode());
+            assertEquals("[\"" + nodes[0] + "\",\"" + nodes[1] + "\"]", send(client, "GET", base + "/nodes").body());
+            assertEquals("{\"error\":\"Use PUT or DELETE to change nodes\"}",
+                    send(client, "POST", base + "/nodes?url=x").body());
+
+            for (int i = 0; i < 30; i++) {
+                assertEquals(201, send(client, "POST", base + "/sessions").statusCode());
+            }
+            for (long id = 1; id <= 30; id += 2) {
+                assertTrue(send(client, "POST", base + "/sessions/" + id + "/actions/0").body()
+                        .contains("\"chamber\":1"));
+            }
+            assertEquals(30, servers[0].getSessionCount() + servers[1].getSessionCount());
+
+            router.join(nodes[2]);
+            assertTrue(servers[2].getSessionCount() > 0);
+            assertEquals(servers[2].getSessionCount(), router.getHandoffs());
+            router.leave(nodes[0]);
+            assertEquals(0, servers[0].getSessionCount());
+            assertEquals(30, servers[1].getSessionCount() + servers[2].getSessionCount());
+            for (long id = 1; id <= 30; id++) {
+                String state = send(client, "GET", base + "/sessions/" + id).body();
+                assertTrue(state.contains("\"id\":" + id + ","), state);
+                assertTrue(state.contains("\"chamber\":" + (id % 2)), state);
+            }
+
+            HttpResponse<String> events = send(client, "GET", base + "/sessions/4/events");
+            assertEquals(307, events.statusCode());
+            assertEquals(router.ownerOf(4) + "/sessions/4/events", events.headers().firstValue("Location").get());
+            assertEquals(204, send(client, "DELETE", base + "/sessions/4").statusCode());
+            assertEquals(404, send(client, "GET", base + "/sessions/4").statusCode());
+            assertEquals(29, router.getSessionCount());
+        } finally {
+            for (GameServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * test a node that cannot be reached loses no sessions, and a node that went down can be evicted
+     */
+    @Test
+    void testFailedHandoffAndEviction() throws Exception {
+        GameServer[] servers = {new GameServer(), new GameServer()};
+        URI[] nodes = new URI[servers.length];
+        try (ClusterRouter router = new ClusterRouter()) {
+            for (int s = 0; s < servers.length; s++) {
+                nodes[s] = URI.create("http://127.0.0.1:" + servers[s].start(0));
+            }
+            String base = "http://127.0.0.1:" + router.start(0);
+            HttpClient client = HttpClient.newHttpClient();
+            router.join(nodes[0]);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(201, send(client, "POST", base + "/sessions").statusCode());
+            }
+
+            assertThrows(IOException.class, () -> router.join(URI.create("http://127.0.0.1:1")));
+            assertEquals(List.of(nodes[0]), router.getNodes());
+            assertEquals(20, servers[0].getSessionCount());
+            for (long id = 1; id <= 20; id++) {
+                assertEquals(200, send(client, "GET", base + "/sessions/" + id).statusCode());
+            }
+
+            router.join(nodes[1]);
+            int gone = servers[1].getSessionCount();
+            assertTrue(gone > 0);
+            servers[1].close();
+            assertThrows(IOException.class, () -> router.leave(nodes[1]));
+            assertEquals(204, send(client, "DELETE", base + "/nodes?evict=" + nodes[1]).statusCode());
+            assertEquals(List.of(nodes[0]), router.getNodes());
+            assertEquals(20 - gone, router.getSessionCount());
+            int found = 0;
+            for (long id = 1; id <= 20; id++) {
+                int status = send(client, "GET", base + "/sessions/" + id).statusCode();
+                assertTrue(status == 200 || status == 404, "status " + status);
+                found += status == 200 ? 1 : 0;
+            }
+            assertEquals(20 - gone, found);
+        } finally {
+            for (GameServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * test a cluster of separate game server processes on loopback
+     */
+    @Test
+    void testSeparateProcesses() throws Exception {
+        String binary = ProcessHandle.current().info().command().orElse("java");
+        String classes = Path.of(GameServer.class.getProtectionDomain().getCodeSource().getLocation()
+                .toURI()).toString();
+        List<Process> processes = new ArrayList<>();
+        try (ClusterRouter router = new ClusterRouter()) {
+            for (int p = 0; p < 2; p++) {
+                List<String> command = new ArrayList<>(List.of(binary, "-cp", classes));
+                if (ManagementFactory.getRuntimeMXBean().getInputArguments()
+                        .contains("--enable-preview")) {
+                    command.add(1, "--enable-preview");
+                }
+                command.addAll(List.of(GameServer.class.getName(), "0"));
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                processes.add(process);
+                String line = new BufferedReader(new InputStreamReader(process.getInputStream()))
+                        .readLine();
+                Matcher port = Pattern.compile(":(\\d+)/").matcher(line);
+                assertTrue(port.find(), line);
+                router.join(URI.create("http://127.0.0.1:" + port.group(1)));
+            }
+            String base = "http://127.0.0.1:" + router.start(0) + "/sessions";
+            HttpClient client = HttpClient.newHttpClient();
+            for (int i = 0; i < 10; i++) {
+                send(client, "POST", base);
+                send(client, "POST", base + "/" + (i + 1) + "/actions/0");
+            }
+
+            router.leave(router.getNodes().get(0));
+            assertEquals(1, router.getNodes().size());
+            for (long id = 1; id <= 10; id++) {
+                assertTrue(send(client, "GET", base + "/" + id).body().contains("\"chamber\":1"));
+            }
+            assertTrue(router.getHandoffs() > 0);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+                process.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
+
+/**
+ * test class for layouts flattened into tables
+ */
+class FlatLayoutTest {
+    private static void assertSameGames(Layout layout, Supplier<Layout> fresh, int games) {
+        FlatLayout flat = FlatLayout.of(layout);
+        for (int seed = 0; seed < games; seed++) {
+            Dungeon dungeon = fresh.get().getDungeon();
+            dungeon.setNarrated(false);
+            dungeon.setDice(new SplittableRandom(seed));
+            int turns = Simulation.play(dungeon, new GreedyPolicy(), 1000);
+            FlatLayout.Result expected = new FlatLayout.Result(dungeon.isWon(), turns,
+                    dungeon.getPlayer().getHealth());
+
+            assertEquals(expected, flat.play(new SplittableRandom(seed), 1000), "seed " + seed);
+        }
+    }
+
+    // a grid of chambers, every third door guarded and every fifth chamber holding an item
+    private static Layout grid(int size) {
+        Chamber[] chambers = new Chamber[size * size];
+        for (int c = 0; c < chambers.length; c++) {
+            chambers[c] = c % 5 == 2 ? new Chamber(c % 2 == 0 ? new Axe() : new Shield()) : new Chamber();
+        }
+        int doors = 0;
+        for (int c = 0; c < chambers.length; c++) {
+            if (c % size < size - 1) {
+                Door.connect(chambers[c], chambers[c + 1],
+                        doors++ % 3 == 0 ? new Monster("Orc", 2, 0, 3) : null);
+            }
+            if (c + size < chambers.length) {
+                Door.connect(chambers[c], chambers[c + size],
+                        doors++ % 3 == 0 ? new Monster("Imp", 0, 2, 2) : null);
+            }
+        }
+        return new Layout(9, new Dungeon(new Warrior("Conan"), chambers[0], chambers[chambers.length - 1]), chambers);
+    }
+
+    /**
+     * test games on the tables end exactly like greedy games on the objects
+     */
+    @Test
+    void testSameAsObjectGame() {
+        assertSameGames(Layout.create(Layout.STANDARD), () -> Layout.create(Layout.STANDARD), 300);
+        assertSameGames(Layout.create(Layout.STANDARD_WARRIOR), () -> Layout.create(Layout.STANDARD_WARRIOR), 300);
+        assertSameGames(grid(9), () -> grid(9), 300);
+    }
+
+    /**
+     * test a large layout still plays the same and loot tables are turned down
+     */
+    @Test
+    void testLargeLayoutAndLoot() {
+        assertSameGames(grid(40), () -> grid(40), 20);
+
+        Layout looted = Layout.create(Layout.STANDARD);
+        looted.getChambers()[1].getDoors().get(1).getGuardian().setLoot(LootTable.of(1));
+        assertThrows(IllegalArgumentException.class, () -> FlatLayout.of(looted));
+    }
+}
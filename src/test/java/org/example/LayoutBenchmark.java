@@ -0,0 +1,72 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jmh comparison of greedy games on the object model and on the layout tables
+ * run with: mvn test-compile, then start main with the test classpath
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    private static final int MAX_TURNS = 1000;
+
+    private FlatLayout tables;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tables = FlatLayout.of(Layout.create(Layout.STANDARD));
+        random = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public int objects(ObjectGame game) {
+        return Simulation.play(game.dungeon, new GreedyPolicy(), MAX_TURNS);
+    }
+
+    @Benchmark
+    public FlatLayout.Result tables() {
+        return tables.play(random, MAX_TURNS);
+    }
+
+    /**
+     * a fresh object game for every call, set up apart so that only the object benchmark pays for it
+     */
+    @State(Scope.Thread)
+    public static class ObjectGame {
+        private final SplittableRandom random = new SplittableRandom(42);
+        private Dungeon dungeon;
+
+        @Setup(Level.Invocation)
+        public void newGame() {
+            dungeon = Layout.create(Layout.STANDARD).getDungeon();
+            dungeon.setNarrated(false);
+            dungeon.setDice(random.split());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LayoutBenchmark.class.getSimpleName()).build()).run();
+    }
+}